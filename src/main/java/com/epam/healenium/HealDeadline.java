@@ -0,0 +1,77 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium;
+
+import java.time.Duration;
+
+/**
+ * Time budget of a single heal. Every stage checks it and stops early once it is spent,
+ * keeping whatever it has found so far.
+ */
+public final class HealDeadline {
+
+    private static final HealDeadline UNBOUNDED = new HealDeadline(0, false);
+
+    private final long deadlineNanos;
+    private final boolean bounded;
+    private volatile boolean exceeded;
+
+    private HealDeadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * @param budget the time the heal may take, zero means no limit
+     */
+    public static HealDeadline start(Duration budget) {
+        if (budget.isZero() || budget.isNegative()) {
+            return UNBOUNDED;
+        }
+        return new HealDeadline(System.nanoTime() + budget.toNanos(), true);
+    }
+
+    public static HealDeadline unbounded() {
+        return UNBOUNDED;
+    }
+
+    public boolean isExpired() {
+        if (bounded && System.nanoTime() - deadlineNanos >= 0) {
+            exceeded = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the time left, {@link Duration#ZERO} once expired
+     */
+    public Duration remaining() {
+        if (!bounded) {
+            return Duration.ofNanos(Long.MAX_VALUE);
+        }
+        long left = deadlineNanos - System.nanoTime();
+        return left > 0 ? Duration.ofNanos(left) : Duration.ZERO;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * @return true if some stage of the heal was cut short by this deadline
+     */
+    public boolean isExceeded() {
+        return exceeded;
+    }
+}
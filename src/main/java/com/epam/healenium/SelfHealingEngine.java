@@ -26,6 +26,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * A healing com.epam.healenium.engine that encapsulates all the healing logic, leaving the persistence to {@link PathStorage} abstraction
@@ -34,6 +35,11 @@ import java.util.List;
 @Slf4j
 public abstract class SelfHealingEngine<D,E> {
 
+    /**
+     * How many distances the tree-comparing path finder computes between two checks of the heal deadline
+     */
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
     /**
      * A JavaScript source to extract an HTML item with its attributes
      */
@@ -52,9 +58,18 @@ public abstract class SelfHealingEngine<D,E> {
     }
 
     public SelfHealingEngine(D delegate, Config config) {
+        this(delegate, config, new FileSystemPathStorage(config));
+    }
+
+    /**
+     * @param delegate the driver of the session being healed
+     * @param config   healing settings
+     * @param storage  locator storage, may be shared between sessions
+     */
+    public SelfHealingEngine(D delegate, Config config, PathStorage storage) {
         this.webDriver = delegate;
         this.config = config;
-        this.storage = new FileSystemPathStorage(config);
+        this.storage = storage;
         this.recoveryTries = config.getInt("recovery-tries");
         this.scoreCap = config.getDouble("score-cap");
     }
@@ -73,15 +88,45 @@ public abstract class SelfHealingEngine<D,E> {
         log.info("* savePath finish: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
     }
 
+    /**
+     * Stores the valid locator state of a lookup that found several elements, as a single path.
+     * Only the path of the first element is captured, the one a single element lookup would return.
+     *
+     * @param locator  the locator
+     * @param context
+     * @param elements the elements while they are still accessible by the locator, at least one
+     */
+    public void savePaths(Object locator, String context, List<E> elements) {
+        log.info("* savePaths start: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
+        List<Node> nodePath = getNodePath(elements.get(0));
+        storage.persistLastValidPath(locator, context, nodePath);
+        log.info("* savePaths finish: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
+    }
+
     @SneakyThrows
     public void saveLocator(LocatorInfo info) {
         storage.saveLocatorInfo(info);
     }
 
+    /**
+     * Writes the report of an ended session and lets the storage forget it
+     */
+    @SneakyThrows
+    public void releaseLocator(LocatorInfo info) {
+        storage.releaseLocatorInfo(info);
+    }
+
     public boolean isPathExists(Object locator, String context){
         return storage.isNodePathPersisted(locator, context);
     }
 
+    /**
+     * @return the context the path of the locator was saved in last, whatever the current one
+     */
+    public Optional<String> findStoredContext(Object locator) {
+        return storage.findLatestContext(locator);
+    }
+
     /**
      *
      * @param element
@@ -100,11 +145,20 @@ public abstract class SelfHealingEngine<D,E> {
      * @return a list of candidate locators, ordered by revelance, or empty list if was unable to heal
      */
     protected List<Scored<Node>> findNewNodes(Object locator, String context, String targetPage) {
+        return findNewNodes(locator, context, targetPage, HealDeadline.unbounded());
+    }
+
+    /**
+     * @param targetPage the new HTML page source on which we should search for the element
+     * @param deadline   the heal deadline, the best candidates found so far are returned once it expires
+     * @return a list of candidate locators, ordered by revelance, or empty list if was unable to heal
+     */
+    protected List<Scored<Node>> findNewNodes(Object locator, String context, String targetPage, HealDeadline deadline) {
         List<Node> nodes = storage.getLastValidPath(locator, context);
         if (nodes.isEmpty()) {
             return Collections.emptyList();
         }
-        return findNearest(nodes.toArray(new Node[0]), targetPage);
+        return findNearest(nodes, targetPage, deadline);
     }
 
     /**
@@ -112,24 +166,108 @@ public abstract class SelfHealingEngine<D,E> {
      * @return a list of candidate locators, ordered by revelance, or empty list if was unable to heal
      */
     protected List<Scored<Node>> findNewNodes(String targetPage, List<Node> nodes) {
+        return findNewNodes(targetPage, nodes, HealDeadline.unbounded());
+    }
+
+    /**
+     * @param targetPage the new HTML page source on which we should search for the element
+     * @param deadline   the heal deadline, the best candidates found so far are returned once it expires
+     * @return a list of candidate locators, ordered by revelance, or empty list if was unable to heal
+     */
+    protected List<Scored<Node>> findNewNodes(String targetPage, List<Node> nodes, HealDeadline deadline) {
         if (nodes.isEmpty()) {
             return Collections.emptyList();
         }
         log.info("!!! findNewNodes - nodes not empty\n");
-        return findNearest(nodes.toArray(new Node[0]), targetPage);
+        return findNearest(nodes, targetPage, deadline);
     }
 
     /**
-     * @param nodePath        the array of nodes which actually represent the full path of an element in HTML tree,
-     *                        ordered from deepest to shallowest
+     * @param nodePath        the list of nodes which actually represent the full path of an element in HTML tree,
+     *                        ordered from shallowest to deepest
      * @param destinationTree the HTML code of the current page
+     * @param deadline        the heal deadline
      * @return a list of nodes which are the candidates to be the searched element, ordered by relevance descending.
      */
-    private List<Scored<Node>> findNearest(Node[] nodePath, String destinationTree) {
-        Node destination = parseTree(destinationTree);
-        PathFinder pathFinder =
-                new PathFinder(new LCSPathDistance(), new HeuristicNodeDistance());
-        return pathFinder.find(new Path(nodePath), destination, recoveryTries);
+    private List<Scored<Node>> findNearest(List<Node> nodePath, String destinationTree, HealDeadline deadline) {
+        if (deadline.isExpired()) {
+            log.warn("Heal deadline reached before parsing the page");
+            return Collections.emptyList();
+        }
+        return score(nodePath, destinationTree, recoveryTries, deadline);
+    }
+
+    /**
+     * @param nodePath        the last valid path of the element, ordered from shallowest to deepest
+     * @param destinationTree the page source to search in
+     * @param limit           how many candidates to return
+     * @param deadline        the heal deadline
+     * @return the best candidates, ordered by score descending
+     */
+    protected List<Scored<Node>> score(List<Node> nodePath, String destinationTree, int limit, HealDeadline deadline) {
+        return findPath(nodePath, parseTree(destinationTree), limit, deadline);
+    }
+
+    /**
+     * Scores the tree with the tree-comparing path finder, on the calling thread. The finder can't be interrupted and
+     * keeps no partial result, so its distances check the deadline as they go and a heal that reaches it gets no
+     * candidates.
+     *
+     * @param nodePath    the last valid path of the element, ordered from shallowest to deepest
+     * @param destination the root of the page to search in
+     * @param limit       how many candidates to return
+     * @param deadline    the heal deadline
+     * @return the best candidates, ordered by score descending
+     */
+    protected List<Scored<Node>> findPath(List<Node> nodePath, Node destination, int limit, HealDeadline deadline) {
+        Path path = new Path(nodePath.toArray(new Node[0]));
+        if (!deadline.isBounded()) {
+            return new PathFinder(new LCSPathDistance(), new HeuristicNodeDistance()).find(path, destination, limit);
+        }
+        DeadlineCheck check = new DeadlineCheck(deadline);
+        LCSPathDistance pathDistance = new LCSPathDistance();
+        HeuristicNodeDistance nodeDistance = new HeuristicNodeDistance();
+        PathFinder pathFinder = new PathFinder(
+                (stored, current) -> {
+                    check.tick();
+                    return pathDistance.distance(stored, current);
+                },
+                (stored, current, percentLCS, maxLCS) -> {
+                    check.tick();
+                    return nodeDistance.distance(stored, current, percentLCS, maxLCS);
+                });
+        try {
+            return pathFinder.find(path, destination, limit);
+        } catch (DeadlineReached e) {
+            log.warn("Heal deadline reached while scoring the page, no candidates");
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Counts the distances computed for one heal and stops the path finder once the deadline expires
+     */
+    private static final class DeadlineCheck {
+
+        private final HealDeadline deadline;
+        private int computed;
+
+        DeadlineCheck(HealDeadline deadline) {
+            this.deadline = deadline;
+        }
+
+        void tick() {
+            if (++computed % DEADLINE_CHECK_INTERVAL == 0 && deadline.isExpired()) {
+                throw new DeadlineReached();
+            }
+        }
+    }
+
+    private static final class DeadlineReached extends RuntimeException {
+
+        DeadlineReached() {
+            super(null, null, false, false);
+        }
     }
 
     /**
@@ -137,7 +275,7 @@ public abstract class SelfHealingEngine<D,E> {
      * @param tree
      * @return
      */
-    private Node parseTree(String tree) {
+    protected Node parseTree(String tree) {
         return getParser().parse(new ByteArrayInputStream(tree.getBytes(StandardCharsets.UTF_8)));
     }
 }
@@ -13,15 +13,24 @@
 package com.epam.healenium.appium;
 
 import com.epam.healenium.appium.elementcreators.XPathCreator;
-import com.epam.healenium.client.RestClient;
-import com.epam.healenium.HealException;
+import com.epam.healenium.client.BackendClient;
+import com.epam.healenium.HealDeadline;
 import com.epam.healenium.SelfHealingEngine;
+import com.epam.healenium.data.HealedLocatorCache;
 import com.epam.healenium.data.PathStorage;
+import com.epam.healenium.jfr.HealeniumEvents;
+import com.epam.healenium.jfr.Stage;
+import com.epam.healenium.jfr.StageEvent;
+import com.epam.healenium.scoring.AppiumNodeDistance;
+import com.epam.healenium.scoring.CompactTree;
+import com.epam.healenium.scoring.PageSourceScanner;
+import com.epam.healenium.scoring.PathScorer;
 import com.epam.healenium.treecomparing.*;
+import com.epam.healenium.utils.PageSourceUtils;
 import com.epam.healenium.utils.StackUtils;
 import com.typesafe.config.Config;
-import com.typesafe.config.ConfigFactory;
 import io.appium.java_client.AppiumDriver;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.openqa.selenium.By;
@@ -30,7 +39,8 @@ import org.openqa.selenium.WebElement;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A healing com.epam.healenium.engine that encapsulates all the healing logic, leaving the persistence to {@link PathStorage} abstraction and elements and locators handling to the driver.
@@ -39,20 +49,43 @@ import java.util.stream.Collectors;
 @SuppressWarnings("unchecked")
 public class AppiumEngine<D extends AppiumDriver> extends SelfHealingEngine<D,WebElement> {
 
-    private static final Config DEFAULT_CONFIG = ConfigFactory.systemProperties().withFallback(ConfigFactory.load("healenium.properties").withFallback(ConfigFactory.load()));
+    private static final DocumentParser PARSER = new JsoupXMLParser();
+    private static final XPathCreator XPATH_CREATOR = new XPathCreator();
+    /**
+     * The experimental compact scorer, used instead of the tree-comparing path finder when it is configured
+     */
+    private static final PathScorer PATH_SCORER = new PathScorer(new AppiumNodeDistance());
 
     @Getter
-    private final RestClient client;
+    private final BackendClient client;
+    @Getter
+    private final Map<String, Object> testData = new ConcurrentHashMap<>();
     @Getter
-    private final Map testData = new HashMap();
+    private final ScreenCache screen;
+    @Getter
+    private final HealedLocatorCache healedLocators;
+    @Getter(AccessLevel.PACKAGE)
+    private final FailedHealCache failedHeals;
+    @Getter(AccessLevel.PACKAGE)
+    private final ScreenContext screenContext;
+    private final boolean compactScorer;
 
     AppiumEngine(D driver, Config config) {
-        super(driver, config);
-        Config finalizedConfig = ConfigFactory.load(config).withFallback(DEFAULT_CONFIG);
-        client = new RestClient(finalizedConfig);
+        this(driver, ComponentRegistry.get(config));
+    }
+
+    AppiumEngine(D driver, EngineComponents components) {
+        super(driver, components.getConfig(), components.getStorage());
+        client = components.getClient();
+        healedLocators = components.getHealedLocators();
+        failedHeals = new FailedHealCache(components.getConfig().getDuration("negative-cache-ttl"));
+        screen = new ScreenCache(driver, components.getConfig().getDuration("screen-snapshot-ttl"));
+        screenContext = new ScreenContext(driver, screen, components.getConfig().getString("screen-context"),
+                components.getConfig().getDuration("screen-snapshot-ttl"));
+        compactScorer = "compact".equals(components.getConfig().getString("scorer"));
         for (Map.Entry entry: driver.getCapabilities().asMap().entrySet()) {
-            if (((String) entry.getKey()).contains("test_data")) {
-                testData.put(entry.getKey(), entry.getValue());
+            if (((String) entry.getKey()).contains("test_data") && entry.getValue() != null) {
+                testData.put((String) entry.getKey(), entry.getValue());
             }
         }
     }
@@ -65,12 +98,23 @@ public class AppiumEngine<D extends AppiumDriver> extends SelfHealingEngine<D,We
     @Override
     public List<Node> getNodePath(WebElement element) {
         log.debug("* getNodePath start: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
+        StageEvent event = HealeniumEvents.begin(Stage.CAPTURE);
+        Optional<List<Node>> captured = screen.current().findPath(element.getAttribute("class"), element.getAttribute("bounds"),
+                element::getAttribute);
+        if (captured.isPresent()) {
+            event.setNodeCount(captured.get().size()).setOutcome("snapshot").commit();
+            log.debug("* getNodePath finish: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
+            return captured.get();
+        }
+        // the screen has changed since the snapshot was taken
+        screen.invalidate();
         List<Node> path = new LinkedList<>();
 
         String ancestorsXPath = element.toString().substring(element.toString().lastIndexOf(":") + 1, element.toString().length() - 1) + "/ancestor::*";
         List<WebElement> ancestors = getWebDriver().findElements(By.xpath(ancestorsXPath));
         ancestors.add(element);
         ancestors.forEach(it -> path.add(toNode(it)));
+        event.setNodeCount(path.size()).setOutcome("device").commit();
         log.debug("* getNodePath finish: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
         return path;
     }
@@ -78,29 +122,102 @@ public class AppiumEngine<D extends AppiumDriver> extends SelfHealingEngine<D,We
     /**
      * @param locator    page aware locator
      * @param targetPage the new HTML page source on which we should search for the element
-     * @return a list of candidate locators, ordered by revelance, or empty list if was unable to heal
+     * @return the candidates, ordered by revelance, the first valid one is the healed locator
      */
-    public List<By> findNewLocations(Object locator, String context, String targetPage) {
-        return findNewNodes(locator, context, targetPage).stream()
-            .map(this::toLocator)
-            .collect(Collectors.toList());
+    public List<HealCandidate> findNewLocations(Object locator, String context, String targetPage) {
+        return findNewLocations(locator, context, targetPage, HealDeadline.unbounded());
+    }
+
+    /**
+     * @param locator    page aware locator
+     * @param targetPage the new HTML page source on which we should search for the element
+     * @param deadline   the heal deadline, the candidates left are not validated once it expires
+     * @return the candidates, ordered by revelance, the first valid one is the healed locator
+     */
+    public List<HealCandidate> findNewLocations(Object locator, String context, String targetPage, HealDeadline deadline) {
+        return toCandidates(findNewNodes(locator, context, targetPage, deadline), null, deadline);
     }
 
     /**
      * @param locator page aware locator
      * @param targetPage the new HTML page source on which we should search for the element
-     * @return a list of candidate locators, ordered by revelance, or empty list if was unable to heal
+     * @return the candidates, ordered by revelance, the first valid one is the healed locator
      */
-    public List<By> findNewLocations(By locator, String targetPage, Optional<StackTraceElement> element) {
-        List<By> result = new ArrayList<>();
+    public List<HealCandidate> findNewLocations(By locator, String targetPage, Optional<StackTraceElement> element) {
+        return findNewLocations(locator, targetPage, element, HealDeadline.unbounded());
+    }
 
-        element.flatMap(it -> client.getLastValidPath(locator, it))
+    /**
+     * @param locator page aware locator
+     * @param targetPage the new HTML page source on which we should search for the element
+     * @param deadline   the heal deadline, the candidates left are not validated once it expires
+     * @return the candidates, ordered by revelance, the first valid one is the healed locator
+     */
+    public List<HealCandidate> findNewLocations(By locator, String targetPage, Optional<StackTraceElement> element, HealDeadline deadline) {
+        return findNewLocations(requestLastValidPath(locator, element, deadline), targetPage, (WebElement) null, deadline);
+    }
+
+    /**
+     * Heals a lookup made from an element: only the subtree of the element is parsed and scored,
+     * the candidates are relative to the element.
+     *
+     * @param locator    page aware locator
+     * @param targetPage the new page source on which we should search for the element
+     * @param scope      the element the lookup was made from
+     * @param deadline   the heal deadline, the candidates left are not validated once it expires
+     * @return the candidates, ordered by revelance, the first valid one is the healed locator
+     */
+    public List<HealCandidate> findNewLocations(Object locator, String context, String targetPage, WebElement scope, HealDeadline deadline) {
+        return toCandidates(findNewNodes(locator, context, subtree(targetPage, scope), deadline), scope, deadline);
+    }
+
+    /**
+     * Heals a lookup made from an element using the path stored by the backend.
+     *
+     * @param locator    the failed locator
+     * @param targetPage the new page source on which we should search for the element
+     * @param scope      the element the lookup was made from
+     * @param deadline   the heal deadline, the candidates left are not validated once it expires
+     * @return the candidates, ordered by revelance, the first valid one is the healed locator
+     */
+    public List<HealCandidate> findNewLocations(By locator, String targetPage, Optional<StackTraceElement> element, WebElement scope,
+                                                HealDeadline deadline) {
+        return findNewLocations(requestLastValidPath(locator, element, deadline), targetPage, scope, deadline);
+    }
+
+    /**
+     * Heals a lookup using the path stored by the backend, requested beforehand with
+     * {@link #requestLastValidPath(By, Optional, HealDeadline)} so that it is fetched while the page source is read.
+     *
+     * @param lastValidPath the pending path lookup
+     * @param targetPage    the new page source on which we should search for the element
+     * @param scope         the element the lookup was made from, null for a lookup made from the driver
+     * @param deadline      the heal deadline, the candidates left are not validated once it expires
+     * @return the candidates, ordered by revelance, the first valid one is the healed locator
+     */
+    public List<HealCandidate> findNewLocations(CompletableFuture<Optional<List<Node>>> lastValidPath, String targetPage,
+                                                WebElement scope, HealDeadline deadline) {
+        return lastValidPath.join()
                 // ignore empty result, or will fall on search
                 .filter(it-> !it.isEmpty())
-                .ifPresent(nodes -> findNewNodes(targetPage, nodes).stream()
-                        .map(this::toLocator)
-                        .forEach(result::add));
-        return result;
+                .map(nodes -> toCandidates(findNewNodes(scope == null ? targetPage : subtree(targetPage, scope), nodes, deadline),
+                        scope, deadline))
+                .orElseGet(ArrayList::new);
+    }
+
+    /**
+     * Starts fetching the last valid path of a locator from the backend without waiting for it
+     *
+     * @param locator  the failed locator
+     * @param element  the caller the path was saved for
+     * @param deadline the heal deadline, the request is given no more than the time left
+     * @return the pending path lookup, empty if the caller is unknown or the backend doesn't have the path
+     */
+    public CompletableFuture<Optional<List<Node>>> requestLastValidPath(By locator, Optional<StackTraceElement> element,
+                                                                        HealDeadline deadline) {
+        return element
+                .map(it -> client.getLastValidPathAsync(locator, it, deadline))
+                .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty()));
     }
 
     /**
@@ -112,10 +229,25 @@ public class AppiumEngine<D extends AppiumDriver> extends SelfHealingEngine<D,We
 
     public void savePath(By by, WebElement webElement) {
         log.info("!!! Engine.savePath\n");
+        save(by, getNodePath(webElement));
+    }
+
+    /**
+     * Stores the valid locator state of a lookup that found several elements with a single request,
+     * only the path of the first element is captured.
+     *
+     * @param by       the locator
+     * @param elements the elements while they are still accessible by the locator, at least one
+     */
+    public void savePaths(By by, List<WebElement> elements) {
+        save(by, getNodePath(elements.get(0)));
+    }
+
+    private void save(By by, List<Node> nodes) {
         StackTraceElement traceElement = StackUtils.findOriginCaller(Thread.currentThread().getStackTrace())
                 .orElseThrow(()-> new IllegalArgumentException("Failed to detect origin method caller"));
-        List<Node> nodes = getNodePath(webElement);
-        client.selectorRequest(by, traceElement, nodes);
+        // the writes are sent in order in the background, the lookup doesn't wait for the backend
+        client.selectorRequestAsync(by, traceElement, nodes);
 
         String[] locatorParts = by.toString().split(":");
         log.info("!!! before testData size={}", testData.size());
@@ -125,10 +257,10 @@ public class AppiumEngine<D extends AppiumDriver> extends SelfHealingEngine<D,We
          * value - new data (replacementMethodName:replacementLocator)
          */
         testData.forEach((key, value) -> {
-            if (((String) key).contains(locatorParts[1].trim())) {
-                String[] oldTestDataParts = ((String) key).split(":");
+            if (key.contains(locatorParts[1].trim())) {
+                String[] oldTestDataParts = key.split(":");
                 String[] newTestDataParts = ((String) value).split(":");
-                client.selectorRequestTest(by, traceElement, nodes, oldTestDataParts[2].trim(),
+                client.selectorRequestTestAsync(by, traceElement, nodes, oldTestDataParts[2].trim(),
                         newTestDataParts[1].trim(), oldTestDataParts[1].trim(), newTestDataParts[0].trim());
             }
         });
@@ -136,17 +268,99 @@ public class AppiumEngine<D extends AppiumDriver> extends SelfHealingEngine<D,We
 
     @Override
     public DocumentParser getParser() {
-        return new JsoupXMLParser();
+        return PARSER;
     }
 
-    private By toLocator(Scored<Node> scoredNode) {
-        log.debug("ToLocator by Node: {}", scoredNode.getValue());
-        By locator = construct(scoredNode.getValue());
-        List<WebElement> elements = getWebDriver().findElements(locator);
-        if (elements.size() == 1) {
-            return locator;
+    /**
+     * Scores the page with the tree-comparing path finder, or with the experimental compact scorer when it is configured.
+     * The compact scorer reads a {@link CompactTree}: the one of the screen snapshot when healing runs against its page source,
+     * otherwise one scanned from the given source
+     */
+    @Override
+    protected List<Scored<Node>> score(List<Node> nodePath, String destinationTree, int limit, HealDeadline deadline) {
+        StageEvent event = HealeniumEvents.begin(Stage.SCORING);
+        List<Scored<Node>> result;
+        if (compactScorer) {
+            ScreenSnapshot snapshot = screen.peek();
+            CompactTree tree = snapshot != null && snapshot.getSource() == destinationTree
+                ? snapshot.getTree()
+                : PageSourceScanner.scan(destinationTree, screen.getStartTags());
+            result = PATH_SCORER.find(nodePath, tree, getParser(), limit, deadline);
+            event.setNodeCount(tree.size());
+        } else {
+            Node root = parseTree(destinationTree);
+            result = findPath(nodePath, root, limit, deadline);
+            if (event.isEnabled()) {
+                event.setNodeCount(countNodes(root));
+            }
         }
-        throw new HealException();
+        event.setOutcome(deadline.isExpired() ? "deadline reached" : result.isEmpty() ? "no candidates" : "scored")
+            .commit();
+        return result;
+    }
+
+    private static int countNodes(Node root) {
+        int count = 0;
+        Deque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            count++;
+            queue.addAll(queue.poll().getChildren());
+        }
+        return count;
+    }
+
+    /**
+     * Wraps the scored nodes in candidates and checks them on the device in score order, up to the first one that
+     * finds a single element. The locators of the others are only built if they are reported.
+     *
+     * @param scope the element the lookup was made from, null for lookups made from the driver
+     */
+    private List<HealCandidate> toCandidates(List<Scored<Node>> scored, WebElement scope, HealDeadline deadline) {
+        List<HealCandidate> result = new ArrayList<>(scored.size());
+        boolean healed = false;
+        for (Scored<Node> node : scored) {
+            HealCandidate candidate = new HealCandidate(node.getScore(), () -> toLocator(node.getValue(), scope));
+            result.add(candidate);
+            if (healed) {
+                continue;
+            }
+            if (deadline.isExpired()) {
+                log.warn("Heal deadline reached, {} of {} candidates validated", result.size() - 1, scored.size());
+                healed = true;
+                continue;
+            }
+            healed = candidate.validate(locator -> isUnique(locator, scope));
+        }
+        return result;
+    }
+
+    private By toLocator(Node node, WebElement scope) {
+        log.debug("ToLocator by Node: {}", node);
+        return scope == null ? construct(node) : By.xpath("." + XPATH_CREATOR.create(node));
+    }
+
+    private boolean isUnique(By locator, WebElement scope) {
+        StageEvent event = HealeniumEvents.begin(Stage.VALIDATION).setLocator(locator);
+        int found = (scope == null ? getWebDriver().findElements(locator) : scope.findElements(locator)).size();
+        event.setNodeCount(found).setOutcome(found == 1 ? "unique" : found == 0 ? "missing" : "ambiguous").commit();
+        return found == 1;
+    }
+
+    /**
+     * @return the markup of the element under a hierarchy root, as in a page source, or the whole page if the element
+     * can't be located in it
+     */
+    private String subtree(String targetPage, WebElement scope) {
+        String tag = scope.getAttribute("class");
+        String bounds = scope.getAttribute("bounds");
+        if (tag == null || bounds == null) {
+            return targetPage;
+        }
+        return PageSourceUtils.findSubtree(targetPage, tag, bounds).map(it -> "<hierarchy>" + it + "</hierarchy>").orElseGet(() -> {
+            log.debug("Element {} is not found in the page source, healing against the whole page", scope);
+            return targetPage;
+        });
     }
 
     /**
@@ -171,7 +385,7 @@ public class AppiumEngine<D extends AppiumDriver> extends SelfHealingEngine<D,We
     }
 
     private By construct(Node node) {
-        return By.xpath(new XPathCreator().create(node));
+        return By.xpath(XPATH_CREATOR.create(node));
     }
 
 }
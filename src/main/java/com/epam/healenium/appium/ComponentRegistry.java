@@ -0,0 +1,75 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigRenderOptions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out {@link EngineComponents} shared by all the wraps with the same effective config,
+ * i.e. the config after system properties and defaults are applied.
+ * Configs that differ only in how they were built map to the same components.
+ */
+@Slf4j
+final class ComponentRegistry {
+
+    private static final Config DEFAULT_CONFIG = ConfigFactory.systemProperties().withFallback(ConfigFactory.load("healenium.properties").withFallback(ConfigFactory.load()));
+    private static final Config WRAPPER_CONFIG = ConfigFactory.systemProperties().withFallback(ConfigFactory.load());
+
+    private static final Map<String, EngineComponents> COMPONENTS = new ConcurrentHashMap<>();
+    /**
+     * Most suites pass the very same config instance to every wrap, this skips resolving it again
+     */
+    private static final AtomicReference<Recent> RECENT = new AtomicReference<>();
+
+    private ComponentRegistry() {
+    }
+
+    /**
+     * @return the config used when none is passed to the wrapper
+     */
+    static Config defaultConfig() {
+        return WRAPPER_CONFIG;
+    }
+
+    static EngineComponents get(Config config) {
+        Recent recent = RECENT.get();
+        if (recent != null && recent.config == config) {
+            return recent.components;
+        }
+        Config effective = ConfigFactory.load(config).withFallback(DEFAULT_CONFIG);
+        String key = effective.root().render(ConfigRenderOptions.concise());
+        EngineComponents components = COMPONENTS.computeIfAbsent(key, it -> {
+            log.debug("Creating engine components for a new config");
+            return new EngineComponents(effective);
+        });
+        RECENT.set(new Recent(config, components));
+        return components;
+    }
+
+    private static class Recent {
+        private final Config config;
+        private final EngineComponents components;
+
+        private Recent(Config config, EngineComponents components) {
+            this.config = config;
+            this.components = components;
+        }
+    }
+}
@@ -13,9 +13,11 @@
 package com.epam.healenium.appium;
 
 import com.typesafe.config.Config;
-import com.typesafe.config.ConfigFactory;
 import io.appium.java_client.AppiumDriver;
 import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javassist.util.proxy.Proxy;
 import javassist.util.proxy.ProxyFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.openqa.selenium.Capabilities;
@@ -29,6 +31,11 @@ import org.openqa.selenium.Capabilities;
 @SuppressWarnings("unchecked")
 public final class DriverWrapper {
 
+    /**
+     * Generated proxy classes by driver or element class, javassist would otherwise define a new class on every wrap
+     */
+    private static final Map<Class<?>, Class<?>> PROXY_CLASSES = new ConcurrentHashMap<>();
+
     /**
      * Instantiates the self-healing driver.
      *
@@ -38,34 +45,59 @@ public final class DriverWrapper {
         return wrap(delegate, null);
     }
 
+    /**
+     * Instantiates the self-healing driver. Every wrapped session keeps its own healing state, while storage and
+     * backend client are shared by all sessions wrapped with the same effective config, so many sessions can run
+     * in parallel in one JVM.
+     *
+     * @param delegate the original driver.
+     * @param config   healing settings, the default config is used if null
+     */
     public static <T extends AppiumDriver> T wrap(T delegate, Config config) {
         if(config == null){
-            config = ConfigFactory.systemProperties().withFallback(ConfigFactory.load());
+            config = ComponentRegistry.defaultConfig();
         }
-        AppiumEngine<T> engine = new AppiumEngine<>(delegate, config);
+        AppiumEngine<T> engine = new AppiumEngine<>(delegate, ComponentRegistry.get(config));
         return create(engine);
     }
 
     static <T extends AppiumDriver> T create(AppiumEngine engine){
         T origin = (T) engine.getWebDriver();
         try{
-            ProxyFactory factory = new ProxyFactory();
-            factory.setSuperclass(origin.getClass());
-            factory.setFilter(
-                method -> {
-                    String methodName = method.getName();
-                    return methodName.startsWith("findElement") || methodName.equalsIgnoreCase("switchTo");
-                }
-            );
-            return (T) factory.create(
-                new Class<?>[]{URL.class, Capabilities.class},
-                new Object[]{origin.getRemoteAddress(), origin.getCapabilities()},
-                new ProxyMethodHandler(engine)
-            );
+            Class<?> proxyClass = proxyClass(origin.getClass());
+            if (engine.getConfig().getBoolean("session-reuse") && ProxyInstantiator.isSupported()) {
+                // take over the running session instead of letting the driver constructor start a new one
+                return ProxyInstantiator.instantiate(proxyClass, origin, new ProxyMethodHandler(engine));
+            }
+            T proxy = (T) proxyClass.getConstructor(URL.class, Capabilities.class)
+                .newInstance(origin.getRemoteAddress(), origin.getCapabilities());
+            ((Proxy) proxy).setHandler(new ProxyMethodHandler(engine));
+            return proxy;
         } catch (Exception ex){
             log.error("Failed to create wrapper!", ex);
             return origin;
         }
     }
 
+    /**
+     * @param type a driver or element class
+     * @return the proxy class intercepting the lookups of the given class
+     */
+    static Class<?> proxyClass(Class<?> type) {
+        return PROXY_CLASSES.computeIfAbsent(type, DriverWrapper::createProxyClass);
+    }
+
+    private static Class<?> createProxyClass(Class<?> type) {
+        ProxyFactory factory = new ProxyFactory();
+        factory.setSuperclass(type);
+        factory.setFilter(
+            method -> {
+                String methodName = method.getName();
+                return methodName.startsWith("findElement") || methodName.equalsIgnoreCase("switchTo")
+                    || methodName.equals("quit") || ScreenCache.isMutating(methodName);
+            }
+        );
+        return factory.createClass();
+    }
+
 }
@@ -0,0 +1,46 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import com.epam.healenium.client.BackendClient;
+import com.epam.healenium.data.FileSystemPathStorage;
+import com.epam.healenium.data.HealedLocatorCache;
+import com.epam.healenium.data.LocatorIndex;
+import com.epam.healenium.data.PathStorage;
+import com.typesafe.config.Config;
+import lombok.Getter;
+
+/**
+ * Thread-safe components shared by all the sessions wrapped with the same effective config.
+ * Everything that belongs to a single driver session lives in {@link AppiumEngine} and {@link ProxyMethodHandler}.
+ */
+@Getter
+public class EngineComponents {
+
+    private final Config config;
+    private final PathStorage storage;
+    private final BackendClient client;
+    private final HealedLocatorCache healedLocators;
+    private final LocatorIndex locatorIndex;
+
+    /**
+     * @param config the effective config, see {@link ComponentRegistry}
+     */
+    EngineComponents(Config config) {
+        this.config = config;
+        this.locatorIndex = LocatorIndex.open(this.config);
+        this.storage = new FileSystemPathStorage(this.config, locatorIndex);
+        this.client = BackendClient.create(this.config, locatorIndex);
+        this.healedLocators = new HealedLocatorCache(this.config);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import org.openqa.selenium.NoSuchElementException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers for a short time the lookups that could not be healed, by locator, caller and screen,
+ * so that polling for an absent element fails right away instead of waiting and healing again on the same screen.
+ */
+class FailedHealCache {
+
+    private static final int CLEANUP_SIZE = 1000;
+
+    private final long ttlNanos;
+    private final Map<String, Failure> failures = new ConcurrentHashMap<>();
+    /**
+     * When the last failure of each locator expires, by locator
+     */
+    private final Map<String, Long> locators = new ConcurrentHashMap<>();
+
+    FailedHealCache(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Cheap check done on every lookup, before the caller and the screen are resolved
+     */
+    boolean contains(String locator) {
+        if (locators.isEmpty()) {
+            return false;
+        }
+        Long expiresAt = locators.get(locator);
+        if (expiresAt != null && System.nanoTime() - expiresAt >= 0) {
+            locators.remove(locator, expiresAt);
+            return false;
+        }
+        return expiresAt != null;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the current screen, only taken if the lookup has failed recently
+     * @return the exception the lookup failed with on the same screen, if it is still remembered
+     */
+    Optional<NoSuchElementException> get(String locator, String caller, LongSupplier fingerprint) {
+        Failure failure = failures.get(key(locator, caller));
+        if (failure == null || System.nanoTime() - failure.failedAt >= ttlNanos
+            || failure.fingerprint != fingerprint.getAsLong()) {
+            return Optional.empty();
+        }
+        return Optional.of(failure.exception);
+    }
+
+    void put(String locator, String caller, long fingerprint, NoSuchElementException exception) {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (failures.size() >= CLEANUP_SIZE) {
+            failures.values().removeIf(it -> now - it.failedAt >= ttlNanos);
+        }
+        if (locators.size() >= CLEANUP_SIZE) {
+            locators.values().removeIf(it -> now - it >= 0);
+        }
+        failures.put(key(locator, caller), new Failure(fingerprint, exception));
+        locators.put(locator, now + ttlNanos);
+    }
+
+    private static String key(String locator, String caller) {
+        return locator + "\n" + caller;
+    }
+
+    private static class Failure {
+        private final long fingerprint;
+        private final NoSuchElementException exception;
+        private final long failedAt = System.nanoTime();
+
+        private Failure(long fingerprint, NoSuchElementException exception) {
+            this.fingerprint = fingerprint;
+            this.exception = exception;
+        }
+    }
+}
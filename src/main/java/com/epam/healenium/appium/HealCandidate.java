@@ -0,0 +1,78 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import lombok.Getter;
+import org.openqa.selenium.By;
+
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A scored heal candidate. Its locator is built on first use, and it is checked on the device only if the
+ * candidates scored above it were not
+ */
+public class HealCandidate {
+
+    public enum State {
+        /**
+         * The locator finds a single element
+         */
+        VALID,
+        /**
+         * The locator finds no element or several of them
+         */
+        INVALID,
+        /**
+         * Not checked on the device, a better candidate was valid or the heal deadline was reached
+         */
+        UNCHECKED
+    }
+
+    @Getter
+    private final double score;
+    private final Supplier<By> locatorSupplier;
+    private By locator;
+    @Getter
+    private State state = State.UNCHECKED;
+
+    HealCandidate(double score, Supplier<By> locatorSupplier) {
+        this.score = score;
+        this.locatorSupplier = locatorSupplier;
+    }
+
+    public By getLocator() {
+        if (locator == null) {
+            locator = locatorSupplier.get();
+        }
+        return locator;
+    }
+
+    public boolean isValid() {
+        return state == State.VALID;
+    }
+
+    /**
+     * @param unique tells whether a locator finds a single element
+     * @return true if the candidate is valid
+     */
+    boolean validate(Predicate<By> unique) {
+        state = unique.test(getLocator()) ? State.VALID : State.INVALID;
+        return isValid();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (score %.3f, %s)", getLocator(), score, state.name().toLowerCase());
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import io.appium.java_client.MobileBy;
+import org.openqa.selenium.By;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Locator strategies known to selenium and appium: the suffix of the driver's findElement(s)By* methods,
+ * the selector name sent to the server and the factory of the matching {@link By}.
+ */
+enum LocatorStrategy {
+
+    ID("ById", "id", By::id),
+    XPATH("ByXPath", "xpath", By::xpath),
+    CLASS_NAME("ByClassName", "class name", By::className),
+    NAME("ByName", "name", By::name),
+    TAG_NAME("ByTagName", "tag name", By::tagName),
+    CSS_SELECTOR("ByCssSelector", "css selector", By::cssSelector),
+    LINK_TEXT("ByLinkText", "link text", By::linkText),
+    PARTIAL_LINK_TEXT("ByPartialLinkText", "partial link text", By::partialLinkText),
+    ACCESSIBILITY_ID("ByAccessibilityId", "accessibility id", MobileBy::AccessibilityId),
+    ANDROID_UI_AUTOMATOR("ByAndroidUIAutomator", "-android uiautomator", MobileBy::AndroidUIAutomator),
+    ANDROID_VIEW_TAG("ByAndroidViewTag", "-android viewtag", MobileBy::AndroidViewTag),
+    ANDROID_DATA_MATCHER("ByAndroidDataMatcher", "-android datamatcher", MobileBy::androidDataMatcher),
+    IOS_CLASS_CHAIN("ByIosClassChain", "-ios class chain", MobileBy::iOSClassChain),
+    IOS_NS_PREDICATE("ByIosNsPredicate", "-ios predicate string", MobileBy::iOSNsPredicateString),
+    WINDOWS_UI_AUTOMATION("ByWindowsUIAutomation", "-windows uiautomation", MobileBy::windowsAutomation),
+    IMAGE("ByImage", "-image", MobileBy::image),
+    CUSTOM("ByCustom", "-custom", MobileBy::custom);
+
+    private static final Map<String, LocatorStrategy> BY_SUFFIX = new HashMap<>();
+    private static final Map<String, LocatorStrategy> BY_SELECTOR = new HashMap<>();
+
+    static {
+        for (LocatorStrategy strategy : values()) {
+            BY_SUFFIX.put(strategy.methodSuffix, strategy);
+            BY_SELECTOR.put(strategy.selector, strategy);
+        }
+    }
+
+    private final String methodSuffix;
+    private final String selector;
+    private final Function<String, By> factory;
+
+    LocatorStrategy(String methodSuffix, String selector, Function<String, By> factory) {
+        this.methodSuffix = methodSuffix;
+        this.selector = selector;
+        this.factory = factory;
+    }
+
+    By toBy(String value) {
+        return factory.apply(value);
+    }
+
+    /**
+     * @param suffix the part of a method name after findElement or findElements, e.g. ByXPath
+     * @return the strategy or null if unknown
+     */
+    static LocatorStrategy fromMethodSuffix(String suffix) {
+        return BY_SUFFIX.get(suffix);
+    }
+
+    /**
+     * @param selector the strategy name as used in the wire protocol, e.g. accessibility id
+     * @return the strategy or null if unknown
+     */
+    static LocatorStrategy fromSelector(String selector) {
+        return BY_SELECTOR.get(selector);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import javassist.util.proxy.MethodHandler;
+import javassist.util.proxy.Proxy;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates proxy instances that take over the state of an existing object instead of running its constructor.
+ * For a driver it means the proxy talks to the already established session through the same command executor,
+ * no new session is requested from the server. For an element it means the proxy keeps the element id and parent.
+ */
+final class ProxyInstantiator {
+
+    private static final Object REFLECTION_FACTORY;
+    private static final Method NEW_CONSTRUCTOR;
+
+    /**
+     * Elements are proxied on every lookup, so the reflection work is done once per class
+     */
+    private static final Map<Class<?>, Constructor<?>> CONSTRUCTORS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, List<Field>> FIELDS = new ConcurrentHashMap<>();
+
+    static {
+        Object factory = null;
+        Method method = null;
+        try {
+            Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+            factory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+            method = factoryClass.getMethod("newConstructorForSerialization", Class.class, Constructor.class);
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            // not available on this JVM, proxies are created through their constructors only
+        }
+        REFLECTION_FACTORY = factory;
+        NEW_CONSTRUCTOR = method;
+    }
+
+    private ProxyInstantiator() {
+    }
+
+    static boolean isSupported() {
+        return NEW_CONSTRUCTOR != null;
+    }
+
+    /**
+     * @param proxyClass generated proxy class, a subclass of the origin class
+     * @param origin     the object whose state is copied to the proxy
+     * @param handler    the handler for the intercepted methods
+     * @return the proxy sharing all the instance fields with the origin
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T instantiate(Class<?> proxyClass, T origin, MethodHandler handler) throws ReflectiveOperationException {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Constructor-less instantiation is not supported by this JVM");
+        }
+        Constructor<?> constructor = CONSTRUCTORS.get(proxyClass);
+        if (constructor == null) {
+            constructor = (Constructor<?>) NEW_CONSTRUCTOR.invoke(REFLECTION_FACTORY, proxyClass,
+                    Object.class.getDeclaredConstructor());
+            CONSTRUCTORS.put(proxyClass, constructor);
+        }
+        T proxy = (T) constructor.newInstance();
+        for (Field field : FIELDS.computeIfAbsent(origin.getClass(), ProxyInstantiator::instanceFields)) {
+            field.set(proxy, field.get(origin));
+        }
+        ((Proxy) proxy).setHandler(handler);
+        return proxy;
+    }
+
+    private static List<Field> instanceFields(Class<?> origin) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> type = origin; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+}
@@ -12,12 +12,16 @@
  */
 package com.epam.healenium.appium;
 
+import com.epam.healenium.HealDeadline;
+import com.epam.healenium.data.HealedLocatorCache;
 import com.epam.healenium.data.LocatorInfo;
+import com.epam.healenium.jfr.HealeniumEvents;
+import com.epam.healenium.jfr.Stage;
+import com.epam.healenium.jfr.StageEvent;
+import com.epam.healenium.treecomparing.Node;
 import com.epam.healenium.utils.StackUtils;
 import com.typesafe.config.Config;
 import io.appium.java_client.AppiumDriver;
-import io.appium.java_client.MobileBy;
-import io.appium.java_client.MobileElement;
 import javassist.util.proxy.MethodHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.openqa.selenium.NoSuchElementException;
@@ -27,118 +31,412 @@ import org.openqa.selenium.remote.ScreenshotException;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 public class ProxyMethodHandler implements MethodHandler {
 
     public final static String PAGE_PREFIX = "page";
+    private final static String XPATH_PREFIX = "By.xpath: ";
+
+    /**
+     * Dispatch tables by driver or element class, built once for the first proxy of each class
+     */
+    private static final Map<Class<?>, Map<Method, Dispatch>> DISPATCH_TABLES = new ConcurrentHashMap<>();
 
     private final AppiumDriver delegate;
     private final AppiumEngine engine;
+    private final HealedLocatorCache healedLocators;
+    private final FailedHealCache failedHeals;
     private final LocatorInfo info = new LocatorInfo();
-    private final Config config;
+    private final Scope root;
+    private final Map<Method, Dispatch> dispatch;
+    private final boolean healEnabled;
+    private final boolean backendIntegration;
+    private final String screenshotPath;
+    private final Duration healTimeout;
 
     ProxyMethodHandler(AppiumEngine engine) {
         this.delegate = engine.getWebDriver();
-        this.config = engine.getConfig();
         this.engine = engine;
+        this.healedLocators = engine.getHealedLocators();
+        this.failedHeals = engine.getFailedHeals();
+        Config config = engine.getConfig();
+        this.healEnabled = config.getBoolean("heal-enabled");
+        this.backendIntegration = config.getBoolean("backend-integration");
+        this.screenshotPath = config.getString("screenshotPath");
+        this.healTimeout = config.getDuration("heal-timeout");
+        this.root = new Scope(delegate, null, null);
+        this.dispatch = dispatchTable(delegate.getClass());
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Method proceed, Object[] args) throws Throwable {
-        //TODO: replace all find methods by Enum
-        switch (method.getName()) {
-            case "findElementByClassName":
-                return findElement(By.className((String) args[0]));
-            case "findElementByName":
-                return findElement(By.name((String) args[0]));
-            case "findElementByTagName":
-                return findElement(By.tagName((String) args[0]));
-            case "findElementByPartialLinkText":
-                return findElement(By.partialLinkText((String) args[0]));
-            case "findElementByLinkText":
-                return findElement(By.linkText((String) args[0]));
-            case "findElementByCssSelector":
-                return findElement(By.cssSelector((String) args[0]));
-            case "findElementById":
-                return findElement(By.id((String) args[0]));
-            case "findElementByAccessibilityId":
-                return findElement(MobileBy.ByAccessibilityId.AccessibilityId((String) args[0]));
-            case "findElementsByAccessibilityId":
-                return findElements(MobileBy.ByAccessibilityId.AccessibilityId((String) args[0]));
-            case "findElementByXPath":
-                return findElement(By.xpath((String) args[0]));
-            case "findElement":
-                log.debug("Caught findElement: invoking the healing version...");
-                return findElement((By) args[0]);
-            case "findElements":
-                log.debug("Caught findElements: invoking the healing version...");
-                return findElements((By) args[0]);
-            case "switchTo":
-                log.debug("Caught switchTo");
-                WebDriver.TargetLocator switched = (WebDriver.TargetLocator) proceed.invoke(delegate, args);
-                ClassLoader classLoader = delegate.getClass().getClassLoader();
-                return Proxy.newProxyInstance(
-                    classLoader,
-                    new Class[]{WebDriver.TargetLocator.class},
-                    new TargetLocatorProxyInvocationHandler(switched, engine));
-            default:
-                return proceed.invoke(delegate, args);
-        }
-    }
-
-    private WebElement findElement(By by) {
-        if (config.getBoolean("heal-enabled")) {
-            String page = PAGE_PREFIX;
+        return dispatch(root, dispatch, proxy, method, args);
+    }
+
+    private Object dispatch(Scope scope, Map<Method, Dispatch> table, Object proxy, Method method, Object[] args) throws Throwable {
+        Dispatch target = table.get(method);
+        if (target == null) {
+            return invokeDelegate(scope.context, method, args);
+        }
+        return target.invoke(this, scope, proxy, method, args);
+    }
+
+    private static Map<Method, Dispatch> dispatchTable(Class<?> type) {
+        return DISPATCH_TABLES.computeIfAbsent(type, ProxyMethodHandler::buildDispatchTable);
+    }
+
+    /**
+     * Maps every lookup method of the driver or element class to its healing version
+     */
+    private static Map<Method, Dispatch> buildDispatchTable(Class<?> type) {
+        Map<Method, Dispatch> table = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            Dispatch target = dispatchFor(method);
+            if (target != null) {
+                table.put(method, target);
+            }
+        }
+        return table;
+    }
+
+    private static Dispatch dispatchFor(Method method) {
+        String name = method.getName();
+        Class<?>[] types = method.getParameterTypes();
+        if (name.equals("switchTo") && types.length == 0) {
+            return (handler, scope, proxy, target, args) -> handler.switchTo(proxy, target, args);
+        }
+        if (name.equals("quit") && types.length == 0) {
+            return (handler, scope, proxy, target, args) -> handler.quit(scope.context, target, args);
+        }
+        if (ScreenCache.isMutating(name)) {
+            return (handler, scope, proxy, target, args) -> handler.invokeMutating(scope.context, target, args);
+        }
+        boolean plural = name.startsWith("findElements");
+        if (!plural && !name.startsWith("findElement")) {
+            return null;
+        }
+        String suffix = name.substring(plural ? "findElements".length() : "findElement".length());
+        if (suffix.isEmpty() && types.length == 1 && types[0] == By.class) {
+            return plural
+                ? (handler, scope, proxy, target, args) -> handler.findElements(scope, (By) args[0])
+                : (handler, scope, proxy, target, args) -> handler.findElement(scope, (By) args[0]);
+        }
+        if (suffix.isEmpty() && types.length == 2 && types[0] == String.class && types[1] == String.class) {
+            return (handler, scope, proxy, target, args) -> {
+                LocatorStrategy strategy = LocatorStrategy.fromSelector((String) args[0]);
+                if (strategy == null) {
+                    return handler.invokeDelegate(scope.context, target, args);
+                }
+                By by = strategy.toBy((String) args[1]);
+                return plural ? handler.findElements(scope, by) : handler.findElement(scope, by);
+            };
+        }
+        LocatorStrategy strategy = LocatorStrategy.fromMethodSuffix(suffix);
+        if (strategy != null && types.length == 1 && types[0] == String.class) {
+            return plural
+                ? (handler, scope, proxy, target, args) -> handler.findElements(scope, strategy.toBy((String) args[0]))
+                : (handler, scope, proxy, target, args) -> handler.findElement(scope, strategy.toBy((String) args[0]));
+        }
+        return null;
+    }
+
+    private Object switchTo(Object proxy, Method method, Object[] args) throws Throwable {
+        log.debug("Caught switchTo");
+        WebDriver.TargetLocator switched = (WebDriver.TargetLocator) invokeMutating(delegate, method, args);
+        ClassLoader classLoader = delegate.getClass().getClassLoader();
+        return Proxy.newProxyInstance(
+            classLoader,
+            new Class[]{WebDriver.TargetLocator.class},
+            new TargetLocatorProxyInvocationHandler(switched, (WebDriver) proxy));
+    }
+
+    /**
+     * Ends the session, its healing report is written once it is over
+     */
+    private Object quit(SearchContext context, Method method, Object[] args) throws Throwable {
+        try {
+            return invokeDelegate(context, method, args);
+        } finally {
+            if (!backendIntegration) {
+                engine.releaseLocator(info);
+            }
+        }
+    }
+
+    /**
+     * Calls a method that may change the screen, the screen snapshot is dropped afterwards
+     */
+    private Object invokeMutating(SearchContext context, Method method, Object[] args) throws Throwable {
+        try {
+            return invokeDelegate(context, method, args);
+        } finally {
+            engine.getScreen().invalidate();
+        }
+    }
+
+    /**
+     * Calls the original method on the wrapped driver or element, rethrowing whatever it throws
+     */
+    private Object invokeDelegate(SearchContext context, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(context, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private WebElement findElement(Scope scope, By by) {
+        StageEvent event = HealeniumEvents.begin(Stage.PROXY).setLocator(by);
+        if (event.isEnabled()) {
+            event.setCaller(callerOf(StackUtils.findOriginCaller(Thread.currentThread().getStackTrace())));
+        }
+        try {
+            WebElement element = findElement(scope, by, event);
+            event.setNodeCount(1);
+            return element;
+        } finally {
+            event.commit();
+        }
+    }
+
+    private WebElement findElement(Scope scope, By by, StageEvent event) {
+        if (healEnabled) {
+            String page = pageOf(scope);
+            String key = cacheKey(page, by);
+            if (healedLocators.contains(key)) {
+                Optional<WebElement> healed = findHealed(scope, by, key);
+                if (healed.isPresent()) {
+                    event.setOutcome("healed before");
+                    return healed.get();
+                }
+            }
+            if (failedHeals.contains(key)) {
+                Optional<NoSuchElementException> failure = findFailure(key);
+                if (failure.isPresent()) {
+                    log.debug("Lookup by {} has already failed on this screen", by);
+                    event.setOutcome("failed before");
+                    throw failure.get();
+                }
+            }
+            long started = System.nanoTime();
             try {
-                WebElement element = delegate.findElement(by);
-                if (config.getBoolean("backend-integration")) {
+                WebElement element = scope.context.findElement(by);
+                event.setOutcome("found");
+                if (backendIntegration) {
                     log.info("\n* Save locator to backend *\n");
                     savePath(by, element);
                 } else {
                     log.info("\n* Save locator to file system *\n");
                     savePath(by, page, element);
                 }
-                return element;
+                return wrap(scope, by, element);
             } catch (NoSuchElementException ex) {
                 log.warn("Failed to find an element using locator {}\nReason: {}\nTrying to heal...", by.toString(), ex.getMessage());
-                return heal(by, page, ex).orElse(null);
+                Optional<WebElement> healed = heal(scope, by, ex, started);
+                if (!healed.isPresent()) {
+                    event.setOutcome("not healed");
+                    rememberFailure(key, started, ex);
+                    throw ex;
+                }
+                event.setOutcome("healed");
+                return healed.get();
             }
         } else {
-            return delegate.findElement(by);
+            event.setOutcome("healing disabled");
+            return scope.context.findElement(by);
+        }
+    }
+
+    private List<WebElement> findElements(Scope scope, By by) {
+        StageEvent event = HealeniumEvents.begin(Stage.PROXY).setLocator(by);
+        if (event.isEnabled()) {
+            event.setCaller(callerOf(StackUtils.findOriginCaller(Thread.currentThread().getStackTrace())));
+        }
+        try {
+            List<WebElement> elements = findElements(scope, by, event);
+            event.setNodeCount(elements.size());
+            return elements;
+        } finally {
+            event.commit();
         }
     }
 
-    private List<MobileElement> findElements(By by) {
-        if (config.getBoolean("heal-enabled")) {
-            String page = PAGE_PREFIX;
+    private List<WebElement> findElements(Scope scope, By by, StageEvent event) {
+        if (healEnabled) {
+            String page = pageOf(scope);
+            String key = cacheKey(page, by);
+            if (healedLocators.contains(key)) {
+                List<WebElement> healed = findAllHealed(scope, by, key);
+                if (!healed.isEmpty()) {
+                    event.setOutcome("healed before");
+                    return healed;
+                }
+            }
+            if (failedHeals.contains(key) && findFailure(key).isPresent()) {
+                log.debug("Lookup by {} has already failed on this screen", by);
+                event.setOutcome("failed before");
+                return Collections.emptyList();
+            }
+            long started = System.nanoTime();
             try {
-                List<MobileElement> elements = delegate.findElements(by);
+                List<WebElement> elements = scope.context.findElements(by);
                 if (elements.isEmpty()) {
                     throw new NoSuchElementException("Failed to find an element");
                 }
-                if (config.getBoolean("backend-integration")) {
+                event.setOutcome("found");
+                if (backendIntegration) {
                     log.info("\n* Save locators to backend *\n");
                     savePath(by, elements);
                 } else {
                     log.info("\n* Save locators to file system *\n");
                     savePath(by, page, elements);
                 }
-                return elements;
+                return wrap(scope, by, elements);
             } catch (NoSuchElementException ex) {
                 log.warn("Failed to find an element using locator {}\nReason: {}\nTrying to heal...", by.toString(), ex.getMessage());
-                return heals(by, page, ex).orElse(Collections.emptyList());
+                Optional<List<WebElement>> healed = heals(scope, by, ex, started);
+                if (!healed.isPresent()) {
+                    event.setOutcome("not healed");
+                    rememberFailure(key, started, ex);
+                    return Collections.emptyList();
+                }
+                event.setOutcome("healed");
+                return healed.get();
             }
         } else {
-            return delegate.findElements(by);
+            event.setOutcome("healing disabled");
+            return scope.context.findElements(by);
+        }
+    }
+
+    /**
+     * Looks the element up by the locator the given one was healed to earlier, if there is one for the caller
+     */
+    private Optional<WebElement> findHealed(Scope scope, By by, String key) {
+        String caller = callerOf(StackUtils.findOriginCaller(Thread.currentThread().getStackTrace()));
+        Optional<String> xpath = healedLocators.get(key, caller);
+        if (!xpath.isPresent()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(wrap(scope, by, scope.context.findElement(By.xpath(xpath.get()))));
+        } catch (NoSuchElementException ex) {
+            log.warn("Healed locator {} of {} doesn't match anymore, using the original one", xpath.get(), by);
+            healedLocators.remove(key, caller);
+            return Optional.empty();
+        }
+    }
+
+    private List<WebElement> findAllHealed(Scope scope, By by, String key) {
+        String caller = callerOf(StackUtils.findOriginCaller(Thread.currentThread().getStackTrace()));
+        Optional<String> xpath = healedLocators.get(key, caller);
+        if (!xpath.isPresent()) {
+            return Collections.emptyList();
+        }
+        List<WebElement> elements = scope.context.findElements(By.xpath(xpath.get()));
+        if (elements.isEmpty()) {
+            log.warn("Healed locator {} of {} doesn't match anymore, using the original one", xpath.get(), by);
+            healedLocators.remove(key, caller);
         }
+        return wrap(scope, by, elements);
+    }
+
+    /**
+     * Remembers the healed locator, so that the next lookups by the same caller skip the broken one
+     */
+    private void rememberHealed(Scope scope, By by, Optional<StackTraceElement> caller, By healed) {
+        String healedValue = healed.toString();
+        if (healedValue.startsWith(XPATH_PREFIX)) {
+            healedLocators.put(cacheKey(scope, by), callerOf(caller), healedValue.substring(XPATH_PREFIX.length()));
+        }
+    }
+
+    private Optional<NoSuchElementException> findFailure(String key) {
+        String caller = callerOf(StackUtils.findOriginCaller(Thread.currentThread().getStackTrace()));
+        return failedHeals.get(key, caller, () -> engine.getScreen().current().getFingerprint());
+    }
+
+    /**
+     * Remembers a lookup that could not be healed on the screen it has failed on
+     */
+    private void rememberFailure(String key, long started, NoSuchElementException ex) {
+        String caller = callerOf(StackUtils.findOriginCaller(Thread.currentThread().getStackTrace()));
+        failedHeals.put(key, caller, engine.getScreen().current(started).getFingerprint(), ex);
+    }
+
+    private String cacheKey(Scope scope, By by) {
+        return cacheKey(pageOf(scope), by);
+    }
+
+    private static String cacheKey(String page, By by) {
+        return page + " " + by;
+    }
+
+    /**
+     * @return the context the locators of the scope are kept in: the one of the current screen for the driver,
+     * the one of the screen it was found on for an element
+     */
+    private String pageOf(Scope scope) {
+        return scope.page != null ? scope.page : engine.getScreenContext().current();
+    }
+
+    /**
+     * @return the context the path of the locator is stored in: the one of the current screen, else the constant one
+     * of the earlier versions, else the one it was saved in last. A fingerprint changes with the resource ids of the
+     * screen, so the locator that broke may have moved the screen to another context
+     */
+    private String storedPage(Scope scope, String locator) {
+        String page = pageOf(scope);
+        if (scope.page != null || PAGE_PREFIX.equals(page) || engine.isPathExists(locator, page)) {
+            return page;
+        }
+        if (engine.isPathExists(locator, PAGE_PREFIX)) {
+            return PAGE_PREFIX;
+        }
+        Optional<String> stored = engine.findStoredContext(locator);
+        return stored.orElse(page);
+    }
+
+    private static String callerOf(Optional<StackTraceElement> caller) {
+        return caller.map(it -> it.getClassName() + "." + it.getMethodName()).orElse("");
+    }
+
+    /**
+     * Wraps a found element, so that lookups made from it are healed within its subtree
+     */
+    private WebElement wrap(Scope scope, By by, WebElement element) {
+        if (element == null || !ProxyInstantiator.isSupported()) {
+            return element;
+        }
+        Scope child = new Scope(element, element, pageOf(scope) + " > " + by);
+        Map<Method, Dispatch> table = dispatchTable(element.getClass());
+        try {
+            return ProxyInstantiator.instantiate(DriverWrapper.proxyClass(element.getClass()), element,
+                (proxy, method, proceed, args) -> dispatch(child, table, proxy, method, args));
+        } catch (Exception ex) {
+            log.debug("Failed to wrap element {}, its lookups won't be healed", element, ex);
+            return element;
+        }
+    }
+
+    private List<WebElement> wrap(Scope scope, By by, List<WebElement> elements) {
+        List<WebElement> result = new ArrayList<>(elements.size());
+        for (WebElement element : elements) {
+            result.add(wrap(scope, by, element));
+        }
+        return result;
     }
 
     private void savePath(Object locator, String page, WebElement element) {
@@ -149,23 +447,20 @@ public class ProxyMethodHandler implements MethodHandler {
         engine.savePath(by, element);
     }
 
-    private void savePath(Object locator, String page, List<MobileElement> elements) {
-        for (MobileElement element : elements) {
-            engine.savePath(locator, page, element);
-        }
+    private void savePath(Object locator, String page, List<WebElement> elements) {
+        engine.savePaths(locator, page, elements);
     }
 
-    private void savePath(By by, List<MobileElement> elements) {
-        for (MobileElement element : elements) {
-            engine.savePath(by, element);
-        }
+    private void savePath(By by, List<WebElement> elements) {
+        engine.savePaths(by, elements);
     }
 
-    private Optional<WebElement> heal(By by, String pageName, NoSuchElementException ex) {
+    private Optional<WebElement> heal(Scope scope, By by, NoSuchElementException ex, long started) {
         String locator = by.toString();
+        String pageName = backendIntegration ? pageOf(scope) : storedPage(scope, locator);
         log.info("locator.hashCode of {} = {}", locator, locator.hashCode());
 
-        if (!config.getBoolean("backend-integration")) {
+        if (!backendIntegration) {
             if (!engine.isPathExists(locator, pageName)) {//TODO
                 log.warn("Healing canceled because no locator data exists");
                 return Optional.empty();
@@ -175,20 +470,24 @@ public class ProxyMethodHandler implements MethodHandler {
         Optional<StackTraceElement> traceElement = StackUtils.findOriginCaller(Thread.currentThread().getStackTrace());
 
         LocatorInfo.Entry entry = reportBasicInfo(pageName, ex);
-        return healLocator(by, pageName, traceElement).map(healed -> {
+        HealDeadline deadline = HealDeadline.start(healTimeout);
+        return healLocator(by, scope, pageName, traceElement, started, deadline).map(healed -> {
+            entry.setHealDeadlineExceeded(deadline.isExceeded());
             reportFailedInfo(locator, entry, healed);
-            if (!config.getBoolean("backend-integration")) {
+            rememberHealed(scope, by, traceElement, healed);
+            if (!backendIntegration) {
                 engine.saveLocator(info);//TODO
             }
-            return delegate.findElement(healed);
+            return wrap(scope, by, scope.context.findElement(healed));
         });
     }
 
-    private Optional<List<MobileElement>> heals(By by, String pageName, NoSuchElementException ex) {
+    private Optional<List<WebElement>> heals(Scope scope, By by, NoSuchElementException ex, long started) {
         String locator = by.toString();
+        String pageName = backendIntegration ? pageOf(scope) : storedPage(scope, locator);
         log.info("locator.hashCode of {} = {}", locator, locator.hashCode());
 
-        if (!config.getBoolean("backend-integration")) {
+        if (!backendIntegration) {
             if (!engine.isPathExists(locator, pageName)) {//TODO
                 log.warn("Healing canceled because no locator data exists");
                 return Optional.empty();
@@ -198,12 +497,15 @@ public class ProxyMethodHandler implements MethodHandler {
         Optional<StackTraceElement> traceElement = StackUtils.findOriginCaller(Thread.currentThread().getStackTrace());
 
         LocatorInfo.Entry entry = reportBasicInfo(pageName, ex);
-        return healLocator(by, pageName, traceElement).map(healed -> {
+        HealDeadline deadline = HealDeadline.start(healTimeout);
+        return healLocator(by, scope, pageName, traceElement, started, deadline).map(healed -> {
+            entry.setHealDeadlineExceeded(deadline.isExceeded());
             reportFailedInfo(locator, entry, healed);
-            if (!config.getBoolean("backend-integration")) {
+            rememberHealed(scope, by, traceElement, healed);
+            if (!backendIntegration) {
                 engine.saveLocator(info);//TODO
             }
-            return delegate.findElements(healed);
+            return wrap(scope, by, scope.context.findElements(healed));
         });
     }
 
@@ -212,11 +514,14 @@ public class ProxyMethodHandler implements MethodHandler {
         infoEntry.setFailedLocatorType(locator.substring(0, locator.indexOf(':')));
         infoEntry.setHealedLocatorValue(healed.toString());
         infoEntry.setScreenShotPath(captureScreen());
-        int pos = info.getElementsInfo().indexOf(infoEntry);
-        if (pos != -1) {
-            info.getElementsInfo().set(pos, infoEntry);
-        } else {
-            info.getElementsInfo().add(infoEntry);
+        // the same session may be used by several test threads
+        synchronized (info) {
+            int pos = info.getElementsInfo().indexOf(infoEntry);
+            if (pos != -1) {
+                info.getElementsInfo().set(pos, infoEntry);
+            } else {
+                info.getElementsInfo().add(infoEntry);
+            }
         }
     }
 
@@ -248,19 +553,40 @@ public class ProxyMethodHandler implements MethodHandler {
             .findFirst();
     }
 
-    private Optional<By> healLocator(By by, String page, Optional<StackTraceElement> optionalElement) {
+    private Optional<By> healLocator(By by, Scope scope, String pageName, Optional<StackTraceElement> optionalElement, long started,
+                                     HealDeadline deadline) {
         log.debug("* healLocator start: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
-        List<By> choices;
-        if (config.getBoolean("backend-integration")) {
-            choices = engine.findNewLocations(by, pageSource(), optionalElement);
+        // the last valid path is fetched from the backend while the page source is read
+        CompletableFuture<Optional<List<Node>>> lastValidPath = backendIntegration
+                ? engine.requestLastValidPath(by, optionalElement, deadline)
+                : null;
+        // the screen the lookup has just failed on, an older snapshot may still hold the element
+        String source = engine.getScreen().current(started).getSource();
+        List<HealCandidate> choices;
+        if (deadline.isExpired()) {
+            log.warn("Heal deadline of {} reached while reading the page source", healTimeout);
+            if (lastValidPath != null) {
+                lastValidPath.cancel(true);
+            }
+            choices = Collections.emptyList();
+        } else if (scope.element != null) {
+            choices = backendIntegration
+                ? engine.findNewLocations(lastValidPath, source, scope.element, deadline)
+                : engine.findNewLocations(by.toString(), pageName, source, scope.element, deadline);
+        } else if (backendIntegration) {
+            choices = engine.findNewLocations(lastValidPath, source, (WebElement) null, deadline);
         } else {
-            choices = engine.findNewLocations(by.toString(), page, pageSource());
+            choices = engine.findNewLocations(by.toString(), pageName, source, deadline);
+        }
+        if (deadline.isExceeded()) {
+            log.warn("Heal of {} hit the deadline of {}", by, healTimeout);
         }
-        Optional<By> result = choices.stream().findFirst();
-        result.ifPresent(primary ->
-            log.warn("Using healed locator: {}", primary.toString()));
-        choices.stream().skip(1).forEach(otherChoice ->
-            log.warn("Other choice: {}", otherChoice.toString()));
+        Optional<HealCandidate> healed = choices.stream().filter(HealCandidate::isValid).findFirst();
+        healed.ifPresent(primary ->
+            log.warn("Using healed locator: {}", primary));
+        choices.stream().filter(it -> it != healed.orElse(null)).forEach(otherChoice ->
+            log.warn("Other choice: {}", otherChoice));
+        Optional<By> result = healed.map(HealCandidate::getLocator);
         if (!result.isPresent()) {
             log.warn("New element locators have not been found");
         }
@@ -272,9 +598,9 @@ public class ProxyMethodHandler implements MethodHandler {
         String path = "No screenshot available";
         try {
             byte[] source = engine.getWebDriver().getScreenshotAs(OutputType.BYTES);
-            FileHandler.createDir(new File(config.getString("screenshotPath")));
+            FileHandler.createDir(new File(screenshotPath));
             File file =
-                new File(config.getString("screenshotPath") + "screenshot_" + LocalDateTime
+                new File(screenshotPath + "screenshot_" + LocalDateTime
                     .now()
                     .format(DateTimeFormatter.ofPattern("dd-MMM-yyyy-hh-mm-ss").withLocale(Locale.US)) + ".png");
             Files.write(file.toPath(), source, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
@@ -287,8 +613,25 @@ public class ProxyMethodHandler implements MethodHandler {
         return path;
     }
 
-    private String pageSource() {
-        return engine.getWebDriver().getPageSource();
+    @FunctionalInterface
+    private interface Dispatch {
+        Object invoke(ProxyMethodHandler handler, Scope scope, Object proxy, Method method, Object[] args) throws Throwable;
+    }
+
+    /**
+     * Where a lookup is made: the driver or an element found earlier, and the page context its locators are kept in,
+     * null for the driver, whose context is the one of the current screen
+     */
+    private static class Scope {
+        private final SearchContext context;
+        private final WebElement element;
+        private final String page;
+
+        private Scope(SearchContext context, WebElement element, String page) {
+            this.context = context;
+            this.element = element;
+            this.page = page;
+        }
     }
 
 }
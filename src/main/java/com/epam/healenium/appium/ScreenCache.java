@@ -0,0 +1,124 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import com.epam.healenium.jfr.HealeniumEvents;
+import com.epam.healenium.jfr.Stage;
+import com.epam.healenium.jfr.StageEvent;
+import com.epam.healenium.scoring.StartTagCache;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.openqa.selenium.WebDriver;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the snapshot of the current screen of one session, so that capture and healing on an unchanged screen
+ * cost a single page source request. The snapshot is dropped when a command that may change the screen goes
+ * through the wrapper, or when it gets older than the configured ttl.
+ */
+@Slf4j
+public class ScreenCache {
+
+    /**
+     * Driver and element methods after which the screen is considered changed
+     */
+    private static final Set<String> MUTATING_METHODS = new HashSet<>(Arrays.asList(
+        "click", "submit", "sendKeys", "clear", "setValue", "replaceValue", "tap", "swipe",
+        "performTouchAction", "performMultiTouchAction", "perform", "resetInputState", "pressKey", "longPressKey",
+        "hideKeyboard",
+        "get", "navigate", "switchTo", "rotate", "executeScript", "executeAsyncScript",
+        "launchApp", "closeApp", "resetApp", "activateApp", "terminateApp", "runAppInBackground",
+        "startActivity", "openNotifications", "toggleWifi", "toggleData", "toggleAirplaneMode"
+    ));
+
+    private final WebDriver driver;
+    private final long ttlNanos;
+    /**
+     * The start tags of the last screens, so that a screen that changed in a few views is decoded for those views only
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final StartTagCache startTags = new StartTagCache();
+    private long generation;
+    private ScreenSnapshot snapshot;
+
+    ScreenCache(WebDriver driver, Duration ttl) {
+        this.driver = driver;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    static boolean isMutating(String methodName) {
+        return MUTATING_METHODS.contains(methodName);
+    }
+
+    /**
+     * @return the snapshot of the current screen generation, the page source is requested if there is none yet
+     */
+    public ScreenSnapshot current() {
+        return current(Long.MIN_VALUE);
+    }
+
+    /**
+     * @param notBefore {@link System#nanoTime()} before which the snapshot must not be taken, e.g. the start of
+     *                  a lookup that has just failed on the device
+     * @return the snapshot of the current screen generation taken not before the given time
+     */
+    public ScreenSnapshot current(long notBefore) {
+        long expected;
+        synchronized (this) {
+            if (snapshot != null && !snapshot.isExpired(ttlNanos)
+                    && (notBefore == Long.MIN_VALUE || !snapshot.isTakenBefore(notBefore))) {
+                return snapshot;
+            }
+            expected = generation;
+        }
+        StageEvent event = HealeniumEvents.begin(Stage.PAGE_SOURCE);
+        String source = driver.getPageSource();
+        event.setPayloadSize(source == null ? 0 : source.length()).commit();
+        ScreenSnapshot fresh = new ScreenSnapshot(source, expected, startTags);
+        synchronized (this) {
+            // a command may have changed the screen while the source was requested
+            if (generation == expected) {
+                snapshot = fresh;
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * @return the snapshot of the current generation or null if it has to be requested
+     */
+    public synchronized ScreenSnapshot peek() {
+        return snapshot != null && !snapshot.isExpired(ttlNanos) ? snapshot : null;
+    }
+
+    /**
+     * @return the current screen generation, it changes when a command that may change the screen goes through
+     * the wrapper
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Starts a new screen generation
+     */
+    public synchronized void invalidate() {
+        generation++;
+        snapshot = null;
+    }
+}
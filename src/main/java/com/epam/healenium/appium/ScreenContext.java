@@ -0,0 +1,100 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import io.appium.java_client.android.StartsActivity;
+import lombok.extern.slf4j.Slf4j;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Resolves the context the locators of the current screen are stored and cached in, so that the screens of an app
+ * don't share one namespace. The context is resolved once per screen generation of the {@link ScreenCache}, and
+ * again when it gets older than the snapshot ttl.
+ */
+@Slf4j
+class ScreenContext {
+
+    enum Mode {
+        /**
+         * The current Android activity, a structural fingerprint where there is no activity or the driver doesn't
+         * report it at the moment
+         */
+        ACTIVITY,
+        /**
+         * A hash of the distinct view classes and resource ids of the screen, see {@link ScreenSnapshot#getStructure()}
+         */
+        FINGERPRINT,
+        /**
+         * The constant context of the earlier versions, shared by all the screens
+         */
+        PAGE
+    }
+
+    private final WebDriver driver;
+    private final ScreenCache screen;
+    private final Mode mode;
+    private final long ttlNanos;
+    private boolean activitySupported;
+    private String context;
+    private long generation;
+    private long resolvedAt;
+
+    ScreenContext(WebDriver driver, ScreenCache screen, String mode, Duration ttl) {
+        this.driver = driver;
+        this.screen = screen;
+        this.mode = Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        this.ttlNanos = ttl.toNanos();
+        this.activitySupported = driver instanceof StartsActivity;
+    }
+
+    /**
+     * @return the context of the current screen
+     */
+    synchronized String current() {
+        long currentGeneration = screen.getGeneration();
+        if (context != null && generation == currentGeneration && System.nanoTime() - resolvedAt < ttlNanos) {
+            return context;
+        }
+        context = resolve();
+        generation = currentGeneration;
+        resolvedAt = System.nanoTime();
+        return context;
+    }
+
+    private String resolve() {
+        if (mode == Mode.PAGE) {
+            return ProxyMethodHandler.PAGE_PREFIX;
+        }
+        if (mode == Mode.ACTIVITY && activitySupported) {
+            try {
+                String activity = ((StartsActivity) driver).currentActivity();
+                if (activity != null && !activity.isEmpty()) {
+                    return activity;
+                }
+                // e.g. while switching activities, only this screen falls back to its fingerprint
+            } catch (UnsupportedCommandException e) {
+                // the session can't tell its activity, don't ask on every screen
+                log.debug("The driver doesn't report the current activity, using screen fingerprints", e);
+                activitySupported = false;
+            } catch (WebDriverException e) {
+                log.debug("Failed to get the current activity, using the screen fingerprint", e);
+            }
+        }
+        return "screen-" + Long.toHexString(screen.current().getStructure());
+    }
+}
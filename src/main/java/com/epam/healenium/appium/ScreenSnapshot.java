@@ -0,0 +1,202 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import com.epam.healenium.scoring.CompactTree;
+import com.epam.healenium.scoring.PageSourceScanner;
+import com.epam.healenium.scoring.StartTagCache;
+import com.epam.healenium.treecomparing.Node;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * The state of one screen generation: the page source, its {@link CompactTree} and an index of the tree by view class
+ * and bounds. They are built on first use and then shared by all the lookups of the generation.
+ */
+public class ScreenSnapshot {
+
+    /**
+     * Tell apart the views sharing a class and bounds, e.g. nested layouts filling the same area
+     */
+    private static final String[] DISTINGUISHING_ATTRIBUTES = {"resource-id", "text", "content-desc"};
+
+    @Getter
+    private final String source;
+    @Getter
+    private final long generation;
+    private final long createdAt;
+    private final StartTagCache startTags;
+    private volatile CompactTree tree;
+    private volatile Map<String, int[]> index;
+    private volatile long fingerprint;
+    private volatile long structure;
+
+    ScreenSnapshot(String source, long generation, StartTagCache startTags) {
+        this.source = source;
+        this.generation = generation;
+        this.startTags = startTags;
+        this.createdAt = System.nanoTime();
+    }
+
+    public CompactTree getTree() {
+        CompactTree result = tree;
+        if (result == null) {
+            synchronized (this) {
+                result = tree;
+                if (result == null) {
+                    result = PageSourceScanner.scan(source, startTags);
+                    tree = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a 64-bit hash of the page source, equal for identical screens
+     */
+    public long getFingerprint() {
+        long result = fingerprint;
+        if (result == 0) {
+            // FNV-1a
+            result = 0xcbf29ce484222325L;
+            for (int i = 0; i < source.length(); i++) {
+                result ^= source.charAt(i);
+                result *= 0x100000001b3L;
+            }
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return a 64-bit hash of the distinct view classes and resource ids of the screen, equal for the same screen
+     * whatever the texts it shows or the number of items of its lists
+     */
+    public long getStructure() {
+        long result = structure;
+        if (result == 0) {
+            CompactTree tree = getTree();
+            Set<String> views = new TreeSet<>();
+            for (int node = 0; node < tree.size(); node++) {
+                String id = tree.attribute(node, "resource-id");
+                views.add(id == null ? tree.tag(node) : tree.tag(node) + "#" + id);
+            }
+            // FNV-1a
+            result = 0xcbf29ce484222325L;
+            for (String view : views) {
+                for (int i = 0; i < view.length(); i++) {
+                    result ^= view.charAt(i);
+                    result *= 0x100000001b3L;
+                }
+                result ^= '\n';
+                result *= 0x100000001b3L;
+            }
+            structure = result;
+        }
+        return result;
+    }
+
+    /**
+     * @param tag        the view class
+     * @param bounds     the view bounds as reported by the device
+     * @param attributes the attributes of the view as reported by the device, only asked for when other views have
+     *                   the same class and bounds
+     * @return the path from the root to the view, or empty if the view is not on this screen or can't be told apart
+     * from the others
+     */
+    public Optional<List<Node>> findPath(String tag, String bounds, Function<String, String> attributes) {
+        int node = locate(tag, bounds, attributes);
+        return node == CompactTree.NONE ? Optional.empty() : Optional.of(getTree().path(node));
+    }
+
+    /**
+     * @return the node of the view, NONE if there is no such view or several views match
+     */
+    private int locate(String tag, String bounds, Function<String, String> attributes) {
+        if (tag == null || bounds == null) {
+            return CompactTree.NONE;
+        }
+        int[] nodes = getIndex().get(key(tag, bounds));
+        if (nodes == null) {
+            return CompactTree.NONE;
+        }
+        if (nodes.length == 1) {
+            return nodes[0];
+        }
+        CompactTree tree = getTree();
+        for (String name : DISTINGUISHING_ATTRIBUTES) {
+            String value = Objects.toString(attributes.apply(name), "");
+            int[] matching = Arrays.stream(nodes)
+                    .filter(node -> value.equals(Objects.toString(tree.attribute(node, name), "")))
+                    .toArray();
+            if (matching.length == 1) {
+                return matching[0];
+            }
+            if (matching.length > 1) {
+                nodes = matching;
+            }
+        }
+        return CompactTree.NONE;
+    }
+
+    boolean isExpired(long ttlNanos) {
+        return System.nanoTime() - createdAt >= ttlNanos;
+    }
+
+    boolean isTakenBefore(long nanoTime) {
+        return createdAt - nanoTime < 0;
+    }
+
+    private Map<String, int[]> getIndex() {
+        Map<String, int[]> result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    result = buildIndex(getTree());
+                    index = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, int[]> buildIndex(CompactTree tree) {
+        Map<String, int[]> result = new HashMap<>();
+        for (int node = 0; node < tree.size(); node++) {
+            String bounds = tree.attribute(node, "bounds");
+            if (bounds != null) {
+                result.merge(key(tree.tag(node), bounds), new int[]{node}, (nodes, added) -> {
+                    int[] merged = Arrays.copyOf(nodes, nodes.length + 1);
+                    merged[nodes.length] = added[0];
+                    return merged;
+                });
+            }
+        }
+        return result;
+    }
+
+    private static String key(String tag, String bounds) {
+        return tag + bounds;
+    }
+}
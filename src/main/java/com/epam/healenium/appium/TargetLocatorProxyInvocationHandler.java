@@ -13,7 +13,9 @@
 package com.epam.healenium.appium;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import javassist.util.proxy.Proxy;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebDriver.TargetLocator;
 
@@ -23,20 +25,30 @@ import org.openqa.selenium.WebDriver.TargetLocator;
 class TargetLocatorProxyInvocationHandler implements InvocationHandler {
 
     private final TargetLocator delegate;
-    private final AppiumEngine engine;
+    private final WebDriver wrapper;
 
-    TargetLocatorProxyInvocationHandler(TargetLocator delegate, AppiumEngine engine) {
+    /**
+     * @param delegate the target locator of the wrapped driver
+     * @param wrapper  the healing driver to hand back instead of the wrapped one, so that no new wrapper
+     *                 (and no new session) is created on every switch
+     */
+    TargetLocatorProxyInvocationHandler(TargetLocator delegate, WebDriver wrapper) {
         this.delegate = delegate;
-        this.engine = engine;
+        this.wrapper = wrapper;
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        Object result = method.invoke(delegate, args);
-        boolean isProxy = result instanceof DriverWrapper;
+        Object result;
+        try {
+            result = method.invoke(delegate, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+        boolean isProxy = result instanceof Proxy;
         boolean isWebDriver = result instanceof WebDriver;
         if (isWebDriver && !isProxy) {
-            return DriverWrapper.create(engine);
+            return wrapper;
         } else {
             return result;
         }
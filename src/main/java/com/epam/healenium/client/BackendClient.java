@@ -0,0 +1,125 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import com.epam.healenium.HealDeadline;
+import com.epam.healenium.data.LocatorIndex;
+import com.epam.healenium.model.RequestDto;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.Scored;
+import com.typesafe.config.Config;
+import org.openqa.selenium.By;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The operations of hlm-backend: selectors by caller class and method with their last valid paths, and healing
+ * results. Selected with backend-type, either {@link RestClient} calling a hlm-backend instance or
+ * {@link EmbeddedBackend} keeping the data in process.
+ */
+public interface BackendClient {
+
+    /**
+     * @param config       the effective config, its backend-type selects the implementation
+     * @param locatorIndex the index {@link RestClient} serves known paths from
+     * @return the backend client
+     */
+    static BackendClient create(Config config, LocatorIndex locatorIndex) {
+        String type = config.getString("backend-type");
+        switch (type) {
+            case "http":
+                return new RestClient(config, locatorIndex);
+            case "embedded":
+                return new EmbeddedBackend(config);
+            default:
+                throw new IllegalArgumentException("Unknown backend-type " + type + ", expected http or embedded");
+        }
+    }
+
+    /**
+     * Saves the last valid path of a selector
+     * @param by      the selector
+     * @param element the caller the selector was used by
+     * @param nodePath the path of the element it found
+     */
+    void selectorRequest(By by, StackTraceElement element, List<Node> nodePath);
+
+    /**
+     * Saves the last valid path of a selector without blocking, in order with the other writes
+     * @return completes with true once the backend has the path
+     */
+    CompletableFuture<Boolean> selectorRequestAsync(By by, StackTraceElement element, List<Node> nodePath);
+
+    /**
+     * Saves the last valid path of a selector, with the test data replacements applied to the selector and caller
+     */
+    void selectorRequestTest(By by, StackTraceElement element, List<Node> nodePath, String oldElement, String newElement, String oldMethod, String newMethod);
+
+    /**
+     * Saves a test data replacement of a selector without blocking, in order with the other writes
+     * @return completes with true once the backend has the path
+     */
+    CompletableFuture<Boolean> selectorRequestTestAsync(By by, StackTraceElement element, List<Node> nodePath, String oldElement, String newElement, String oldMethod, String newMethod);
+
+    /**
+     * Collect results from previous healing
+     * @param locator    the healed selector
+     * @param element    the caller the selector was used by
+     * @param page       the page source it was healed on
+     * @param choices    the candidates
+     * @param healed     the candidate used
+     * @param screenshot the screen it was healed on
+     */
+    void healRequest(By locator, StackTraceElement element, String page, List<Scored<By>> choices, Scored<By> healed, byte[] screenshot);
+
+    /**
+     * Get node path for given selector
+     * @param locator the selector
+     * @param element the caller the selector was used by
+     * @return the node path, empty if the backend doesn't have it
+     */
+    Optional<List<Node>> getLastValidPath(By locator, StackTraceElement element);
+
+    /**
+     * Get node path for given selector within the heal deadline
+     * @param deadline the lookup is given no more than the time left
+     * @return the node path, empty if the backend doesn't have it or didn't answer in time
+     */
+    Optional<List<Node>> getLastValidPath(By locator, StackTraceElement element, HealDeadline deadline);
+
+    /**
+     * Get node path for given selector within the heal deadline, without blocking
+     * @param deadline the lookup is given no more than the time left
+     * @return the node path, empty if the backend doesn't have it or didn't answer in time. It never completes
+     * exceptionally
+     */
+    CompletableFuture<Optional<List<Node>>> getLastValidPathAsync(By locator, StackTraceElement element, HealDeadline deadline);
+
+    /**
+     * Saves a selector right away, e.g. for a bulk sync that tracks failures itself
+     * @param requestDto the selector with its node path
+     * @return true if the backend accepted it
+     */
+    boolean saveSelector(RequestDto requestDto);
+
+    /**
+     * Gets the node path of a selector, bypassing any client side index or cache
+     * @param requestDto the locator, class name and method name of the selector
+     * @return the node path, empty if the backend doesn't have it
+     * @throws IOException if the backend could not be reached
+     */
+    Optional<List<Node>> fetchLastValidPath(RequestDto requestDto) throws IOException;
+}
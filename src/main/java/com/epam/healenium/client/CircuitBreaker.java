@@ -0,0 +1,152 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Guards the backend from being called while it is known to be unavailable.
+ * After {@code failureThreshold} consecutive failures the circuit opens and every call is rejected
+ * until {@code openDuration} passes. Then a single probe call is let through: its success closes the circuit,
+ * its failure opens it again. A probe abandoned without an answer lets the next call probe.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final Consumer<State> listener;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    private final AtomicLong openedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration, Consumer<State> listener) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.listener = listener;
+    }
+
+    /**
+     * @return true if a call to the backend may be made right now
+     */
+    public boolean allowRequest() {
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+                transition(State.HALF_OPEN);
+                return true;
+            }
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    public void onSuccess() {
+        boolean changed;
+        synchronized (this) {
+            failures = 0;
+            changed = state != State.CLOSED;
+            if (changed) {
+                transition(State.CLOSED);
+            }
+        }
+        if (changed) {
+            listener.accept(State.CLOSED);
+        }
+    }
+
+    public void onFailure() {
+        failureCount.incrementAndGet();
+        boolean changed = false;
+        synchronized (this) {
+            failures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+                openedAt = System.nanoTime();
+                openedCount.incrementAndGet();
+                transition(State.OPEN);
+                changed = true;
+            }
+        }
+        if (changed) {
+            listener.accept(State.OPEN);
+        }
+    }
+
+    /**
+     * Settles a call that ended without telling whether the backend is healthy, e.g. a cancelled call or one that ran
+     * out of the caller's time. If it was the probe, the next call may probe again right away
+     */
+    public void onAbandoned() {
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                log.info("Backend circuit probe was abandoned, HALF_OPEN -> OPEN until the next call probes again");
+                openedAt = System.nanoTime() - openDurationNanos;
+                state = State.OPEN;
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return how many times the circuit has been opened
+     */
+    public long getOpenedCount() {
+        return openedCount.get();
+    }
+
+    /**
+     * @return how many calls were rejected without touching the network
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return how many backend calls failed in total
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getOpenDurationMillis() {
+        return openDurationNanos / 1_000_000;
+    }
+
+    private void transition(State target) {
+        if (target == State.OPEN) {
+            log.warn("Backend circuit {} -> OPEN after {} failure(s), calls are suspended for {} ms",
+                    state, failures, getOpenDurationMillis());
+        } else {
+            log.info("Backend circuit {} -> {}", state, target);
+        }
+        state = target;
+    }
+}
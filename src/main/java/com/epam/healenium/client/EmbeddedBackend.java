@@ -0,0 +1,279 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import com.epam.healenium.HealDeadline;
+import com.epam.healenium.converter.NodeDeserializer;
+import com.epam.healenium.converter.NodeSerializer;
+import com.epam.healenium.mapper.HealeniumMapper;
+import com.epam.healenium.mapper.HealeniumMapperImpl;
+import com.epam.healenium.model.RequestDto;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.Scored;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.typesafe.config.Config;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.openqa.selenium.By;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * The hlm-backend operations in process, for single machine runs and tests that need no backend instance.
+ * <p>Selectors are kept in memory by session key, caller class and method and locator, with the history of their
+ * paths, and in the order they were saved in selectors.ndjson of embeddedBackendPath. A path is added to the history
+ * only if it differs from the last one. Healing results go to healing.ndjson, their screenshots to the screenshots
+ * folder. Both files are read back at start, so the data outlives the run like the one of a backend instance.</p>
+ */
+@Slf4j
+public class EmbeddedBackend implements BackendClient {
+
+    private static final String SELECTORS = "selectors.ndjson";
+    private static final String HEALING = "healing.ndjson";
+
+    private final Path directory;
+    private final String sessionKey;
+    private final ObjectMapper objectMapper;
+    private final HealeniumMapper mapper = new HealeniumMapperImpl();
+    private final Map<String, List<StoredRequest>> selectors = new ConcurrentHashMap<>();
+    private final List<StoredRequest> healingResults = new CopyOnWriteArrayList<>();
+    /**
+     * Appends to the files in the order of the writes, so that saving doesn't wait for the disk
+     */
+    private final ExecutorService writer;
+
+    public EmbeddedBackend(Config config) {
+        directory = Paths.get(config.getString("embeddedBackendPath"));
+        sessionKey = config.hasPath("sessionKey") ? config.getString("sessionKey") : "";
+        SimpleModule module = new SimpleModule("node");
+        module.addSerializer(Node.class, new NodeSerializer());
+        module.addDeserializer(Node.class, new NodeDeserializer());
+        objectMapper = new ObjectMapper().registerModule(module);
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "healenium-embedded-backend");
+            thread.setDaemon(true);
+            return thread;
+        });
+        load();
+    }
+
+    @Override
+    public void selectorRequest(By by, StackTraceElement element, List<Node> nodePath) {
+        selectorRequestAsync(by, element, nodePath).join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> selectorRequestAsync(By by, StackTraceElement element, List<Node> nodePath) {
+        return save(mapper.buildDto(by, element, nodePath));
+    }
+
+    @Override
+    public void selectorRequestTest(By by, StackTraceElement element, List<Node> nodePath, String oldElement, String newElement, String oldMethod, String newMethod) {
+        selectorRequestTestAsync(by, element, nodePath, oldElement, newElement, oldMethod, newMethod).join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> selectorRequestTestAsync(By by, StackTraceElement element, List<Node> nodePath, String oldElement, String newElement, String oldMethod, String newMethod) {
+        try {
+            // the same replacement the backend gets from RestClient
+            String json = objectMapper.writeValueAsString(mapper.buildDto(by, element, nodePath))
+                    .replace(oldElement, newElement).replace(oldMethod, newMethod);
+            return save(objectMapper.readValue(json, RequestDto.class));
+        } catch (IOException e) {
+            log.warn("Failed to map selector {}", by, e);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    @Override
+    public void healRequest(By locator, StackTraceElement element, String page, List<Scored<By>> choices, Scored<By> healed, byte[] screenshot) {
+        RequestDto requestDto = mapper.buildDto(locator, element, page, choices, healed, null);
+        StoredRequest stored = new StoredRequest()
+                .setTime(System.currentTimeMillis())
+                .setRequest(requestDto);
+        healingResults.add(stored);
+        append(HEALING, stored, screenshot).join();
+    }
+
+    @Override
+    public Optional<List<Node>> getLastValidPath(By locator, StackTraceElement element) {
+        return fetch(mapper.buildDto(locator, element));
+    }
+
+    @Override
+    public Optional<List<Node>> getLastValidPath(By locator, StackTraceElement element, HealDeadline deadline) {
+        return fetch(mapper.buildDto(locator, element));
+    }
+
+    @Override
+    public CompletableFuture<Optional<List<Node>>> getLastValidPathAsync(By locator, StackTraceElement element, HealDeadline deadline) {
+        return CompletableFuture.completedFuture(fetch(mapper.buildDto(locator, element)));
+    }
+
+    @Override
+    public boolean saveSelector(RequestDto requestDto) {
+        return save(requestDto).join();
+    }
+
+    @Override
+    public Optional<List<Node>> fetchLastValidPath(RequestDto requestDto) {
+        return fetch(requestDto);
+    }
+
+    /**
+     * @return the paths saved for the selector, the oldest first
+     */
+    public List<List<Node>> getSelectorHistory(String className, String methodName, By locator) {
+        RequestDto requestDto = mapper.buildDto(locator, new StackTraceElement(className, methodName, null, -1));
+        return selectors.getOrDefault(key(requestDto), Collections.emptyList()).stream()
+                .map(stored -> stored.getRequest().getNodePath())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the healing results, the oldest first
+     */
+    public List<RequestDto> getHealingResults() {
+        return healingResults.stream().map(StoredRequest::getRequest).collect(Collectors.toList());
+    }
+
+    private Optional<List<Node>> fetch(RequestDto requestDto) {
+        List<StoredRequest> history = selectors.get(key(requestDto));
+        if (history == null || history.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(history.get(history.size() - 1).getRequest().getNodePath());
+    }
+
+    private CompletableFuture<Boolean> save(RequestDto requestDto) {
+        StoredRequest stored = new StoredRequest()
+                .setTime(System.currentTimeMillis())
+                .setRequest(requestDto);
+        List<StoredRequest> history = selectors.computeIfAbsent(key(requestDto), key -> new CopyOnWriteArrayList<>());
+        synchronized (history) {
+            // a lookup that finds the element saves its path, most of them are unchanged
+            if (!history.isEmpty() && samePath(history.get(history.size() - 1).getRequest(), requestDto)) {
+                return CompletableFuture.completedFuture(true);
+            }
+            history.add(stored);
+        }
+        return append(SELECTORS, stored, null);
+    }
+
+    private boolean samePath(RequestDto last, RequestDto requestDto) {
+        try {
+            return objectMapper.writeValueAsString(last.getNodePath()).equals(objectMapper.writeValueAsString(requestDto.getNodePath()));
+        } catch (JsonProcessingException e) {
+            return false;
+        }
+    }
+
+    private CompletableFuture<Boolean> append(String file, StoredRequest stored, byte[] screenshot) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Files.createDirectories(directory);
+                if (screenshot != null) {
+                    Path screenshots = Files.createDirectories(directory.resolve("screenshots"));
+                    String name = "screenshot_" + stored.getTime() + "_" + healingResults.size() + ".png";
+                    Files.write(screenshots.resolve(name), screenshot);
+                    stored.setScreenshot(name);
+                }
+                try (BufferedWriter out = Files.newBufferedWriter(directory.resolve(file), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    out.write(objectMapper.writeValueAsString(stored));
+                    out.newLine();
+                }
+                return true;
+            } catch (IOException e) {
+                log.warn("Failed to write to the embedded backend {}", directory, e);
+                return false;
+            }
+        }, writer);
+    }
+
+    private void load() {
+        for (StoredRequest stored : read(SELECTORS)) {
+            selectors.computeIfAbsent(key(stored.getRequest()), key -> new CopyOnWriteArrayList<>()).add(stored);
+        }
+        healingResults.addAll(read(HEALING));
+        if (!selectors.isEmpty()) {
+            log.info("Loaded {} selector(s) and {} healing result(s) from {}", selectors.size(), healingResults.size(), directory);
+        }
+    }
+
+    private List<StoredRequest> read(String file) {
+        Path path = directory.resolve(file);
+        List<StoredRequest> result = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return result;
+        }
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    result.add(objectMapper.readValue(line, StoredRequest.class));
+                } catch (IOException e) {
+                    // a line cut short by a killed run
+                    log.warn("Skipping an unreadable line of {}", path);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read {}", path, e);
+        }
+        return result;
+    }
+
+    private String key(RequestDto requestDto) {
+        return sessionKey + "|" + requestDto.getClassName() + "." + requestDto.getMethodName()
+                + "|" + requestDto.getType() + "|" + requestDto.getLocator();
+    }
+
+    /**
+     * A line of the files
+     */
+    @Accessors(chain = true)
+    @Data
+    public static class StoredRequest {
+
+        private long time;
+        // the screenshot of a healing result, in the screenshots folder
+        private String screenshot;
+        private RequestDto request;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compresses outgoing request bodies with gzip.
+ * Bodies smaller than the threshold and already compressed media (images) are sent as is.
+ * Compression is negotiated: if the server answers a gzipped body with 415 Unsupported Media Type, or with 400 and
+ * then accepts the same request uncompressed, compression is switched off for the rest of the client lifetime.
+ * Compressed responses are handled by OkHttp itself, which advertises {@code Accept-Encoding: gzip}
+ * and transparently inflates the response as long as the header is not set manually.
+ */
+@Slf4j
+public class GzipRequestInterceptor implements Interceptor {
+
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String GZIP = "gzip";
+
+    private final long threshold;
+    private final AtomicBoolean supported = new AtomicBoolean(true);
+
+    public GzipRequestInterceptor(long threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request original = chain.request();
+        if (!supported.get() || !isCompressible(original)) {
+            return chain.proceed(original);
+        }
+        Request compressed = original.newBuilder()
+                .header(CONTENT_ENCODING, GZIP)
+                .method(original.method(), gzip(original.body()))
+                .build();
+        Response response = chain.proceed(compressed);
+        if (response.code() != 400 && response.code() != 415) {
+            return response;
+        }
+        response.close();
+        if (response.code() == 415) {
+            disable();
+        }
+        Response plain = chain.proceed(original);
+        if (plain.isSuccessful()) {
+            disable();
+        }
+        return plain;
+    }
+
+    private void disable() {
+        if (supported.compareAndSet(true, false)) {
+            log.warn("Backend does not accept gzipped request bodies, compression disabled");
+        }
+    }
+
+    public boolean isSupported() {
+        return supported.get();
+    }
+
+    private boolean isCompressible(Request request) throws IOException {
+        RequestBody body = request.body();
+        if (body == null || request.header(CONTENT_ENCODING) != null) {
+            return false;
+        }
+        MediaType type = body.contentType();
+        if (type != null && "image".equals(type.type())) {
+            return false;
+        }
+        long length = body.contentLength();
+        return length == -1 || length >= threshold;
+    }
+
+    private RequestBody gzip(RequestBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(buffer))) {
+            body.writeTo(sink);
+        }
+        log.debug("Request body compressed: {} -> {} bytes", body.contentLength(), buffer.size());
+        return RequestBody.create(body.contentType(), buffer.readByteString());
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk FIFO of write requests that could not be delivered to the backend.
+ * Every request is kept in its own file named by a sequence number, so the order survives JVM restarts.
+ * <p>Each JVM spools into its own subfolder of the spool path, locked while it runs, so that forked test JVMs
+ * sharing the path don't replay each other's requests. The subfolders left by JVMs that have exited are taken over,
+ * oldest request first, by the next spool opened on the path.</p>
+ */
+@Slf4j
+public class RequestSpool {
+
+    private static final String SUFFIX = ".json";
+    private static final String LOCK_FILE = ".lock";
+    /**
+     * The spools of this JVM by spool path, a subfolder must not be used by two spools at once
+     */
+    private static final Map<Path, RequestSpool> SPOOLS = new ConcurrentHashMap<>();
+
+    private final Path spoolPath;
+    /**
+     * Holds the lock of the subfolder while the JVM runs
+     */
+    private final FileChannel lock;
+    private final int limit;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong sequence;
+    private final AtomicInteger size;
+    private final AtomicLong spooledCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    /**
+     * Held by the replay in progress, so that two clients sharing the spool don't send a request twice
+     */
+    private final Object replaying = new Object();
+
+    private RequestSpool(Path spoolPath, FileChannel lock, int limit) {
+        this.spoolPath = spoolPath;
+        this.lock = lock;
+        this.limit = limit;
+        List<Path> entries = entries(spoolPath);
+        this.sequence = new AtomicLong(entries.stream()
+                .mapToLong(RequestSpool::sequenceOf)
+                .max()
+                .orElse(0));
+        this.size = new AtomicInteger(entries.size());
+    }
+
+    /**
+     * @param spoolPath the spool path shared by the JVMs of a run
+     * @param limit     maximum number of spooled requests
+     * @return the spool of this JVM, with the requests left by JVMs that have exited
+     */
+    public static RequestSpool open(Path spoolPath, int limit) {
+        return SPOOLS.computeIfAbsent(spoolPath.toAbsolutePath(), path -> {
+            Path folder = path.resolve(processName());
+            FileChannel lock = tryLock(folder);
+            if (lock == null) {
+                log.warn("Request spool {} is used by another process", folder);
+            }
+            RequestSpool spool = new RequestSpool(folder, lock, limit);
+            spool.adoptOrphans(path);
+            return spool;
+        });
+    }
+
+    /**
+     * Stores the request at the tail of the spool
+     *
+     * @param request the request to deliver later
+     */
+    public synchronized void append(Request request) {
+        if (size.get() >= limit) {
+            droppedCount.incrementAndGet();
+            log.warn("Request spool is full ({} entries), dropping {} {}", limit, request.method(), request.url());
+            return;
+        }
+        try {
+            SpooledRequest entry = new SpooledRequest();
+            entry.setMethod(request.method());
+            entry.setUrl(request.url().toString());
+            Map<String, String> headers = new LinkedHashMap<>();
+            Headers requestHeaders = request.headers();
+            for (int i = 0; i < requestHeaders.size(); i++) {
+                headers.put(requestHeaders.name(i), requestHeaders.value(i));
+            }
+            entry.setHeaders(headers);
+            RequestBody body = request.body();
+            if (body != null) {
+                Buffer buffer = new Buffer();
+                body.writeTo(buffer);
+                entry.setBody(buffer.readByteArray());
+                entry.setContentType(body.contentType() == null ? null : body.contentType().toString());
+            }
+            Path file = spoolPath.resolve(String.format("%019d", sequence.incrementAndGet()) + SUFFIX);
+            objectMapper.writeValue(file.toFile(), entry);
+            size.incrementAndGet();
+            spooledCount.incrementAndGet();
+            log.debug("Spooled {} {} to {}", request.method(), request.url(), file);
+        } catch (IOException e) {
+            droppedCount.incrementAndGet();
+            log.warn("Failed to spool request", e);
+        }
+    }
+
+    /**
+     * Sends spooled requests in order, oldest first. Stops at the first request the sender fails to deliver,
+     * keeping it and everything after it for the next replay. The requests are sent without holding the spool,
+     * the ones appended meanwhile are left for the next replay.
+     *
+     * @param sender delivers the request, returns false if the backend is still unavailable
+     * @return number of requests delivered
+     */
+    public int replay(Predicate<Request> sender) {
+        synchronized (replaying) {
+            return replay(pending(), sender);
+        }
+    }
+
+    /**
+     * @return the spooled entries, oldest first, none of them half written
+     */
+    private synchronized List<Path> pending() {
+        return entries(spoolPath);
+    }
+
+    private int replay(List<Path> files, Predicate<Request> sender) {
+        int delivered = 0;
+        for (Path file : files) {
+            Request request;
+            try {
+                request = objectMapper.readValue(file.toFile(), SpooledRequest.class).toRequest();
+            } catch (IOException e) {
+                log.warn("Skipping unreadable spool entry {}", file, e);
+                remove(file);
+                continue;
+            }
+            if (!sender.test(request)) {
+                break;
+            }
+            remove(file);
+            delivered++;
+            replayedCount.incrementAndGet();
+        }
+        if (delivered > 0) {
+            log.info("Replayed {} spooled request(s), {} left", delivered, size());
+        }
+        return delivered;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Moves the requests of the subfolders no running JVM holds, and the ones of the earlier single folder layout,
+     * to the tail of this spool
+     */
+    private synchronized void adoptOrphans(Path parent) {
+        List<Path> orphans = new ArrayList<>();
+        orphans.add(parent);
+        try (Stream<Path> folders = Files.list(parent)) {
+            folders.filter(Files::isDirectory).filter(it -> !it.equals(spoolPath)).sorted().forEach(orphans::add);
+        } catch (IOException e) {
+            log.warn("Failed to list request spool {}", parent, e);
+        }
+        int adopted = 0;
+        for (Path orphan : orphans) {
+            FileChannel channel = orphan.equals(parent) ? null : tryLock(orphan);
+            if (channel == null && !orphan.equals(parent)) {
+                continue;
+            }
+            try {
+                for (Path file : entries(orphan)) {
+                    Path target = spoolPath.resolve(String.format("%019d", sequence.incrementAndGet()) + SUFFIX);
+                    try {
+                        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+                        size.incrementAndGet();
+                        adopted++;
+                    } catch (NoSuchFileException e) {
+                        // taken over by another JVM at the same time
+                    } catch (IOException e) {
+                        log.warn("Failed to take over spool entry {}", file, e);
+                    }
+                }
+            } finally {
+                if (channel != null) {
+                    close(channel);
+                    delete(orphan.resolve(LOCK_FILE));
+                    delete(orphan);
+                }
+            }
+        }
+        if (adopted > 0) {
+            log.info("Took over {} spooled request(s) of earlier runs", adopted);
+        }
+    }
+
+    /**
+     * @return the channel holding the lock of the folder, null if another process holds it
+     */
+    private static FileChannel tryLock(Path folder) {
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(folder);
+            channel = FileChannel.open(folder.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.tryLock() != null) {
+                return channel;
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            log.debug("Failed to lock request spool {}", folder, e);
+        }
+        close(channel);
+        return null;
+    }
+
+    private static void close(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to release a request spool lock", e);
+        }
+    }
+
+    private static String processName() {
+        // pid@host
+        return ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static List<Path> entries(Path folder) {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.filter(it -> it.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            log.warn("Failed to list request spool {}", folder, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private void remove(Path file) {
+        delete(file);
+        size.decrementAndGet();
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete spool entry {}", file, e);
+        }
+    }
+
+    @Data
+    static class SpooledRequest {
+        private String method;
+        private String url;
+        private Map<String, String> headers;
+        private String contentType;
+        private byte[] body;
+
+        Request toRequest() {
+            Request.Builder builder = new Request.Builder().url(url);
+            headers.forEach(builder::addHeader);
+            RequestBody requestBody = body == null
+                    ? null
+                    : RequestBody.create(contentType == null ? null : MediaType.parse(contentType), body);
+            return builder.method(method, requestBody).build();
+        }
+    }
+}
@@ -12,14 +12,20 @@
  */
 package com.epam.healenium.client;
 
+import com.epam.healenium.HealDeadline;
 import com.epam.healenium.converter.NodeDeserializer;
 import com.epam.healenium.converter.NodeSerializer;
+import com.epam.healenium.data.LocatorIndex;
+import com.epam.healenium.jfr.HealeniumEvents;
+import com.epam.healenium.jfr.Stage;
+import com.epam.healenium.jfr.StageEvent;
 import com.epam.healenium.mapper.HealeniumMapper;
 import com.epam.healenium.mapper.HealeniumMapperImpl;
 import com.epam.healenium.model.RequestDto;
 import com.epam.healenium.treecomparing.Node;
 import com.epam.healenium.treecomparing.Scored;
 import com.epam.healenium.utils.SystemUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -30,13 +36,31 @@ import okhttp3.*;
 import org.openqa.selenium.By;
 import org.springframework.util.DigestUtils;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -45,27 +69,150 @@ import java.util.concurrent.TimeUnit;
  */
 
 @Slf4j
-public class RestClient {
+public class RestClient implements BackendClient {
+
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+    /**
+     * The HTTP caches by folder, a folder must not be used by two caches at once
+     */
+    private static final Map<Path, Cache> HTTP_CACHES = new ConcurrentHashMap<>();
+    /**
+     * The clients whose queued writes are delivered or spooled when the JVM shuts down
+     */
+    private static final Set<RestClient> OPEN_CLIENTS = Collections.newSetFromMap(new WeakHashMap<>());
+    private static final AtomicBoolean FLUSH_HOOK_ADDED = new AtomicBoolean();
+    /**
+     * Cancels the lookups that run out of their heal deadline, the bundled OkHttp has no per-call timeout
+     */
+    private static final ScheduledThreadPoolExecutor CALL_TIMEOUTS = initCallTimeouts();
 
     private final MediaType JSON = MediaType.get("application/json; charset=utf-8");
     private final String baseUrl;
     private final String sessionKey;
     private final ObjectMapper objectMapper;
     private final HealeniumMapper mapper;
+    private final OkHttpClient httpClient;
+    private final CircuitBreaker circuitBreaker;
+    private final RequestSpool spool;
+    private final ScheduledExecutorService replayExecutor;
+    private final AtomicBoolean replayScheduled = new AtomicBoolean();
+    private final LocatorIndex locatorIndex;
+    private final int writeQueueLimit;
+    private final Duration writeFlushTimeout;
+    /**
+     * The writes waiting for the one in flight, the next one is sent once it is delivered or spooled
+     */
+    private final Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private PendingWrite writeInFlight;
+    /**
+     * Held while writes are taken from the queue and spooled, so that they reach the spool in order without the spool
+     * being written under the monitor of this client. Taken before the monitor, never while holding it
+     */
+    private final Object spooling = new Object();
+    /**
+     * The paths parsed from the HTTP cache with their validator, by index key, so that a path the backend
+     * confirmed unchanged is not parsed again
+     */
+    private final Map<String, ValidatedPath> validatedPaths = new ConcurrentHashMap<>();
+    /**
+     * The index keys of the paths saved by this client, their next lookup bypasses the HTTP cache
+     */
+    private final Set<String> savedPaths = ConcurrentHashMap.newKeySet();
+    /**
+     * The paths saved by this client that are still waiting for the backend, by index key. A lookup of such a path is
+     * answered with it, the backend would answer with the one before
+     */
+    private final Map<String, List<Node>> unsentPaths = new ConcurrentHashMap<>();
 
     public RestClient(Config config) {
+        this(config, LocatorIndex.disabled());
+    }
+
+    /**
+     * @param locatorIndex serves the last valid paths already known to this or a previous run without a request
+     */
+    public RestClient(Config config, LocatorIndex locatorIndex) {
+        this.locatorIndex = locatorIndex;
         objectMapper = initMapper();
         baseUrl = "http://" + config.getString("serverHost") + ":" + config.getInt("serverPort") + "/healenium";
         sessionKey = config.hasPath("sessionKey") ? config.getString("sessionKey") : "";
         mapper = new HealeniumMapperImpl();
+        httpClient = initClient(config);
+        circuitBreaker = new CircuitBreaker(config.getInt("breaker-failure-threshold"),
+                config.getDuration("breaker-open-duration"), this::onCircuitStateChange);
+        spool = RequestSpool.open(Paths.get(config.getString("spoolPath")), config.getInt("spool-limit"));
+        writeQueueLimit = config.getInt("write-queue-limit");
+        writeFlushTimeout = config.getDuration("write-flush-timeout");
+        replayExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "healenium-spool-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!spool.isEmpty()) {
+            log.info("Found {} spooled request(s) from a previous run", spool.size());
+            scheduleReplay(0);
+        }
+        register(this);
     }
 
-    private OkHttpClient okHttpClient() {
-        return new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
+    private static void register(RestClient client) {
+        synchronized (OPEN_CLIENTS) {
+            OPEN_CLIENTS.add(client);
+        }
+        if (FLUSH_HOOK_ADDED.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(RestClient::flushAll, "healenium-write-flush"));
+        }
+    }
+
+    private static void flushAll() {
+        List<RestClient> clients;
+        synchronized (OPEN_CLIENTS) {
+            clients = new ArrayList<>(OPEN_CLIENTS);
+        }
+        clients.forEach(client -> client.flush(client.writeFlushTimeout));
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public RequestSpool getSpool() {
+        return spool;
+    }
+
+    private static ScheduledThreadPoolExecutor initCallTimeouts() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "healenium-call-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // most lookups complete in time, their timeouts are dropped rather than kept until they are due
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private OkHttpClient initClient(Config config) {
+        // all calls go to the same backend, and idle dispatcher threads must not keep the JVM alive
+        Dispatcher dispatcher = new Dispatcher(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "healenium-backend");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        dispatcher.setMaxRequestsPerHost(dispatcher.getMaxRequests());
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .readTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .writeTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (config.getBoolean("compression-enabled")) {
+            builder.addInterceptor(new GzipRequestInterceptor(config.getBytes("compression-threshold")));
+        }
+        if (config.getBoolean("http-cache-enabled")) {
+            long size = config.getBytes("http-cache-size");
+            builder.cache(HTTP_CACHES.computeIfAbsent(Paths.get(config.getString("httpCachePath")).toAbsolutePath(),
+                    directory -> new Cache(directory.toFile(), size)));
+        }
+        return builder.build();
     }
 
     private ObjectMapper initMapper() {
@@ -78,21 +225,50 @@ public class RestClient {
         return mapper;
     }
 
+    @Override
     public void selectorRequest(By by, StackTraceElement element, List<Node> nodePath) {
+        selectorRequestAsync(by, element, nodePath).join();
+    }
+
+    /**
+     * Saves the last valid path of a selector without blocking. Writes reach the backend in the order they are made.
+     * @return completes with true once the backend has the path, false if it was spooled or could not be mapped.
+     * Cancelling it doesn't withdraw the write
+     */
+    @Override
+    public CompletableFuture<Boolean> selectorRequestAsync(By by, StackTraceElement element, List<Node> nodePath) {
         RequestDto requestDto = mapper.buildDto(by, element, nodePath);
+        String key = indexKey(requestDto);
+        locatorIndex.put(key, nodePath);
+        validatedPaths.remove(key);
+        savedPaths.add(key);
         try {
             RequestBody body = RequestBody.create(JSON, objectMapper.writeValueAsString(requestDto));
             Request request = new Request.Builder()
                     .url(baseUrl)
                     .post(body)
                     .build();
-            okHttpClient().newCall(request).execute();
+            unsentPaths.put(key, nodePath);
+            CompletableFuture<Boolean> result = send(request);
+            result.whenComplete((delivered, ex) -> unsentPaths.remove(key, nodePath));
+            return result;
         } catch (Exception e) {
             log.warn("Failed to make response");
+            return CompletableFuture.completedFuture(false);
         }
     }
 
+    @Override
     public void selectorRequestTest(By by, StackTraceElement element, List<Node> nodePath, String oldElement, String newElement, String oldMethod, String newMethod) {
+        selectorRequestTestAsync(by, element, nodePath, oldElement, newElement, oldMethod, newMethod).join();
+    }
+
+    /**
+     * Saves a test data replacement of a selector without blocking, in order with the other writes
+     * @return completes with true once the backend has the path, false if it was spooled or could not be mapped
+     */
+    @Override
+    public CompletableFuture<Boolean> selectorRequestTestAsync(By by, StackTraceElement element, List<Node> nodePath, String oldElement, String newElement, String oldMethod, String newMethod) {
         RequestDto requestDto = mapper.buildDto(by, element, nodePath);
         try {
             RequestBody body = RequestBody.create(JSON, objectMapper.writeValueAsString(requestDto).replace(oldElement, newElement).replace(oldMethod, newMethod));
@@ -100,9 +276,10 @@ public class RestClient {
                     .url(baseUrl)
                     .post(body)
                     .build();
-            okHttpClient().newCall(request).execute();
+            return send(request);
         } catch (Exception e) {
             log.warn("Failed to make response");
+            return CompletableFuture.completedFuture(false);
         }
     }
 
@@ -112,6 +289,7 @@ public class RestClient {
      * @param element
      * @param page
      */
+    @Override
     public void healRequest(By locator, StackTraceElement element, String page, List<Scored<By>> choices, Scored<By> healed, byte[] screenshot) {
         RequestDto requestDto = mapper.buildDto(locator, element, page, choices, healed, screenshot);
         try {
@@ -127,7 +305,7 @@ public class RestClient {
                     .url(baseUrl + "/healing")
                     .post(requestBody)
                     .build();
-            okHttpClient().newCall(request).execute();
+            send(request).join();
         } catch (Exception e) {
             log.warn("Failed to make response", e);
         }
@@ -139,29 +317,430 @@ public class RestClient {
      * @param element
      * @return
      */
+    @Override
     public Optional<List<Node>> getLastValidPath(By locator, StackTraceElement element) {
-        List<Node> nodes = null;
+        return getLastValidPath(locator, element, HealDeadline.unbounded());
+    }
+
+    /**
+     * Get node path for given selector within the heal deadline
+     * @param locator
+     * @param element
+     * @param deadline the call is given no more than the time left
+     * @return
+     */
+    @Override
+    public Optional<List<Node>> getLastValidPath(By locator, StackTraceElement element, HealDeadline deadline) {
+        return getLastValidPathAsync(locator, element, deadline).join();
+    }
+
+    /**
+     * Get node path for given selector within the heal deadline, without blocking
+     * @param locator
+     * @param element
+     * @param deadline the call is given no more than the time left
+     * @return the node path, empty if the backend doesn't have it. A path this client saved and has not delivered yet
+     * without a call. While the backend is unavailable, or didn't answer in time, the path kept in the locator index if
+     * any. It never completes exceptionally, cancelling it cancels the call
+     */
+    @Override
+    public CompletableFuture<Optional<List<Node>>> getLastValidPathAsync(By locator, StackTraceElement element, HealDeadline deadline) {
         RequestDto requestDto = mapper.buildDto(locator, element);
+        String key = indexKey(requestDto);
+        List<Node> unsent = unsentPaths.get(key);
+        if (unsent != null) {
+            return CompletableFuture.completedFuture(Optional.of(unsent));
+        }
+        if (!circuitBreaker.allowRequest()) {
+            log.debug("Backend circuit is open, skipping last valid path lookup");
+            return CompletableFuture.completedFuture(locatorIndex.get(key));
+        }
+        HttpUrl.Builder httpBuilder = HttpUrl.parse(baseUrl).newBuilder()
+                .addQueryParameter("locator", requestDto.getLocator())
+                .addQueryParameter("className", requestDto.getClassName())
+                .addQueryParameter("methodName", requestDto.getMethodName());
+        Request.Builder requestBuilder = new Request.Builder()
+                .addHeader("sessionKey", sessionKey)
+                .url(httpBuilder.build())
+                .get();
+        if (savedPaths.remove(key)) {
+            // the cached path may predate the one this client has saved since
+            requestBuilder.cacheControl(CacheControl.FORCE_NETWORK);
+        }
+        Request request = requestBuilder.build();
+        long remaining = deadline.remaining().toMillis();
+        boolean shortened = remaining < DEFAULT_TIMEOUT_MILLIS;
+        StageEvent event = beginEvent(requestDto);
+        CompletableFuture<Optional<List<Node>>> result = new CompletableFuture<>();
+        Call call = httpClient.newCall(request);
+        ScheduledFuture<?> timeout = shortened
+                ? CALL_TIMEOUTS.schedule(call::cancel, Math.max(remaining, 1), TimeUnit.MILLISECONDS)
+                : null;
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                Optional<List<Node>> nodes = Optional.empty();
+                try (Response body = response) {
+                    RestClient.this.onResponse(body);
+                    // a revalidated path is answered with 304, one still fresh in the cache without a network call
+                    setOutcome(event, request, body.networkResponse() == null ? body.code() : body.networkResponse().code());
+                    if (body.code() == 200) {
+                        nodes = Optional.ofNullable(readPath(key, body, event));
+                        nodes.ifPresent(it -> locatorIndex.put(key, it));
+                    } else if (body.code() >= 500) {
+                        nodes = locatorIndex.get(key);
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    log.warn("Failed to make response", ex);
+                    nodes = locatorIndex.get(key);
+                } finally {
+                    event.commit();
+                    result.complete(nodes);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException ex) {
+                setOutcome(event, request, ex);
+                event.commit();
+                // running out of the heal budget, or a cancelled lookup, says nothing about the backend health
+                if (!call.isCanceled() && (!shortened || !deadline.isExpired())) {
+                    circuitBreaker.onFailure();
+                    log.warn("Failed to make response", ex);
+                } else {
+                    circuitBreaker.onAbandoned();
+                }
+                result.complete(result.isCancelled() ? Optional.empty() : locatorIndex.get(key));
+            }
+        });
+        result.whenComplete((nodes, ex) -> {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Delivers a write request once the writes before it are delivered or spooled. It is spooled if the backend is
+     * unavailable or older requests are still waiting in the spool, so that writes always reach the backend in order.
+     * If the queue of waiting writes is full, they are spooled at once together with this one.
+     * @param request write request
+     * @return completes with true once the backend accepted the request, false if it was spooled
+     */
+    private CompletableFuture<Boolean> send(Request request) {
+        PendingWrite write = new PendingWrite(request);
+        int waiting;
+        synchronized (this) {
+            pendingWrites.add(write);
+            waiting = pendingWrites.size();
+        }
+        if (waiting > writeQueueLimit) {
+            log.warn("{} writes are waiting for the backend, spooling them", waiting);
+            spill().forEach(it -> it.result.complete(false));
+        }
+        sendNext();
+        return write.result;
+    }
+
+    /**
+     * Sends the next waiting write unless one is in flight. Writes that go to the spool are handled right away
+     */
+    private void sendNext() {
+        while (true) {
+            PendingWrite write;
+            boolean deliver;
+            synchronized (spooling) {
+                synchronized (this) {
+                    if (writeInFlight != null || pendingWrites.isEmpty()) {
+                        return;
+                    }
+                    write = pendingWrites.poll();
+                    deliver = spool.isEmpty() && circuitBreaker.allowRequest();
+                    if (deliver) {
+                        writeInFlight = write;
+                    }
+                }
+                if (!deliver) {
+                    spool.append(write.request);
+                }
+            }
+            if (!deliver) {
+                scheduleReplay(0);
+                write.result.complete(false);
+                continue;
+            }
+            deliverAsync(write.request).whenComplete((delivered, ex) -> {
+                boolean accepted = delivered != null && delivered;
+                if (ex != null) {
+                    // a failed write must not hold back the ones after it
+                    log.warn("Failed to send request", ex);
+                }
+                synchronized (spooling) {
+                    boolean append;
+                    synchronized (this) {
+                        append = !accepted && !write.spooled;
+                        write.spooled |= append;
+                    }
+                    if (append) {
+                        spool.append(write.request);
+                    }
+                    synchronized (this) {
+                        writeInFlight = null;
+                        notifyAll();
+                    }
+                }
+                if (!spool.isEmpty()) {
+                    scheduleReplay(0);
+                }
+                write.result.complete(accepted);
+                sendNext();
+            });
+            return;
+        }
+    }
+
+    /**
+     * Spools the waiting writes in order, after a copy of the write in flight. The copy keeps a newer write of the same
+     * selector from being replayed before it, if it fails. If it is delivered, replaying it again does no harm
+     * @return the writes taken from the queue, to be completed with false
+     */
+    private List<PendingWrite> spill() {
+        List<Request> requests = new ArrayList<>();
+        List<PendingWrite> spilled;
+        boolean inFlight;
+        synchronized (spooling) {
+            synchronized (this) {
+                if (writeInFlight != null && !writeInFlight.spooled) {
+                    requests.add(writeInFlight.request);
+                    writeInFlight.spooled = true;
+                }
+                spilled = new ArrayList<>(pendingWrites);
+                pendingWrites.clear();
+                inFlight = writeInFlight != null;
+            }
+            spilled.forEach(it -> requests.add(it.request));
+            requests.forEach(spool::append);
+        }
+        // the write in flight is delivered first, so that the replay doesn't overtake it
+        if (!inFlight && !spool.isEmpty()) {
+            scheduleReplay(0);
+        }
+        return spilled;
+    }
+
+    /**
+     * Waits for the queued writes to reach the backend, and spools the ones still waiting when the time is up,
+     * e.g. before the JVM exits
+     * @param timeout how long to wait for the backend
+     */
+    public void flush(Duration timeout) {
+        long end = System.nanoTime() + timeout.toNanos();
+        synchronized (this) {
+            long left;
+            while ((writeInFlight != null || !pendingWrites.isEmpty()) && (left = end - System.nanoTime()) > 0) {
+                try {
+                    wait(Math.max(TimeUnit.NANOSECONDS.toMillis(left), 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (writeInFlight != null || !pendingWrites.isEmpty()) {
+                log.warn("Spooling {} write(s) the backend did not take in time", pendingWrites.size() + (writeInFlight == null ? 0 : 1));
+            }
+        }
+        spill().forEach(it -> it.result.complete(false));
+    }
+
+    private boolean deliver(Request request) {
+        return deliverAsync(request).join();
+    }
+
+    /**
+     * @return completes with true if the backend accepted the request, false if it failed or answered with a server error
+     */
+    private CompletableFuture<Boolean> deliverAsync(Request request) {
+        StageEvent event = HealeniumEvents.begin(Stage.BACKEND);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response body = response) {
+                    RestClient.this.onResponse(body);
+                    setOutcome(event, request, body.code());
+                    result.complete(body.code() < 500);
+                } finally {
+                    commit(event, request);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                setOutcome(event, request, e);
+                commit(event, request);
+                circuitBreaker.onFailure();
+                log.warn("Failed to make response: {}", e.getMessage());
+                result.complete(false);
+            }
+        });
+        return result;
+    }
+
+    private static StageEvent beginEvent(RequestDto requestDto) {
+        StageEvent event = HealeniumEvents.begin(Stage.BACKEND);
+        if (event.isEnabled()) {
+            event.setLocator(requestDto.getLocator()).setCaller(requestDto.getClassName() + "." + requestDto.getMethodName());
+        }
+        return event;
+    }
+
+    private static void setOutcome(StageEvent event, Request request, int code) {
+        if (event.isEnabled()) {
+            event.setOutcome(request.method() + " " + request.url().encodedPath() + " " + code);
+        }
+    }
+
+    private static void setOutcome(StageEvent event, Request request, IOException e) {
+        if (event.isEnabled()) {
+            event.setOutcome(request.method() + " " + request.url().encodedPath() + " " + e.getClass().getSimpleName());
+        }
+    }
+
+    private static void commit(StageEvent event, Request request) {
+        if (event.isEnabled()) {
+            event.setPayloadSize(contentLength(request));
+        }
+        event.commit();
+    }
+
+    private static long contentLength(Request request) {
+        try {
+            return request.body() == null ? 0 : request.body().contentLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private void onResponse(Response response) {
+        if (response.code() >= 500) {
+            log.warn("Backend responded with {}", response.code());
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    private void scheduleReplay(long delayMillis) {
+        if (replayScheduled.compareAndSet(false, true)) {
+            replayExecutor.schedule(this::replay, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void replay() {
+        replayScheduled.set(false);
+        spool.replay(request -> circuitBreaker.allowRequest() && deliver(request));
+        // the circuit may have opened while this replay was queued, its own replay was then not scheduled
+        if (!spool.isEmpty() && circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+            scheduleReplay(circuitBreaker.getOpenDurationMillis());
+        }
+    }
+
+    private void onCircuitStateChange(CircuitBreaker.State state) {
+        if (state == CircuitBreaker.State.OPEN) {
+            // probe the backend with the oldest spooled request once the circuit may be half-opened
+            scheduleReplay(circuitBreaker.getOpenDurationMillis());
+        } else if (state == CircuitBreaker.State.CLOSED && !spool.isEmpty()) {
+            scheduleReplay(0);
+        }
+    }
+
+    /**
+     * Saves a selector right away, without spooling it, e.g. for a bulk sync that tracks failures itself
+     * @param requestDto the selector with its node path
+     * @return true if the backend accepted it
+     */
+    @Override
+    public boolean saveSelector(RequestDto requestDto) {
         try {
-            HttpUrl.Builder httpBuilder = HttpUrl.parse(baseUrl).newBuilder()
-                    .addQueryParameter("locator", requestDto.getLocator())
-                    .addQueryParameter("className", requestDto.getClassName())
-                    .addQueryParameter("methodName", requestDto.getMethodName());
+            RequestBody body = RequestBody.create(JSON, objectMapper.writeValueAsString(requestDto));
             Request request = new Request.Builder()
-                    .addHeader("sessionKey", sessionKey)
-                    .url(httpBuilder.build())
-                    .get()
+                    .url(baseUrl)
+                    .post(body)
                     .build();
-            Response response = okHttpClient().newCall(request).execute();
-            if (response.code() == 200) {
-                String result = response.body().string();
-                nodes = objectMapper.readValue(result, new TypeReference<List<Node>>() {
-                });
+            return circuitBreaker.allowRequest() && deliver(request);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to map selector {}", requestDto.getLocator(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Gets the node path of a selector from the backend, without going through the locator index
+     * @param requestDto the locator, class name and method name of the selector
+     * @return the node path, empty if the backend doesn't have it
+     * @throws IOException if the backend could not be reached
+     */
+    @Override
+    public Optional<List<Node>> fetchLastValidPath(RequestDto requestDto) throws IOException {
+        HttpUrl url = HttpUrl.parse(baseUrl).newBuilder()
+                .addQueryParameter("locator", requestDto.getLocator())
+                .addQueryParameter("className", requestDto.getClassName())
+                .addQueryParameter("methodName", requestDto.getMethodName())
+                .build();
+        Request request = new Request.Builder()
+                .addHeader("sessionKey", sessionKey)
+                .url(url)
+                .get()
+                .build();
+        StageEvent event = beginEvent(requestDto);
+        try (Response response = httpClient.newCall(request).execute()) {
+            onResponse(response);
+            setOutcome(event, request, response.code());
+            if (response.code() != 200) {
+                return Optional.empty();
+            }
+            String result = response.body().string();
+            event.setPayloadSize(result.length());
+            if (result.isEmpty()) {
+                return Optional.empty();
             }
-        } catch (Exception ex) {
-            log.warn("Failed to make response", ex);
+            return Optional.ofNullable(objectMapper.readValue(result, new TypeReference<List<Node>>() {
+            }));
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the path in the response, null if there is none. A path served by the HTTP cache is parsed only if its
+     * validator is not the one of the path parsed last for the key
+     */
+    private List<Node> readPath(String key, Response response, StageEvent event) throws IOException {
+        String validator = response.header("ETag", response.header("Last-Modified"));
+        ValidatedPath known = validatedPaths.get(key);
+        if (response.cacheResponse() != null && known != null && known.validator.equals(validator)) {
+            return known.nodes;
+        }
+        String content = response.body().string();
+        event.setPayloadSize(content.length());
+        if (content.isEmpty()) {
+            return null;
+        }
+        List<Node> nodes = objectMapper.readValue(content, new TypeReference<List<Node>>() {
+        });
+        if (validator != null) {
+            validatedPaths.put(key, new ValidatedPath(validator, nodes));
         }
-        return Optional.ofNullable(nodes);
+        return nodes;
+    }
+
+    private String indexKey(RequestDto requestDto) {
+        return "backend:" + sessionKey + "|" + requestDto.getClassName() + "." + requestDto.getMethodName()
+                + "|" + requestDto.getLocator();
     }
 
     /**
@@ -184,4 +763,27 @@ public class RestClient {
     private String buildScreenshotName() {
         return "screenshot_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MMM-yyyy-hh-mm-ss").withLocale(Locale.US)) + ".png";
     }
+
+    private static class PendingWrite {
+        private final Request request;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        /**
+         * Set once a copy of the write in flight is spooled, so that it is not spooled twice if it fails
+         */
+        private boolean spooled;
+
+        PendingWrite(Request request) {
+            this.request = request;
+        }
+    }
+
+    private static class ValidatedPath {
+        private final String validator;
+        private final List<Node> nodes;
+
+        ValidatedPath(String validator, List<Node> nodes) {
+            this.validator = validator;
+            this.nodes = nodes;
+        }
+    }
 }
@@ -12,8 +12,12 @@
  */
 package com.epam.healenium.data;
 
+import com.epam.healenium.jfr.HealeniumEvents;
+import com.epam.healenium.jfr.Stage;
+import com.epam.healenium.jfr.StageEvent;
 import com.epam.healenium.treecomparing.Node;
 import com.epam.healenium.treecomparing.NodeBuilder;
+import com.epam.healenium.utils.StackUtils;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
@@ -41,9 +45,16 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 @Slf4j
 public class FileSystemPathStorage implements PathStorage {
@@ -54,9 +65,24 @@ public class FileSystemPathStorage implements PathStorage {
     private static final int MAX_FILE_LENGTH = 128;
     private static final String FILENAME_REGEX = "[\\w\\-]+";
     private static final String REPORT_FILE = "index.html";
+    private static final String METADATA_SUFFIX = ".meta";
     private final Path basePath;
     private final Path reportsPath;
     private final ObjectMapper objectMapper;
+    private final ObjectMapper reportMapper = new ObjectMapper();
+    /**
+     * The reports of the sessions still running, each session passes its own info
+     */
+    private final Set<LocatorInfo> reports = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * The entries of the sessions that have ended, kept for the report of the whole run
+     */
+    private final List<LocatorInfo.Entry> endedEntries = new ArrayList<>();
+    private String reportName;
+    private String reportEndTime;
+    private boolean reportHookAdded;
+    private final LocatorIndex locatorIndex;
+    private final Set<Path> described = ConcurrentHashMap.newKeySet();
 
     /**
      * Creates a file system bound storage.
@@ -65,6 +91,14 @@ public class FileSystemPathStorage implements PathStorage {
      *               this case the path starts from a working directory.
      */
     public FileSystemPathStorage(Config config) {
+        this(config, LocatorIndex.disabled());
+    }
+
+    /**
+     * @param locatorIndex serves the paths already known to this or a previous run without reading their files
+     */
+    public FileSystemPathStorage(Config config, LocatorIndex locatorIndex) {
+        this.locatorIndex = locatorIndex;
         this.objectMapper = initMapper();
         this.basePath = Paths.get(config.getString("basePath"));
         this.reportsPath = Paths.get(config.getString("reportPath"));
@@ -82,43 +116,110 @@ public class FileSystemPathStorage implements PathStorage {
     }
 
     @Override
-    public synchronized void persistLastValidPath(Object locator, String context, List<Node> nodes) {
+    public void persistLastValidPath(Object locator, String context, List<Node> nodes) {
         log.info("* persistLastValidPath start: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
+        StageEvent event = HealeniumEvents.begin(Stage.STORAGE).setLocator(locator).setNodeCount(nodes.size());
         Path path = getPersistedNodePath(locator, context);
         byte[] newContent;
         try {
             newContent = objectMapper.writeValueAsBytes(nodes);
-            Files.write(path, newContent);
+            write(path, newContent);
+            locatorIndex.put(indexKey(path), nodes, lastModified(path));
+            describe(path, locator, context);
+            event.setPayloadSize(newContent.length).setOutcome("written");
         } catch (JsonProcessingException e) {
+            event.setOutcome("mapping failed");
             log.error("Could not map the contents to JSON!", e);
         } catch (IOException e) {
+            event.setOutcome("write failed");
             log.error("Failed to persist last valid path", e);
         }
+        event.commit();
         log.info("* persistLastValidPath finish: " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
     }
 
     @Override
-    public synchronized List<Node> getLastValidPath(Object locator, String context) {
+    public List<Node> getLastValidPath(Object locator, String context) {
+        StageEvent event = HealeniumEvents.begin(Stage.STORAGE).setLocator(locator);
         Path path = getPersistedNodePath(locator, context);
         if (Files.exists(path)) {
             try {
+                // the indexed path is used only while the file is unchanged, another process may have saved a new one
+                long modified = lastModified(path);
+                Optional<List<Node>> indexed = locatorIndex.get(indexKey(path), modified);
+                if (indexed.isPresent()) {
+                    event.setNodeCount(indexed.get().size()).setOutcome("index").commit();
+                    return indexed.get();
+                }
                 byte[] bytes = Files.readAllBytes(path);
                 //noinspection unchecked
-                return objectMapper.readValue(bytes, List.class);
+                List<Node> nodes = objectMapper.readValue(bytes, List.class);
+                locatorIndex.put(indexKey(path), nodes, modified);
+                event.setNodeCount(nodes.size()).setPayloadSize(bytes.length).setOutcome("file").commit();
+                return nodes;
             } catch (IOException e) {
+                event.setOutcome("read failed").commit();
                 throw new RuntimeException(e);
             }
         }
+        event.setOutcome("missing").commit();
         return Collections.emptyList();
     }
 
-    public synchronized void saveLocatorInfo(LocatorInfo info) throws IOException {
-        new ObjectMapper().writeValue(reportsPath.resolve("data.json").toFile(), info);
+    /**
+     * Adds the report of a session to the healing report, written when the session ends and when the JVM exits,
+     * so that a heal doesn't rewrite the entries of all the heals before it.
+     * Sessions sharing the storage each pass their own info, the report contains the entries of all of them.
+     */
+    public synchronized void saveLocatorInfo(LocatorInfo info) {
+        reports.add(info);
+        reportName = info.getReportName();
+        reportEndTime = info.getEndTime();
+        if (!reportHookAdded) {
+            reportHookAdded = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(this::writeRunningReports, "healenium-report"));
+        }
+    }
+
+    /**
+     * Writes the healing report with the entries of the ended session, and forgets the session
+     */
+    @Override
+    public synchronized void releaseLocatorInfo(LocatorInfo info) throws IOException {
+        if (reports.remove(info)) {
+            endedEntries.addAll(info.getElementsInfo());
+            writeReport();
+        }
+    }
+
+    private synchronized void writeRunningReports() {
+        if (reports.isEmpty()) {
+            return;
+        }
+        try {
+            writeReport();
+        } catch (IOException e) {
+            log.warn("Failed to write the healing report", e);
+        }
+    }
+
+    private void writeReport() throws IOException {
+        LocatorInfo report = new LocatorInfo();
+        report.setReportName(reportName);
+        report.setEndTime(reportEndTime);
+        report.getElementsInfo().addAll(endedEntries);
+        reports.forEach(it -> report.getElementsInfo().addAll(it.getElementsInfo()));
+        reportMapper.writeValue(reportsPath.resolve("data.json").toFile(), report);
         Path target = reportsPath.resolve(REPORT_FILE);
         if (!Files.exists(target)) {
             ClassLoader classLoader = getClass().getClassLoader();
-            InputStream source = classLoader.getResourceAsStream(REPORT_FILE);
-            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            try (InputStream source = classLoader.getResourceAsStream(REPORT_FILE)) {
+                if (source == null) {
+                    log.debug("Report template {} is not on the classpath, only data.json is written", REPORT_FILE);
+                    return;
+                }
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
         }
     }
 
@@ -126,6 +227,104 @@ public class FileSystemPathStorage implements PathStorage {
         return Files.exists(getPersistedNodePath(locator, context));
     }
 
+    @Override
+    public Optional<String> findLatestContext(Object locator) {
+        String suffix = "_" + locator.hashCode();
+        try (Stream<Path> files = Files.list(basePath)) {
+            Optional<Path> latest = files
+                    .filter(it -> it.getFileName().toString().endsWith(suffix))
+                    .max(Comparator.comparingLong(it -> it.toFile().lastModified()));
+            if (!latest.isPresent()) {
+                return Optional.empty();
+            }
+            return getMetadata(latest.get().getFileName().toString())
+                    .filter(it -> locator.toString().equals(it.getLocator()))
+                    .map(PathMetadata::getContext);
+        } catch (IOException e) {
+            log.warn("Failed to look for the stored contexts of {}", locator, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the keys of the stored paths in name order, the stream has to be closed
+     */
+    public Stream<String> getStoredKeys() throws IOException {
+        return Files.list(basePath)
+                .map(it -> it.getFileName().toString())
+                .filter(it -> !it.endsWith(METADATA_SUFFIX) && !it.endsWith(".tmp"))
+                .sorted();
+    }
+
+    /**
+     * @param key a key returned by {@link #getStoredKeys()}
+     * @return the metadata of the path, empty for paths stored before metadata was kept
+     */
+    public Optional<PathMetadata> getMetadata(String key) throws IOException {
+        Path file = basePath.resolve(key + METADATA_SUFFIX);
+        return Files.exists(file) ? Optional.of(reportMapper.readValue(file.toFile(), PathMetadata.class)) : Optional.empty();
+    }
+
+    /**
+     * @param key a key returned by {@link #getStoredKeys()}
+     * @return the stored path, empty if there is none
+     */
+    public List<Node> readPath(String key) throws IOException {
+        Path file = basePath.resolve(key);
+        //noinspection unchecked
+        return Files.exists(file) ? objectMapper.readValue(Files.readAllBytes(file), List.class) : Collections.emptyList();
+    }
+
+    /**
+     * Stores a path under the given key, e.g. one received from the backend
+     */
+    public void writePath(String key, PathMetadata metadata, List<Node> nodes) throws IOException {
+        Path path = basePath.resolve(key);
+        write(path, objectMapper.writeValueAsBytes(nodes));
+        write(basePath.resolve(key + METADATA_SUFFIX), reportMapper.writeValueAsBytes(metadata));
+        described.add(path);
+        locatorIndex.put(indexKey(path), nodes, lastModified(path));
+    }
+
+    /**
+     * @return the key of the path stored for the locator in the context
+     */
+    public String getKey(Object locator, String context) {
+        return getPersistedNodePath(locator, context).getFileName().toString();
+    }
+
+    /**
+     * Keeps what the path was saved for next to it, once per path and run
+     */
+    private void describe(Path path, Object locator, String context) throws IOException {
+        Path file = path.resolveSibling(path.getFileName() + METADATA_SUFFIX);
+        if (!described.add(path) || Files.exists(file)) {
+            return;
+        }
+        PathMetadata metadata = new PathMetadata().setLocator(locator.toString()).setContext(context);
+        StackUtils.findOriginCaller().ifPresent(caller -> metadata
+                .setClassName(caller.getClassName())
+                .setMethodName(caller.getMethodName()));
+        write(file, reportMapper.writeValueAsBytes(metadata));
+    }
+
+    /**
+     * Writes aside and moves, so that concurrent readers never see a partially written file
+     */
+    private void write(Path path, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(basePath, path.getFileName().toString(), ".tmp");
+        Files.write(temp, content);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long lastModified(Path path) throws IOException {
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+    private String indexKey(Path path) {
+        return "file:" + path.toAbsolutePath();
+    }
+
     private Path getPersistedNodePath(Object locator, String context) {
         return basePath.resolve(getFileName(context) + "_" + locator.hashCode());
     }
@@ -0,0 +1,115 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.data;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what a broken locator was healed to, by locator and the caller that used it, so that later lookups go
+ * straight to the healed locator without waiting for the broken one and healing it again.
+ * Optionally kept in a file, so that the next runs start with the locators healed before.
+ */
+@Slf4j
+public class HealedLocatorCache {
+
+    private final Map<String, Map<String, String>> healed = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path file;
+
+    public HealedLocatorCache(Config config) {
+        this.file = config.getBoolean("healed-cache-persist") ? Paths.get(config.getString("healedCachePath")) : null;
+        load();
+    }
+
+    /**
+     * Cheap check done on every lookup, before the caller is resolved
+     *
+     * @param locator the locator in its page context
+     * @return true if the locator was healed for some caller
+     */
+    public boolean contains(String locator) {
+        return !healed.isEmpty() && healed.containsKey(locator);
+    }
+
+    /**
+     * @param locator the locator in its page context
+     * @param caller  the caller that used the locator
+     * @return the XPath the locator was healed to
+     */
+    public Optional<String> get(String locator, String caller) {
+        Map<String, String> byCaller = healed.get(locator);
+        return byCaller == null ? Optional.empty() : Optional.ofNullable(byCaller.get(caller));
+    }
+
+    public void put(String locator, String caller, String xpath) {
+        healed.computeIfAbsent(locator, it -> new ConcurrentHashMap<>()).put(caller, xpath);
+        save();
+    }
+
+    /**
+     * Forgets a healed locator that doesn't match anything anymore
+     */
+    public void remove(String locator, String caller) {
+        Map<String, String> byCaller = healed.get(locator);
+        if (byCaller != null && byCaller.remove(caller) != null) {
+            healed.computeIfPresent(locator, (key, value) -> value.isEmpty() ? null : value);
+            save();
+        }
+    }
+
+    public int size() {
+        return healed.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            Map<String, Map<String, String>> stored = objectMapper.readValue(file.toFile(),
+                new TypeReference<Map<String, Map<String, String>>>() {
+                });
+            stored.forEach((locator, byCaller) -> healed.put(locator, new ConcurrentHashMap<>(byCaller)));
+            log.info("Loaded {} healed locators from {}", size(), file);
+        } catch (IOException e) {
+            log.warn("Failed to read healed locators from {}", file, e);
+        }
+    }
+
+    private synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(temp.toFile(), healed);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to persist healed locators to {}", file, e);
+        }
+    }
+}
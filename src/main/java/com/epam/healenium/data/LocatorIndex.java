@@ -0,0 +1,402 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.data;
+
+import com.epam.healenium.converter.NodeDeserializer;
+import com.epam.healenium.converter.NodeSerializer;
+import com.epam.healenium.treecomparing.Node;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.typesafe.config.Config;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * The last valid paths known to the engine, by storage key, kept across runs in a single index file.
+ * <p>The file written at shutdown is memory-mapped at the next start, so the first lookups of a run read a path
+ * straight from the page cache instead of reading a file per locator or calling the backend. A mapped path is still
+ * stored as JSON and decoded the first time the run reads it, so the gain is the file I/O skipped, not the decoding.
+ * Paths read or saved during the run are kept in memory, decoded, and win over the mapped ones.</p>
+ * <p>Every path has a stamp, the time its source was last modified, so that a caller can tell whether the source
+ * changed since, e.g. because another process saved a newer path.</p>
+ * <p>Forked JVMs may share the file. A save locks it, reads what the other JVMs saved meanwhile and keeps the newer
+ * path of every key.</p>
+ * <p>File layout, big endian: magic, version, entry count, the entries sorted by key hash as (key hash, record
+ * offset), then the records as (key length, key, stamp, CRC32 of the path, path length, path as JSON).</p>
+ */
+@Slf4j
+public class LocatorIndex {
+
+    private static final int MAGIC = 0x484C4958;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 12;
+    private static final String LOCK_SUFFIX = ".lock";
+
+    private static final LocatorIndex DISABLED = new LocatorIndex((Path) null);
+    /**
+     * The indexes shared by the components of this JVM, by index file, each saved once at shutdown
+     */
+    private static final Map<Path, LocatorIndex> SHARED = new ConcurrentHashMap<>();
+    /**
+     * Serialises the saves of this JVM to a file, the file lock only excludes other processes
+     */
+    private static final Map<Path, Object> SAVE_MONITORS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Entry> paths = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> updated = new ConcurrentHashMap<>();
+    private volatile MappedByteBuffer snapshot;
+
+    public LocatorIndex(Config config) {
+        this(file(config));
+    }
+
+    private LocatorIndex(Path file) {
+        this.file = file;
+        SimpleModule module = new SimpleModule("node");
+        module.addSerializer(Node.class, new NodeSerializer());
+        module.addDeserializer(Node.class, new NodeDeserializer());
+        this.objectMapper = new ObjectMapper().registerModule(module);
+        if (file != null) {
+            map();
+        }
+    }
+
+    /**
+     * @return the index of the configured file shared by this JVM, saved at shutdown, or the disabled index
+     */
+    public static LocatorIndex open(Config config) {
+        Path file = file(config);
+        if (file == null) {
+            return DISABLED;
+        }
+        return SHARED.computeIfAbsent(file.toAbsolutePath(), path -> {
+            LocatorIndex index = new LocatorIndex(path);
+            Runtime.getRuntime().addShutdownHook(new Thread(index::save, "healenium-index-snapshot"));
+            return index;
+        });
+    }
+
+    /**
+     * @return an index that keeps nothing
+     */
+    public static LocatorIndex disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * @param key the storage key of the locator
+     * @return the last valid path, empty if this index doesn't know the locator
+     */
+    public Optional<List<Node>> get(String key) {
+        return get(key, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param key      the storage key of the locator
+     * @param modified the time the source of the path was last modified, in milliseconds
+     * @return the last valid path, empty if this index doesn't know the locator or its path predates the source
+     */
+    public Optional<List<Node>> get(String key, long modified) {
+        if (file == null) {
+            return Optional.empty();
+        }
+        Entry entry = paths.get(key);
+        if (entry == null) {
+            entry = read(key);
+            if (entry != null) {
+                Entry known = paths.putIfAbsent(key, entry);
+                entry = known == null ? entry : known;
+            }
+        }
+        return entry == null || entry.stamp < modified ? Optional.empty() : Optional.of(entry.nodes);
+    }
+
+    /**
+     * @param key   the storage key of the locator
+     * @param nodes the new last valid path
+     */
+    public void put(String key, List<Node> nodes) {
+        put(key, nodes, System.currentTimeMillis());
+    }
+
+    /**
+     * @param key      the storage key of the locator
+     * @param nodes    the new last valid path
+     * @param modified the time the source of the path was last modified, in milliseconds
+     */
+    public void put(String key, List<Node> nodes, long modified) {
+        if (file == null) {
+            return;
+        }
+        paths.put(key, new Entry(nodes, modified));
+        updated.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * Merges the paths known to this run into the index file, keeping the newer path of every key
+     */
+    public void save() {
+        if (file == null || updated.isEmpty()) {
+            return;
+        }
+        Path target = file.toAbsolutePath();
+        synchronized (SAVE_MONITORS.computeIfAbsent(target, it -> new Object())) {
+            try {
+                Path parent = target.getParent();
+                Files.createDirectories(parent);
+                try (FileChannel channel = FileChannel.open(parent.resolve(target.getFileName() + LOCK_SUFFIX),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    FileLock lock = channel.lock();
+                    try {
+                        merge(target, parent);
+                    } finally {
+                        lock.release();
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to save the locator index to {}", target, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the index file with the paths of this run merged in, the caller holds the file lock
+     */
+    private void merge(Path target, Path parent) throws IOException {
+        Map<String, Record> records = readAll(target);
+        int merged = 0;
+        for (String key : updated.keySet()) {
+            Entry entry = paths.get(key);
+            Record saved = records.get(key);
+            if (saved == null || saved.stamp <= entry.stamp) {
+                records.put(key, new Record(entry.stamp, objectMapper.writeValueAsBytes(entry.nodes)));
+                merged++;
+            }
+        }
+        Path temp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temp)) {
+            write(records, new DataOutputStream(stream));
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        updated.clear();
+        log.info("Saved {} of {} locator paths to {}", merged, records.size(), target);
+    }
+
+    private static Path file(Config config) {
+        return config.getBoolean("warm-start") ? Paths.get(config.getString("warmStartPath")) : null;
+    }
+
+    private void map() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!isKnownFormat(buffer)) {
+                log.warn("Ignoring the locator index {}, unknown format", file);
+                return;
+            }
+            snapshot = buffer;
+            log.info("Mapped {} locator paths from {}", buffer.getInt(8), file);
+        } catch (IOException e) {
+            log.warn("Failed to map the locator index {}", file, e);
+        }
+    }
+
+    private static boolean isKnownFormat(ByteBuffer buffer) {
+        return buffer.limit() >= HEADER_SIZE && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION;
+    }
+
+    private Entry read(String key) {
+        ByteBuffer buffer = snapshot;
+        if (buffer == null) {
+            return null;
+        }
+        try {
+            long hash = hash(key);
+            int count = buffer.getInt(8);
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long current = buffer.getLong(HEADER_SIZE + middle * ENTRY_SIZE);
+                if (current < hash) {
+                    low = middle + 1;
+                } else if (current > hash) {
+                    high = middle - 1;
+                } else {
+                    // equal hashes are adjacent, check them all
+                    int first = middle;
+                    while (first > 0 && buffer.getLong(HEADER_SIZE + (first - 1) * ENTRY_SIZE) == hash) {
+                        first--;
+                    }
+                    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                    for (int i = first; i < count && buffer.getLong(HEADER_SIZE + i * ENTRY_SIZE) == hash; i++) {
+                        ByteBuffer record = buffer.duplicate();
+                        record.position(buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 8));
+                        if (Arrays.equals(readBytes(record), bytes)) {
+                            Record path = readRecord(record);
+                            return path == null ? null : new Entry(objectMapper.readValue(path.path,
+                                new TypeReference<List<Node>>() {
+                                }), path.stamp);
+                        }
+                    }
+                    return null;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read {} from the locator index", key, e);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the records of the index file as it is now, rather than as it was mapped, so that the paths other
+     * processes saved since are kept
+     */
+    private static Map<String, Record> readAll(Path file) throws IOException {
+        Map<String, Record> records = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return records;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (!isKnownFormat(buffer)) {
+            log.warn("Replacing the locator index {}, unknown format", file);
+            return records;
+        }
+        try {
+            int count = buffer.getInt(8);
+            for (int i = 0; i < count; i++) {
+                ByteBuffer record = buffer.duplicate();
+                record.position(buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 8));
+                String key = new String(readBytes(record), StandardCharsets.UTF_8);
+                Record path = readRecord(record);
+                if (path != null) {
+                    records.put(key, path);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Locator index {} is truncated, keeping the {} paths read", file, records.size(), e);
+        }
+        return records;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return the record following its key, null if its path is damaged
+     */
+    private static Record readRecord(ByteBuffer buffer) {
+        long stamp = buffer.getLong();
+        long checksum = buffer.getLong();
+        byte[] path = readBytes(buffer);
+        return checksum == checksum(path) ? new Record(stamp, path) : null;
+    }
+
+    private static void write(Map<String, Record> records, DataOutputStream out) throws IOException {
+        List<String> keys = new ArrayList<>(records.keySet());
+        keys.sort(Comparator.comparingLong(LocatorIndex::hash));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(keys.size());
+        int offset = HEADER_SIZE + keys.size() * ENTRY_SIZE;
+        for (String key : keys) {
+            out.writeLong(hash(key));
+            out.writeInt(offset);
+            offset += 4 + key.getBytes(StandardCharsets.UTF_8).length + 8 + 8 + 4 + records.get(key).path.length;
+        }
+        for (String key : keys) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            Record record = records.get(key);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeLong(record.stamp);
+            out.writeLong(checksum(record.path));
+            out.writeInt(record.path.length);
+            out.write(record.path);
+        }
+        out.flush();
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    /**
+     * FNV-1a of the key
+     */
+    private static long hash(String key) {
+        long result = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            result ^= key.charAt(i);
+            result *= 0x100000001b3L;
+        }
+        return result;
+    }
+
+    private static class Entry {
+        private final List<Node> nodes;
+        private final long stamp;
+
+        private Entry(List<Node> nodes, long stamp) {
+            this.nodes = nodes;
+            this.stamp = stamp;
+        }
+    }
+
+    private static class Record {
+        private final long stamp;
+        private final byte[] path;
+
+        private Record(long stamp, byte[] path) {
+            this.stamp = stamp;
+            this.path = path;
+        }
+    }
+}
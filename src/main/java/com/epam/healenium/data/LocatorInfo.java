@@ -15,8 +15,8 @@ package com.epam.healenium.data;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Data
 public class LocatorInfo {
@@ -27,7 +27,7 @@ public class LocatorInfo {
 
     public LocatorInfo() {
         this.reportName = "Healing Report";
-        this.elementsInfo = new ArrayList<>();
+        this.elementsInfo = new CopyOnWriteArrayList<>();
     }
 
     @Data
@@ -37,6 +37,7 @@ public class LocatorInfo {
         private String failedLocatorType;
         private String healedLocatorValue;
         private String screenShotPath;
+        private boolean healDeadlineExceeded;
     }
 
     @Data
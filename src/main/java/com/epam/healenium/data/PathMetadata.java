@@ -0,0 +1,33 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.data;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * What a stored path was saved for. The file name of a path only holds a hash of the locator,
+ * so this is kept next to it to match the path with the records of the backend.
+ */
+@Accessors(chain = true)
+@Data
+public class PathMetadata {
+
+    // the locator as printed by the driver, e.g. By.id: submit
+    private String locator;
+    // the page context of the lookup
+    private String context;
+    // the caller that saved the path first
+    private String className;
+    private String methodName;
+}
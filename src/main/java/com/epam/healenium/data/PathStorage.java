@@ -16,6 +16,7 @@ import com.epam.healenium.treecomparing.Node;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * A storage interface that is responsible for persisting data necessary for locator recovery
@@ -45,6 +46,14 @@ public interface PathStorage {
      */
     void saveLocatorInfo(LocatorInfo data) throws IOException;
 
+    /**
+     * Called when the session the info belongs to ends, nothing more is added to it
+     * @param data the info of the session, as saved before
+     * @throws IOException if failed to write
+     */
+    default void releaseLocatorInfo(LocatorInfo data) throws IOException {
+    }
+
     /**
      * Check if given locator was previously persisted
      * @param locator recovery candidate locator
@@ -52,4 +61,13 @@ public interface PathStorage {
      * @return
      */
     boolean isNodePathPersisted(Object locator, String context);
+
+    /**
+     * Looks for the locator in the other contexts, e.g. when the context of the screen changed together with the locator
+     * @param locator recovery candidate locator
+     * @return the context the path of the locator was persisted in last, empty if there is none
+     */
+    default Optional<String> findLatestContext(Object locator) {
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,42 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.jfr;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Entry point of the flight recorder events of healenium. On a JVM without {@code jdk.jfr} no event class is
+ * loaded and every stage gets {@link StageEvent#DISABLED}; with it, events not enabled in a running recording are
+ * dropped by the recorder on commit.
+ */
+@UtilityClass
+public class HealeniumEvents {
+
+    private final boolean AVAILABLE = isAvailable();
+
+    /**
+     * Starts timing a stage
+     */
+    public StageEvent begin(Stage stage) {
+        return AVAILABLE ? JfrEvents.begin(stage) : StageEvent.DISABLED;
+    }
+
+    private boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, HealeniumEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
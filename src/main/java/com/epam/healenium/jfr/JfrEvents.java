@@ -0,0 +1,161 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder event types, only loaded when {@code jdk.jfr} is available
+ */
+final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    static StageEvent begin(Stage stage) {
+        HealeniumEvent event;
+        switch (stage) {
+            case PROXY:
+                event = new ProxyEvent();
+                break;
+            case CAPTURE:
+                event = new CaptureEvent();
+                break;
+            case PAGE_SOURCE:
+                event = new PageSourceEvent();
+                break;
+            case PARSE:
+                event = new ParseEvent();
+                break;
+            case SCORING:
+                event = new ScoringEvent();
+                break;
+            case VALIDATION:
+                event = new ValidationEvent();
+                break;
+            case STORAGE:
+                event = new StorageEvent();
+                break;
+            default:
+                event = new BackendEvent();
+                break;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Category("Healenium")
+    @StackTrace(false)
+    abstract static class HealeniumEvent extends Event implements StageEvent {
+
+        @Label("Locator")
+        String locator;
+
+        @Label("Caller")
+        String caller;
+
+        @Label("Node Count")
+        int nodeCount;
+
+        @Label("Payload Size")
+        long payloadSize;
+
+        @Label("Outcome")
+        String outcome;
+
+        @Override
+        public StageEvent setLocator(Object locator) {
+            if (isEnabled()) {
+                this.locator = String.valueOf(locator);
+            }
+            return this;
+        }
+
+        @Override
+        public StageEvent setCaller(String caller) {
+            this.caller = caller;
+            return this;
+        }
+
+        @Override
+        public StageEvent setNodeCount(int nodeCount) {
+            this.nodeCount = nodeCount;
+            return this;
+        }
+
+        @Override
+        public StageEvent setPayloadSize(long payloadSize) {
+            this.payloadSize = payloadSize;
+            return this;
+        }
+
+        @Override
+        public StageEvent setOutcome(String outcome) {
+            this.outcome = outcome;
+            return this;
+        }
+    }
+
+    @Name("com.epam.healenium.Proxy")
+    @Label("Lookup")
+    @Description("findElement or findElements through the driver proxy, including the heal")
+    static class ProxyEvent extends HealeniumEvent {
+    }
+
+    @Name("com.epam.healenium.Capture")
+    @Label("Node Path Capture")
+    @Description("Capture of the node path of found elements")
+    static class CaptureEvent extends HealeniumEvent {
+    }
+
+    @Name("com.epam.healenium.PageSource")
+    @Label("Page Source")
+    @Description("Page source request to the device")
+    static class PageSourceEvent extends HealeniumEvent {
+    }
+
+    @Name("com.epam.healenium.Parse")
+    @Label("Page Source Scan")
+    @Description("Scan of a page source into a tree")
+    static class ParseEvent extends HealeniumEvent {
+    }
+
+    @Name("com.epam.healenium.Scoring")
+    @Label("Scoring")
+    @Description("Scoring of a page against the last valid path of a locator")
+    static class ScoringEvent extends HealeniumEvent {
+    }
+
+    @Name("com.epam.healenium.Validation")
+    @Label("Candidate Validation")
+    @Description("Device check that a heal candidate finds a single element")
+    static class ValidationEvent extends HealeniumEvent {
+    }
+
+    @Name("com.epam.healenium.Storage")
+    @Label("Storage")
+    @Description("Read or write of the file system storage")
+    static class StorageEvent extends HealeniumEvent {
+    }
+
+    @Name("com.epam.healenium.Backend")
+    @Label("Backend Call")
+    @Description("Call to hlm-backend")
+    static class BackendEvent extends HealeniumEvent {
+    }
+}
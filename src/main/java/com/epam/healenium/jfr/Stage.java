@@ -0,0 +1,51 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.jfr;
+
+/**
+ * The stages of a lookup that are recorded as flight recorder events
+ */
+public enum Stage {
+    /**
+     * A findElement or findElements call intercepted by the driver proxy, including the heal
+     */
+    PROXY,
+    /**
+     * Capture of the node path of a found element
+     */
+    CAPTURE,
+    /**
+     * Page source request to the device
+     */
+    PAGE_SOURCE,
+    /**
+     * Scan of a page source into a tree
+     */
+    PARSE,
+    /**
+     * Scoring of a page against a stored path
+     */
+    SCORING,
+    /**
+     * Device check of a heal candidate
+     */
+    VALIDATION,
+    /**
+     * Read or write of the file system storage
+     */
+    STORAGE,
+    /**
+     * Call to hlm-backend
+     */
+    BACKEND
+}
@@ -0,0 +1,82 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.jfr;
+
+/**
+ * A stage in progress. Values are only kept if the event is enabled in a running recording, so callers may set them
+ * unconditionally, and check {@link #isEnabled()} before computing the ones that are costly.
+ */
+public interface StageEvent {
+
+    /**
+     * The event used when the flight recorder is not available
+     */
+    StageEvent DISABLED = new StageEvent() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public StageEvent setLocator(Object locator) {
+            return this;
+        }
+
+        @Override
+        public StageEvent setCaller(String caller) {
+            return this;
+        }
+
+        @Override
+        public StageEvent setNodeCount(int nodeCount) {
+            return this;
+        }
+
+        @Override
+        public StageEvent setPayloadSize(long payloadSize) {
+            return this;
+        }
+
+        @Override
+        public StageEvent setOutcome(String outcome) {
+            return this;
+        }
+
+        @Override
+        public void commit() {
+        }
+    };
+
+    boolean isEnabled();
+
+    StageEvent setLocator(Object locator);
+
+    /**
+     * @param caller the test method, as class.method
+     */
+    StageEvent setCaller(String caller);
+
+    StageEvent setNodeCount(int nodeCount);
+
+    /**
+     * @param payloadSize the size of the page source or of the request body, in characters or bytes
+     */
+    StageEvent setPayloadSize(long payloadSize);
+
+    StageEvent setOutcome(String outcome);
+
+    /**
+     * Ends the stage and writes the event if it is recorded
+     */
+    void commit();
+}
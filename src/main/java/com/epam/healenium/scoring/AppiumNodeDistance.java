@@ -0,0 +1,73 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+/**
+ * Compares the view attributes that identify an element on a mobile screen. Works on {@link NodeFeatures} only,
+ * so that scoring a tree does no string hashing or comparison. Only the experimental compact {@link PathScorer} uses it.
+ */
+public class AppiumNodeDistance implements NodeSimilarity {
+
+    private static final double TAG_WEIGHT = 2;
+    private static final double RESOURCE_ID_WEIGHT = 4;
+    private static final double CLASS_WEIGHT = 1;
+    private static final double TEXT_WEIGHT = 2;
+    private static final double DESCRIPTION_WEIGHT = 2;
+    private static final double BOUNDS_WEIGHT = 1;
+    private static final double FLAGS_WEIGHT = 1;
+    /**
+     * Distance in pixels between the centers of two views at which their positions stop counting as similar
+     */
+    private static final double PROXIMITY_RANGE = 500;
+
+    @Override
+    public double similarity(NodeFeatures stored, NodeFeatures candidate) {
+        double score = stored.tag == candidate.tag ? TAG_WEIGHT : 0;
+        double total = TAG_WEIGHT;
+        if (stored.resourceId != SymbolTable.EMPTY || candidate.resourceId != SymbolTable.EMPTY) {
+            total += RESOURCE_ID_WEIGHT;
+            score += stored.resourceId == candidate.resourceId ? RESOURCE_ID_WEIGHT : 0;
+        }
+        total += CLASS_WEIGHT;
+        score += stored.className == candidate.className ? CLASS_WEIGHT : 0;
+        if (stored.text != SymbolTable.EMPTY || candidate.text != SymbolTable.EMPTY) {
+            total += TEXT_WEIGHT;
+            score += stored.text == candidate.text ? TEXT_WEIGHT : 0;
+        }
+        if (stored.description != SymbolTable.EMPTY || candidate.description != SymbolTable.EMPTY) {
+            total += DESCRIPTION_WEIGHT;
+            score += stored.description == candidate.description ? DESCRIPTION_WEIGHT : 0;
+        }
+        if (stored.bounds != SymbolTable.EMPTY || candidate.bounds != SymbolTable.EMPTY) {
+            total += BOUNDS_WEIGHT;
+            score += BOUNDS_WEIGHT * proximity(stored, candidate);
+        }
+        int known = stored.knownFlags & candidate.knownFlags;
+        if (known != 0) {
+            total += FLAGS_WEIGHT;
+            score += FLAGS_WEIGHT * Integer.bitCount(~(stored.flags ^ candidate.flags) & known) / Integer.bitCount(known);
+        }
+        return score / total;
+    }
+
+    /**
+     * @return 1 for the same bounds, down to 0 for views {@link #PROXIMITY_RANGE} or more apart
+     */
+    private static double proximity(NodeFeatures stored, NodeFeatures candidate) {
+        if (stored.bounds == candidate.bounds) {
+            return 1;
+        }
+        double distance = stored.distance(candidate);
+        return distance < 0 ? 0 : Math.max(0, 1 - distance / PROXIMITY_RANGE);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid over the centers of the views of a screen, to find the views near a position without going
+ * through the whole tree. Built once per screen, it may be searched concurrently once built.
+ * Only the shortlist of the experimental compact {@link PathScorer} searches it, the default scorer doesn't.
+ */
+public class BoundsIndex {
+
+    private static final int CELL_SIZE = 128;
+
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private int size;
+
+    /**
+     * @param node     a node of the screen tree
+     * @param features the features of the node, ignored if they have no position
+     */
+    public void add(int node, NodeFeatures features) {
+        if (!features.hasPosition()) {
+            return;
+        }
+        long cell = cell(Math.floorDiv(features.centerX, CELL_SIZE), Math.floorDiv(features.centerY, CELL_SIZE));
+        cells.computeIfAbsent(cell, it -> new ArrayList<>()).add(new Entry(node, features));
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param position the features of the view to search around, usually the last known state of the element
+     * @param radius   the largest distance in pixels between the centers of the views
+     * @return the nodes whose center is within the radius, nearest first, empty if the position is unknown
+     */
+    public int[] near(NodeFeatures position, int radius) {
+        if (!position.hasPosition()) {
+            return new int[0];
+        }
+        List<Entry> found = new ArrayList<>();
+        int fromX = Math.floorDiv(position.centerX - radius, CELL_SIZE);
+        int toX = Math.floorDiv(position.centerX + radius, CELL_SIZE);
+        int fromY = Math.floorDiv(position.centerY - radius, CELL_SIZE);
+        int toY = Math.floorDiv(position.centerY + radius, CELL_SIZE);
+        for (int x = fromX; x <= toX; x++) {
+            for (int y = fromY; y <= toY; y++) {
+                List<Entry> cell = cells.get(cell(x, y));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry entry : cell) {
+                    if (entry.features.distance(position) <= radius) {
+                        found.add(entry);
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingDouble(it -> it.features.distance(position)));
+        int[] result = new int[found.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = found.get(i).node;
+        }
+        return result;
+    }
+
+    private static long cell(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    private static class Entry {
+        private final int node;
+        private final NodeFeatures features;
+
+        private Entry(int node, NodeFeatures features) {
+            this.node = node;
+            this.features = features;
+        }
+    }
+}
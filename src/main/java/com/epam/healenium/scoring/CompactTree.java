@@ -0,0 +1,385 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import com.epam.healenium.treecomparing.DocumentParser;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.NodeBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page source tree kept in primitive arrays: nodes are indexes, numbered in document order from the root 0,
+ * links between them are index columns and tags, attribute names and values are ids of a string pool shared by the
+ * nodes of the tree. The scoring features and the positions of the nodes are computed once, when the tree is built.
+ * <p>A subtree of a previous tree can be copied in whole, with its features, when its source is unchanged.</p>
+ * <p>{@link Node} views are built on demand, only for the nodes that leave the scorer.</p>
+ */
+public final class CompactTree {
+
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final String ROOT_TAG = "hierarchy";
+
+    private int size;
+    private int[] parent = new int[INITIAL_CAPACITY];
+    private int[] firstChild = new int[INITIAL_CAPACITY];
+    private int[] lastChild = new int[INITIAL_CAPACITY];
+    private int[] nextSibling = new int[INITIAL_CAPACITY];
+    /**
+     * Position of the node among the children of its parent
+     */
+    private int[] siblingIndex = new int[INITIAL_CAPACITY];
+    private int[] tag = new int[INITIAL_CAPACITY];
+    private int[] text = new int[INITIAL_CAPACITY];
+    /**
+     * The attributes of node i are the entries from attributeStart[i] to attributeStart[i + 1]
+     */
+    private int[] attributeStart = new int[INITIAL_CAPACITY + 1];
+    private int attributeCount;
+    private int[] attributeNames = new int[INITIAL_CAPACITY * 8];
+    private int[] attributeValues = new int[INITIAL_CAPACITY * 8];
+
+    private Map<String, Integer> stringIds = new HashMap<>();
+    private String[] strings = new String[INITIAL_CAPACITY];
+    private int stringCount;
+
+    private NodeFeatures[] features = new NodeFeatures[INITIAL_CAPACITY];
+    /**
+     * Set for the nodes copied from another tree, their features already cover their text
+     */
+    private boolean[] copied = new boolean[INITIAL_CAPACITY];
+    private BoundsIndex positions;
+
+    CompactTree() {
+        // the empty string is id 0, so that zeroed columns read as empty
+        string("");
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int parent(int node) {
+        return parent[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public String tag(int node) {
+        return strings[tag[node]];
+    }
+
+    public String text(int node) {
+        return strings[text[node]];
+    }
+
+    /**
+     * @return the value of the attribute, null if the node doesn't have it
+     */
+    public String attribute(int node, String name) {
+        for (int i = attributeStart[node]; i < attributeStart[node + 1]; i++) {
+            if (strings[attributeNames[i]].equals(name)) {
+                return strings[attributeValues[i]];
+            }
+        }
+        return null;
+    }
+
+    public NodeFeatures features(int node) {
+        return features[node];
+    }
+
+    public BoundsIndex positions() {
+        return positions;
+    }
+
+    /**
+     * @return the path from the root to the node, as nodes that don't link to each other, e.g. to be stored
+     */
+    public List<Node> path(int node) {
+        LinkedList<Node> path = new LinkedList<>();
+        for (int current = node; current != NONE; current = parent[current]) {
+            path.addFirst(new NodeBuilder()
+                .setTag(tag(current))
+                .setIndex(siblingIndex[current])
+                .addContent(text(current))
+                .setAttributes(attributes(current))
+                .build());
+        }
+        return path;
+    }
+
+    /**
+     * Builds a view of the node that links to its ancestors, by parsing the chain from the root to the node.
+     * The chain is put under a hierarchy element if the tree has none, since the parser starts from it.
+     *
+     * @param node   the node
+     * @param parser the parser of the page source
+     * @return the view of the node
+     */
+    public Node toNode(int node, DocumentParser parser) {
+        LinkedList<Integer> chain = new LinkedList<>();
+        for (int current = node; current != NONE; current = parent[current]) {
+            chain.addFirst(current);
+        }
+        boolean wrapped = !ROOT_TAG.equals(tag(chain.getFirst()));
+        StringBuilder source = new StringBuilder();
+        if (wrapped) {
+            source.append('<').append(ROOT_TAG).append('>');
+        }
+        for (int current : chain) {
+            source.append('<').append(tag(current));
+            for (int i = attributeStart[current]; i < attributeStart[current + 1]; i++) {
+                source.append(' ').append(strings[attributeNames[i]]).append("=\"");
+                escape(strings[attributeValues[i]], source);
+                source.append('"');
+            }
+            source.append('>');
+        }
+        escape(text(node), source);
+        Iterator<Integer> reversed = chain.descendingIterator();
+        while (reversed.hasNext()) {
+            source.append("</").append(tag(reversed.next())).append('>');
+        }
+        if (wrapped) {
+            source.append("</").append(ROOT_TAG).append('>');
+        }
+        Node result = parser.parse(new ByteArrayInputStream(source.toString().getBytes(StandardCharsets.UTF_8)));
+        while (result.getChildren().iterator().hasNext()) {
+            result = result.getChildren().iterator().next();
+        }
+        return result;
+    }
+
+    int attributeCount(int node) {
+        return attributeStart[node + 1] - attributeStart[node];
+    }
+
+    String attributeName(int node, int i) {
+        return strings[attributeNames[attributeStart[node] + i]];
+    }
+
+    String attributeValue(int node, int i) {
+        return strings[attributeValues[attributeStart[node] + i]];
+    }
+
+    private Map<String, String> attributes(int node) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = attributeStart[node]; i < attributeStart[node + 1]; i++) {
+            result.put(strings[attributeNames[i]], strings[attributeValues[i]]);
+        }
+        return result;
+    }
+
+    private static void escape(String value, StringBuilder target) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    target.append("&amp;");
+                    break;
+                case '<':
+                    target.append("&lt;");
+                    break;
+                case '>':
+                    target.append("&gt;");
+                    break;
+                case '"':
+                    target.append("&quot;");
+                    break;
+                default:
+                    target.append(c);
+            }
+        }
+    }
+
+    /**
+     * Adds a node, its attributes must be added right after it
+     *
+     * @param parentNode the parent of the node, {@link #NONE} for the root
+     * @return the new node
+     */
+    int addNode(int parentNode, String tagName) {
+        return addNode(parentNode, string(tagName));
+    }
+
+    private int addNode(int parentNode, int tagId) {
+        if (size == parent.length) {
+            grow();
+        }
+        int node = size++;
+        parent[node] = parentNode;
+        firstChild[node] = NONE;
+        lastChild[node] = NONE;
+        nextSibling[node] = NONE;
+        tag[node] = tagId;
+        attributeStart[node] = attributeCount;
+        attributeStart[node + 1] = attributeCount;
+        if (parentNode != NONE) {
+            int previous = lastChild[parentNode];
+            if (previous == NONE) {
+                firstChild[parentNode] = node;
+            } else {
+                nextSibling[previous] = node;
+                siblingIndex[node] = siblingIndex[previous] + 1;
+            }
+            lastChild[parentNode] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Adds an attribute to the last added node
+     */
+    void addAttribute(String name, String value) {
+        addAttribute(string(name), string(value));
+    }
+
+    private void addAttribute(int nameId, int valueId) {
+        if (attributeCount == attributeNames.length) {
+            attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+            attributeValues = Arrays.copyOf(attributeValues, attributeCount * 2);
+        }
+        attributeNames[attributeCount] = nameId;
+        attributeValues[attributeCount] = valueId;
+        attributeStart[size] = ++attributeCount;
+    }
+
+    /**
+     * Copies a finished subtree of another tree, with the features of its nodes
+     *
+     * @param from       the tree to copy from
+     * @param root       the root of the subtree
+     * @param last       the last node of the subtree, its nodes are numbered from the root to it
+     * @param parentNode the parent of the copy, {@link #NONE} for the root
+     * @param ids        the ids in this tree of the strings of the other one, 0 for the ones not added yet
+     * @return the copy of the root
+     */
+    int copy(CompactTree from, int root, int last, int parentNode, int[] ids) {
+        int base = size;
+        for (int node = root; node <= last; node++) {
+            int copy = addNode(node == root ? parentNode : base + from.parent[node] - root, id(from, from.tag[node], ids));
+            for (int i = from.attributeStart[node]; i < from.attributeStart[node + 1]; i++) {
+                addAttribute(id(from, from.attributeNames[i], ids), id(from, from.attributeValues[i], ids));
+            }
+            text[copy] = id(from, from.text[node], ids);
+            features[copy] = from.features[node];
+            copied[copy] = true;
+        }
+        return base;
+    }
+
+    /**
+     * @return the number of strings in the pool of the finished tree
+     */
+    int poolSize() {
+        return strings.length;
+    }
+
+    /**
+     * Sets the features of a node, e.g. the ones of an identical start tag of a previous page source,
+     * null to compute them when the tree is finished
+     */
+    void setFeatures(int node, NodeFeatures value) {
+        features[node] = value;
+    }
+
+    void appendText(int node, String value) {
+        String current = text(node);
+        text[node] = string(current.isEmpty() ? value : current + " " + value);
+    }
+
+    /**
+     * Trims the columns, drops the pool index and computes the features and the positions of the nodes
+     */
+    CompactTree finish() {
+        parent = Arrays.copyOf(parent, size);
+        firstChild = Arrays.copyOf(firstChild, size);
+        nextSibling = Arrays.copyOf(nextSibling, size);
+        siblingIndex = Arrays.copyOf(siblingIndex, size);
+        tag = Arrays.copyOf(tag, size);
+        text = Arrays.copyOf(text, size);
+        attributeStart = Arrays.copyOf(attributeStart, size + 1);
+        attributeNames = Arrays.copyOf(attributeNames, attributeCount);
+        attributeValues = Arrays.copyOf(attributeValues, attributeCount);
+        strings = Arrays.copyOf(strings, stringCount);
+        features = Arrays.copyOf(features, size);
+        lastChild = null;
+        stringIds = null;
+        SymbolTable symbols = SymbolTable.global();
+        positions = new BoundsIndex();
+        for (int node = 0; node < size; node++) {
+            // the features of a reused start tag don't cover the text between the tags
+            if (features[node] == null || text[node] != 0 && !copied[node]) {
+                int current = node;
+                String className = attribute(node, "class");
+                features[node] = NodeFeatures.of(tag(node), name -> attribute(current, name),
+                    className == null || className.isEmpty() ? tag(node) : className, text(node), symbols);
+            }
+            positions.add(node, features[node]);
+        }
+        copied = null;
+        return this;
+    }
+
+    private int id(CompactTree from, int id, int[] ids) {
+        // the empty string is id 0 in every tree
+        if (id != 0 && ids[id] == 0) {
+            ids[id] = string(from.strings[id]);
+        }
+        return id == 0 ? 0 : ids[id];
+    }
+
+    private int string(String value) {
+        Integer id = stringIds.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+        strings[stringCount] = value;
+        stringIds.put(value, stringCount);
+        return stringCount++;
+    }
+
+    private void grow() {
+        int capacity = parent.length * 2;
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        lastChild = Arrays.copyOf(lastChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        siblingIndex = Arrays.copyOf(siblingIndex, capacity);
+        tag = Arrays.copyOf(tag, capacity);
+        text = Arrays.copyOf(text, capacity);
+        attributeStart = Arrays.copyOf(attributeStart, capacity + 1);
+        features = Arrays.copyOf(features, capacity);
+        copied = Arrays.copyOf(copied, capacity);
+    }
+}
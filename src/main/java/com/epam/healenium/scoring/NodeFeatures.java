@@ -0,0 +1,181 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import com.epam.healenium.treecomparing.Node;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The attributes of a view that matter for healing, encoded as integers once per node:
+ * interned ids for the tag, resource id and class, 64-bit hashes for the free text values and bit sets for the boolean
+ * flags.
+ * Paths stored from the device use camel case attribute names, paths parsed from the page source use the names of the source.
+ * Read by the experimental compact scorer only, the default tree-comparing path finder compares {@link Node}s.
+ */
+public final class NodeFeatures {
+
+    /**
+     * Center coordinate of a node without bounds
+     */
+    static final int NO_POSITION = Integer.MIN_VALUE;
+
+    private static final String[] FLAGS = {
+        "checkable", "checked", "clickable", "enabled", "focusable", "scrollable", "long-clickable", "password",
+        "selected", "displayed"
+    };
+
+    final long tag;
+    final long resourceId;
+    final long className;
+    final long text;
+    final long description;
+    final long bounds;
+    final int centerX;
+    final int centerY;
+    /**
+     * Flags set to true, one bit per name of {@link #FLAGS}
+     */
+    final int flags;
+    /**
+     * Flags the node has a value for
+     */
+    final int knownFlags;
+
+    private NodeFeatures(long tag, long resourceId, long className, long text, long description, long bounds,
+                         int[] center, int flags, int knownFlags) {
+        this.tag = tag;
+        this.resourceId = resourceId;
+        this.className = className;
+        this.text = text;
+        this.description = description;
+        this.bounds = bounds;
+        this.centerX = center[0];
+        this.centerY = center[1];
+        this.flags = flags;
+        this.knownFlags = knownFlags;
+    }
+
+    public static NodeFeatures of(Node node) {
+        return of(node, SymbolTable.global());
+    }
+
+    public static NodeFeatures of(Node node, SymbolTable symbols) {
+        Map<String, String> attributes = node.getOtherAttributes();
+        return of(node.getTag(), attributes::get, className(node, attributes), node.getInnerText(), symbols);
+    }
+
+    /**
+     * @param tag        the view class
+     * @param attributes the attribute values by name, null for a missing attribute
+     * @param className  the class attribute, the tag if the source has none
+     * @param innerText  the text content, used when there is no text attribute
+     * @param symbols    the symbols to intern the tag, resource id and class with
+     */
+    static NodeFeatures of(String tag, Function<String, String> attributes, String className, String innerText,
+                           SymbolTable symbols) {
+        int flags = 0;
+        int knownFlags = 0;
+        for (int i = 0; i < FLAGS.length; i++) {
+            String value = attributes.apply(FLAGS[i]);
+            if (value != null && !value.isEmpty()) {
+                knownFlags |= 1 << i;
+                if (Boolean.parseBoolean(value)) {
+                    flags |= 1 << i;
+                }
+            }
+        }
+        String text = attributes.apply("text");
+        String bounds = attributes.apply("bounds");
+        return new NodeFeatures(
+            symbols.intern(tag),
+            symbols.intern(value(attributes, "resource-id", "resourceId")),
+            symbols.intern(className),
+            hash(text != null && !text.isEmpty() ? text : Objects.toString(innerText, "").trim()),
+            hash(value(attributes, "content-desc", "contentDescription")),
+            hash(bounds),
+            center(bounds),
+            flags,
+            knownFlags);
+    }
+
+    public boolean hasPosition() {
+        return centerX != NO_POSITION;
+    }
+
+    /**
+     * @return the distance in pixels between the centers of the nodes, or -1 if one of them has no bounds
+     */
+    public double distance(NodeFeatures other) {
+        if (!hasPosition() || !other.hasPosition()) {
+            return -1;
+        }
+        long dx = (long) centerX - other.centerX;
+        long dy = (long) centerY - other.centerY;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static String value(Function<String, String> attributes, String name, String alias) {
+        String value = attributes.apply(name);
+        return value != null && !value.isEmpty() ? value : attributes.apply(alias);
+    }
+
+    private static String className(Node node, Map<String, String> attributes) {
+        String value = value(attributes::get, "class", "className");
+        if (value != null && !value.isEmpty()) {
+            return value;
+        }
+        Iterator<String> classes = node.getClasses() == null ? null : node.getClasses().iterator();
+        return classes != null && classes.hasNext() ? classes.next() : node.getTag();
+    }
+
+    /**
+     * @param bounds the bounds as reported by Android, e.g. {@code [658,1983][966,2322]}
+     * @return the center of the bounds, {@link #NO_POSITION} if they are missing or malformed
+     */
+    private static int[] center(String bounds) {
+        int[] numbers = new int[4];
+        int count = 0;
+        int current = -1;
+        boolean negative = false;
+        for (int i = 0; bounds != null && i < bounds.length() && count < numbers.length; i++) {
+            char c = bounds.charAt(i);
+            if (c >= '0' && c <= '9') {
+                current = (current < 0 ? 0 : current * 10) + (c - '0');
+            } else if (c == '-' && current < 0) {
+                negative = true;
+            } else if (current >= 0) {
+                numbers[count++] = negative ? -current : current;
+                current = -1;
+                negative = false;
+            }
+        }
+        if (count < numbers.length) {
+            return new int[]{NO_POSITION, NO_POSITION};
+        }
+        return new int[]{(numbers[0] + numbers[2]) / 2, (numbers[1] + numbers[3]) / 2};
+    }
+
+    /**
+     * @return the hash of a non-empty value, never 0, or 0 for an empty one
+     */
+    private static long hash(String value) {
+        if (value == null || value.isEmpty()) {
+            return SymbolTable.EMPTY;
+        }
+        return SymbolTable.hash(value);
+    }
+}
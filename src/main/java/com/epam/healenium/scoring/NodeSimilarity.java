@@ -0,0 +1,27 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+/**
+ * Similarity of a stored node to a node of the current screen
+ */
+@FunctionalInterface
+public interface NodeSimilarity {
+
+    /**
+     * @param stored    the features of a node of the last valid path
+     * @param candidate the features of a node of the current screen
+     * @return the similarity from 0 to 1, 1 if the nodes look the same
+     */
+    double similarity(NodeFeatures stored, NodeFeatures candidate);
+}
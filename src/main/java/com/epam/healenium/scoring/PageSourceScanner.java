@@ -0,0 +1,360 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import com.epam.healenium.jfr.HealeniumEvents;
+import com.epam.healenium.jfr.Stage;
+import com.epam.healenium.jfr.StageEvent;
+import lombok.experimental.UtilityClass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a page source into a {@link CompactTree} in a single pass, without building a DOM.
+ * <p>Handles what UiAutomator2 and XCUITest produce: elements, attributes in single or double quotes, character
+ * references, text, comments, CDATA, processing instructions and the doctype. Unclosed elements are closed at the end
+ * and stray end tags close the nearest element of the same name, if any.</p>
+ * <p>With a {@link StartTagCache}, an element lying in the text the page source shares at its start or at its end
+ * with the previous one is copied from the previous tree without being read. Of the rest, a start tag identical to
+ * one of the previous page sources is taken from the cache instead of being decoded and encoded again. So a scan of
+ * a mostly unchanged screen compares it with the previous source and reads only the elements around the change.</p>
+ */
+@UtilityClass
+public class PageSourceScanner {
+
+    public CompactTree scan(String source) {
+        return scan(source, null);
+    }
+
+    /**
+     * @param source the page source
+     * @param cache  the start tags of the previous page sources, null to decode every start tag
+     * @return the tree of the page source
+     */
+    public CompactTree scan(String source, StartTagCache cache) {
+        StageEvent event = HealeniumEvents.begin(Stage.PARSE);
+        CompactTree tree;
+        if (cache == null) {
+            tree = read(source, null);
+        } else {
+            synchronized (cache) {
+                tree = read(source, cache);
+            }
+        }
+        event.setPayloadSize(source.length()).setNodeCount(tree.size()).commit();
+        return tree;
+    }
+
+    private CompactTree read(String source, StartTagCache cache) {
+        CompactTree tree = new CompactTree();
+        List<long[]> added = new ArrayList<>();
+        int[] open = new int[64];
+        int depth = 0;
+        int position = 0;
+        int length = source.length();
+        StartTagCache.Scan scan = cache == null ? null : new StartTagCache.Scan(source);
+        StartTagCache.Scan last = cache == null ? null : cache.last();
+        int prefix = 0;
+        int suffix = 0;
+        int shift = 0;
+        int[] ids = null;
+        int copied = 0;
+        if (last != null) {
+            prefix = commonPrefix(last.source, source);
+            suffix = commonSuffix(last.source, source, prefix);
+            shift = length - last.source.length();
+            ids = new int[last.tree.poolSize()];
+        }
+        while (position < length) {
+            int tagStart = source.indexOf('<', position);
+            int textEnd = tagStart < 0 ? length : tagStart;
+            if (depth > 0 && textEnd > position) {
+                String text = decode(source, position, textEnd).trim();
+                if (!text.isEmpty()) {
+                    tree.appendText(open[depth - 1], text);
+                }
+            }
+            if (tagStart < 0) {
+                break;
+            }
+            if (source.startsWith("<!--", tagStart)) {
+                position = skipTo(source, tagStart, "-->");
+            } else if (source.startsWith("<![CDATA[", tagStart)) {
+                int end = source.indexOf("]]>", tagStart);
+                end = end < 0 ? length : end;
+                String text = source.substring(tagStart + 9, end).trim();
+                if (depth > 0 && !text.isEmpty()) {
+                    tree.appendText(open[depth - 1], text);
+                }
+                position = Math.min(length, end + 3);
+            } else if (source.startsWith("<?", tagStart)) {
+                position = skipTo(source, tagStart, "?>");
+            } else if (source.startsWith("<!", tagStart)) {
+                position = skipTo(source, tagStart, ">");
+            } else if (source.startsWith("</", tagStart)) {
+                int end = skipTo(source, tagStart, ">");
+                String name = source.substring(tagStart + 2, end - 1).trim();
+                int closed = CompactTree.NONE;
+                for (int i = depth - 1; i >= 0; i--) {
+                    if (tree.tag(open[i]).equals(name)) {
+                        closed = i;
+                        break;
+                    }
+                }
+                if (closed == CompactTree.NONE) {
+                    // a stray end tag, the open elements may read differently in another source
+                    for (int i = 0; scan != null && i < depth; i++) {
+                        scan.markIrregular(open[i]);
+                    }
+                } else {
+                    // the elements left open inside are closed too, without a span of their own
+                    for (int i = closed; scan != null && i < depth; i++) {
+                        scan.closed(open[i], i == closed ? end : StartTagCache.Scan.UNKNOWN, tree.size() - 1);
+                    }
+                    depth = closed;
+                }
+                position = end;
+            } else {
+                int parent = depth > 0 ? open[depth - 1] : CompactTree.NONE;
+                int unchanged = last == null ? CompactTree.NONE : last.unchanged(tagStart, prefix, suffix, shift);
+                if (unchanged != CompactTree.NONE) {
+                    int node = tree.copy(last.tree, unchanged, last.last(unchanged), parent, ids);
+                    int moved = tagStart - last.start(unchanged);
+                    scan.copied(last, unchanged, node, moved);
+                    copied += tree.size() - node;
+                    position = last.end(unchanged) + moved;
+                    continue;
+                }
+                int end = startTagEnd(source, tagStart);
+                long hash = hash(source, tagStart, end);
+                StartTagCache.Entry known = cache == null ? null : cache.get(hash, source, tagStart, end);
+                int node;
+                if (known != null) {
+                    node = tree.addNode(parent, known.tag);
+                    for (int i = 0; i < known.names.length; i++) {
+                        tree.addAttribute(known.names[i], known.values[i]);
+                    }
+                    tree.setFeatures(node, known.features);
+                    position = end;
+                } else {
+                    int nameEnd = tagStart + 1;
+                    while (nameEnd < length && !isNameEnd(source.charAt(nameEnd))) {
+                        nameEnd++;
+                    }
+                    node = tree.addNode(parent, source.substring(tagStart + 1, nameEnd));
+                    position = readAttributes(source, nameEnd, tree);
+                    added.add(new long[]{node, hash, tagStart, position});
+                }
+                if (scan != null) {
+                    scan.opened(node, tagStart);
+                }
+                boolean selfClosing = source.charAt(position - 2) == '/';
+                if (selfClosing && scan != null) {
+                    scan.closed(node, position, node);
+                }
+                if (!selfClosing) {
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = node;
+                }
+            }
+        }
+        tree.finish();
+        if (cache != null) {
+            for (long[] tag : added) {
+                int node = (int) tag[0];
+                String[] names = new String[tree.attributeCount(node)];
+                String[] values = new String[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = tree.attributeName(node, i);
+                    values[i] = tree.attributeValue(node, i);
+                }
+                cache.put(tag[1], new StartTagCache.Entry(source.substring((int) tag[2], (int) tag[3]),
+                    tree.tag(node), names, values, tree.text(node).isEmpty() ? tree.features(node) : null));
+            }
+            scan.finish(tree);
+            cache.rotate(scan, copied);
+        }
+        return tree;
+    }
+
+    private int commonPrefix(String previous, String source) {
+        int limit = Math.min(previous.length(), source.length());
+        int length = 0;
+        while (length < limit && previous.charAt(length) == source.charAt(length)) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @return the length of the text both sources end with, not overlapping the text they start with
+     */
+    private int commonSuffix(String previous, String source, int prefix) {
+        int limit = Math.min(previous.length(), source.length()) - prefix;
+        int length = 0;
+        while (length < limit
+            && previous.charAt(previous.length() - 1 - length) == source.charAt(source.length() - 1 - length)) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @return the position right after the end of the start tag, quoted values may contain {@code >}
+     */
+    private int startTagEnd(String source, int start) {
+        int length = source.length();
+        for (int position = start + 1; position < length; position++) {
+            char c = source.charAt(position);
+            if (c == '>') {
+                return position + 1;
+            }
+            if (c == '"' || c == '\'') {
+                int close = source.indexOf(c, position + 1);
+                if (close < 0) {
+                    return length;
+                }
+                position = close;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return the position right after the end of the start tag
+     */
+    private int readAttributes(String source, int position, CompactTree tree) {
+        int length = source.length();
+        while (position < length) {
+            char c = source.charAt(position);
+            if (c == '>') {
+                return position + 1;
+            }
+            if (Character.isWhitespace(c) || c == '/') {
+                position++;
+                continue;
+            }
+            int nameStart = position;
+            while (position < length && source.charAt(position) != '=' && !isNameEnd(source.charAt(position))) {
+                position++;
+            }
+            String name = source.substring(nameStart, position);
+            while (position < length && Character.isWhitespace(source.charAt(position))) {
+                position++;
+            }
+            if (position >= length || source.charAt(position) != '=') {
+                tree.addAttribute(name, "");
+                continue;
+            }
+            position++;
+            while (position < length && Character.isWhitespace(source.charAt(position))) {
+                position++;
+            }
+            if (position >= length) {
+                break;
+            }
+            char quote = source.charAt(position);
+            int valueEnd;
+            if (quote == '"' || quote == '\'') {
+                valueEnd = source.indexOf(quote, position + 1);
+                valueEnd = valueEnd < 0 ? length : valueEnd;
+                tree.addAttribute(name, decode(source, position + 1, valueEnd));
+                position = Math.min(length, valueEnd + 1);
+            } else {
+                valueEnd = position;
+                while (valueEnd < length && !isNameEnd(source.charAt(valueEnd))) {
+                    valueEnd++;
+                }
+                tree.addAttribute(name, decode(source, position, valueEnd));
+                position = valueEnd;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * FNV-1a of the region
+     */
+    private long hash(String source, int start, int end) {
+        long result = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            result ^= source.charAt(i);
+            result *= 0x100000001b3L;
+        }
+        return result;
+    }
+
+    private boolean isNameEnd(char c) {
+        return Character.isWhitespace(c) || c == '>' || c == '/';
+    }
+
+    private int skipTo(String source, int from, String terminator) {
+        int end = source.indexOf(terminator, from);
+        return end < 0 ? source.length() : end + terminator.length();
+    }
+
+    private String decode(String source, int from, int to) {
+        int ampersand = source.indexOf('&', from);
+        if (ampersand < 0 || ampersand >= to) {
+            return source.substring(from, to);
+        }
+        StringBuilder result = new StringBuilder(to - from);
+        int position = from;
+        while (position < to) {
+            char c = source.charAt(position);
+            int end = c == '&' ? source.indexOf(';', position) : -1;
+            if (end < 0 || end >= to) {
+                result.append(c);
+                position++;
+                continue;
+            }
+            String entity = source.substring(position + 1, end);
+            String decoded = decodeEntity(entity);
+            result.append(decoded != null ? decoded : source.substring(position, end + 1));
+            position = end + 1;
+        }
+        return result.toString();
+    }
+
+    private String decodeEntity(String entity) {
+        switch (entity) {
+            case "amp":
+                return "&";
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "quot":
+                return "\"";
+            case "apos":
+                return "'";
+            default:
+                break;
+        }
+        try {
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                return new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+            }
+            if (entity.startsWith("#")) {
+                return new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return null;
+    }
+}
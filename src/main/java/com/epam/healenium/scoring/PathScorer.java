@@ -0,0 +1,251 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import com.epam.healenium.HealDeadline;
+import com.epam.healenium.treecomparing.DocumentParser;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.Scored;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Scores every node of a tree against the last valid path of an element.
+ * <p>The tree is walked breadth first. The longest common subsequence of the stored path and the path of a node is
+ * derived from the one of its parent, so every node costs one pass over the stored path. Only the best candidates are
+ * kept. If the deadline expires, the walk stops and the best candidates found so far are returned.</p>
+ * <p>Nodes are compared by their {@link NodeFeatures}, encoded once per node rather than once per comparison.
+ * On a {@link CompactTree}, the views near the last known position of the element are scored first, since most
+ * UI changes keep an element roughly in place.</p>
+ * <p>Experimental: used only when the compact scorer is configured, the tree-comparing path finder is the default
+ * until this scorer is shown to pick the same candidates.</p>
+ */
+@Slf4j
+public class PathScorer {
+
+    /**
+     * Nodes less similar than this are not considered the same node of the path
+     */
+    private static final double MATCH_THRESHOLD = 0.5;
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+    /**
+     * Views farther than this from the last known position of the element are not shortlisted
+     */
+    private static final int SHORTLIST_RADIUS = 400;
+    /**
+     * A shortlisted candidate scoring this is an exact match, taken without scoring the rest of the tree
+     */
+    private static final double EXACT_MATCH_SCORE = 1 - 1e-9;
+
+    private final NodeSimilarity similarity;
+
+    public PathScorer(NodeSimilarity similarity) {
+        this.similarity = similarity;
+    }
+
+    /**
+     * @param path        the last valid path of the element, from the root to the element
+     * @param destination the root of the current tree
+     * @param limit       how many candidates to return
+     * @param deadline    the heal deadline
+     * @return the candidates ordered by score descending
+     */
+    public List<Scored<Node>> find(List<Node> path, Node destination, int limit, HealDeadline deadline) {
+        if (path.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        NodeFeatures[] stored = encode(path);
+        PriorityQueue<Scored<Node>> best = new PriorityQueue<>(limit + 1, byScore());
+        Deque<Step<Node>> queue = new ArrayDeque<>();
+        queue.add(new Step<>(destination, new double[stored.length + 1], 0));
+        int visited = 0;
+        while (!queue.isEmpty()) {
+            if (++visited % DEADLINE_CHECK_INTERVAL == 0 && deadline.isExpired()) {
+                log.warn("Heal deadline reached after scoring {} nodes, using the best candidates so far", visited);
+                break;
+            }
+            Step<Node> step = queue.poll();
+            double[] column = new double[stored.length + 1];
+            double nodeScore = advance(stored, step.column, NodeFeatures.of(step.node), column);
+            int depth = step.depth + 1;
+            offer(best, new Scored<>(score(stored, column, depth, nodeScore), step.node), limit);
+            for (Node child : step.node.getChildren()) {
+                queue.add(new Step<>(child, column, depth));
+            }
+        }
+        List<Scored<Node>> result = sorted(best);
+        log.debug("Scored {} nodes against {}, best: {}", visited, path.get(path.size() - 1),
+            result.isEmpty() ? null : result.get(0).getScore());
+        return result;
+    }
+
+    /**
+     * Scores the views near the last known position of the element first. If one of them matches the stored path
+     * exactly, the rest of the tree is not scored. Only the returned candidates are turned into {@link Node}s.
+     *
+     * @param path     the last valid path of the element, from the root to the element
+     * @param tree     the current tree
+     * @param parser   the parser to build the views of the candidates with
+     * @param limit    how many candidates to return
+     * @param deadline the heal deadline
+     * @return the candidates ordered by score descending
+     */
+    public List<Scored<Node>> find(List<Node> path, CompactTree tree, DocumentParser parser, int limit,
+                                   HealDeadline deadline) {
+        if (path.isEmpty() || limit <= 0 || tree.size() == 0) {
+            return new ArrayList<>();
+        }
+        NodeFeatures[] stored = encode(path);
+        Object target = path.get(path.size() - 1);
+        List<Scored<Integer>> result = null;
+        int[] nearby = tree.positions().near(stored[stored.length - 1], SHORTLIST_RADIUS);
+        if (nearby.length > 0) {
+            List<Scored<Integer>> shortlisted = scoreShortlist(stored, tree, nearby, limit, deadline);
+            if (!shortlisted.isEmpty() && (shortlisted.get(0).getScore() >= EXACT_MATCH_SCORE || deadline.isExpired())) {
+                log.debug("Scored {} nodes near {}, best: {}", nearby.length, target, shortlisted.get(0).getScore());
+                result = shortlisted;
+            }
+        }
+        if (result == null) {
+            result = scoreTree(stored, tree, limit, deadline);
+            log.debug("Scored the tree against {}, best: {}", target, result.isEmpty() ? null : result.get(0).getScore());
+        }
+        List<Scored<Node>> nodes = new ArrayList<>(result.size());
+        for (Scored<Integer> scored : result) {
+            nodes.add(new Scored<>(scored.getScore(), tree.toNode(scored.getValue(), parser)));
+        }
+        return nodes;
+    }
+
+    private List<Scored<Integer>> scoreTree(NodeFeatures[] stored, CompactTree tree, int limit, HealDeadline deadline) {
+        PriorityQueue<Scored<Integer>> best = new PriorityQueue<>(limit + 1, byScore());
+        Deque<Step<Integer>> queue = new ArrayDeque<>();
+        queue.add(new Step<>(0, new double[stored.length + 1], 0));
+        int visited = 0;
+        while (!queue.isEmpty()) {
+            if (++visited % DEADLINE_CHECK_INTERVAL == 0 && deadline.isExpired()) {
+                log.warn("Heal deadline reached after scoring {} nodes, using the best candidates so far", visited);
+                break;
+            }
+            Step<Integer> step = queue.poll();
+            double[] column = new double[stored.length + 1];
+            double nodeScore = advance(stored, step.column, tree.features(step.node), column);
+            int depth = step.depth + 1;
+            offer(best, new Scored<>(score(stored, column, depth, nodeScore), step.node), limit);
+            for (int child = tree.firstChild(step.node); child != CompactTree.NONE; child = tree.nextSibling(child)) {
+                queue.add(new Step<>(child, column, depth));
+            }
+        }
+        return sorted(best);
+    }
+
+    /**
+     * Scores single nodes, each against the path from the root to it
+     */
+    private List<Scored<Integer>> scoreShortlist(NodeFeatures[] stored, CompactTree tree, int[] nodes, int limit,
+                                                 HealDeadline deadline) {
+        PriorityQueue<Scored<Integer>> best = new PriorityQueue<>(limit + 1, byScore());
+        for (int i = 0; i < nodes.length; i++) {
+            if (deadline.isExpired()) {
+                log.warn("Heal deadline reached after scoring {} nodes, using the best candidates so far", i);
+                break;
+            }
+            int node = nodes[i];
+            int depth = 0;
+            for (int current = node; current != CompactTree.NONE; current = tree.parent(current)) {
+                depth++;
+            }
+            int[] ancestors = new int[depth];
+            int position = depth;
+            for (int current = node; current != CompactTree.NONE; current = tree.parent(current)) {
+                ancestors[--position] = current;
+            }
+            double[] column = new double[stored.length + 1];
+            double nodeScore = 0;
+            for (int ancestor : ancestors) {
+                double[] next = new double[stored.length + 1];
+                nodeScore = advance(stored, column, tree.features(ancestor), next);
+                column = next;
+            }
+            offer(best, new Scored<>(score(stored, column, depth, nodeScore), node), limit);
+        }
+        return sorted(best);
+    }
+
+    private static NodeFeatures[] encode(List<Node> path) {
+        NodeFeatures[] stored = new NodeFeatures[path.size()];
+        int index = 0;
+        for (Node node : path) {
+            stored[index++] = NodeFeatures.of(node);
+        }
+        return stored;
+    }
+
+    /**
+     * Fills the LCS column of a node from the one of its parent
+     *
+     * @return the similarity of the node to the element itself
+     */
+    private double advance(NodeFeatures[] stored, double[] parent, NodeFeatures candidate, double[] column) {
+        double nodeScore = 0;
+        for (int i = 1; i <= stored.length; i++) {
+            double weight = similarity.similarity(stored[i - 1], candidate);
+            double matched = weight >= MATCH_THRESHOLD ? parent[i - 1] + weight : 0;
+            column[i] = Math.max(matched, Math.max(parent[i], column[i - 1]));
+            if (i == stored.length) {
+                nodeScore = weight;
+            }
+        }
+        return nodeScore;
+    }
+
+    private static double score(NodeFeatures[] stored, double[] column, int depth, double nodeScore) {
+        double pathScore = 2 * column[stored.length] / (stored.length + depth);
+        return (pathScore + nodeScore) / 2;
+    }
+
+    private static <T> Comparator<Scored<T>> byScore() {
+        return Comparator.comparingDouble(Scored::getScore);
+    }
+
+    private static <T> void offer(PriorityQueue<Scored<T>> best, Scored<T> scored, int limit) {
+        best.add(scored);
+        if (best.size() > limit) {
+            best.poll();
+        }
+    }
+
+    private static <T> List<Scored<T>> sorted(PriorityQueue<Scored<T>> best) {
+        List<Scored<T>> result = new ArrayList<>(best);
+        result.sort(PathScorer.<T>byScore().reversed());
+        return result;
+    }
+
+    private static class Step<T> {
+        private final T node;
+        private final double[] column;
+        private final int depth;
+
+        private Step(T node, double[] column, int depth) {
+            this.node = node;
+            this.column = column;
+            this.depth = depth;
+        }
+    }
+}
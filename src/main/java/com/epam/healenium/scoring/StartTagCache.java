@@ -0,0 +1,209 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the start tags of the last page sources of a session, already decoded and encoded into features, so that
+ * the views a page source shares with the previous one are not decoded, interned and encoded again.
+ * A start tag not seen by the last two scans is forgotten. Scans using the cache are serialised on it.
+ * <p>The last scan is kept too, with the span of every element in its source. An element of the next page source
+ * that lies in the text both sources start or end with is copied from its tree in whole, so a scan of a screen where
+ * only a counter or a toast changed reads only the elements around the change.</p>
+ */
+public class StartTagCache {
+
+    private Map<Long, Entry> current = new HashMap<>();
+    private Map<Long, Entry> previous = new HashMap<>();
+    private Scan last;
+    private int copiedNodes;
+
+    /**
+     * @return the entry of the start tag that spans the given region of the source, null if it isn't known
+     */
+    Entry get(long hash, String source, int start, int end) {
+        Entry entry = current.get(hash);
+        if (entry == null) {
+            entry = previous.get(hash);
+            if (entry != null) {
+                current.put(hash, entry);
+            }
+        }
+        return entry != null && entry.raw.length() == end - start && source.regionMatches(start, entry.raw, 0, end - start)
+            ? entry
+            : null;
+    }
+
+    void put(long hash, Entry entry) {
+        current.put(hash, entry);
+    }
+
+    /**
+     * Ends a scan, the start tags it didn't use are kept for one more scan
+     *
+     * @param scan   the spans of the elements of the scanned source
+     * @param copied how many nodes the scan copied from the one before
+     */
+    void rotate(Scan scan, int copied) {
+        previous = current;
+        current = new HashMap<>();
+        last = scan;
+        copiedNodes = copied;
+    }
+
+    /**
+     * @return the last scan, null before the first one
+     */
+    Scan last() {
+        return last;
+    }
+
+    /**
+     * @return how many nodes the last scan copied from the one before
+     */
+    int copiedNodes() {
+        return copiedNodes;
+    }
+
+    /**
+     * A scanned page source with the span of each of its elements, from its start tag to the end of its end tag
+     */
+    static final class Scan {
+        /**
+         * The end of an element that was closed by the end tag of another one, or not at all, so its span is unknown
+         */
+        static final int UNKNOWN = -1;
+
+        final String source;
+        CompactTree tree;
+        private int[] starts = new int[256];
+        private int[] ends = new int[256];
+        private int[] lasts = new int[256];
+        private boolean[] irregular = new boolean[256];
+
+        Scan(String source) {
+            this.source = source;
+        }
+
+        void opened(int node, int start) {
+            if (node == starts.length) {
+                starts = Arrays.copyOf(starts, node * 2);
+                ends = Arrays.copyOf(ends, node * 2);
+                lasts = Arrays.copyOf(lasts, node * 2);
+                irregular = Arrays.copyOf(irregular, node * 2);
+            }
+            starts[node] = start;
+            ends[node] = UNKNOWN;
+            lasts[node] = node;
+        }
+
+        /**
+         * @param end  the end of the end tag of the element, {@link #UNKNOWN} if it was closed by another one
+         * @param last the last node of the subtree of the element
+         */
+        void closed(int node, int end, int last) {
+            ends[node] = irregular[node] ? UNKNOWN : end;
+            lasts[node] = last;
+        }
+
+        /**
+         * Marks the element as read with a stray end tag inside, it may read differently in another source
+         */
+        void markIrregular(int node) {
+            irregular[node] = true;
+        }
+
+        /**
+         * Records the spans of a subtree copied from the previous scan
+         *
+         * @param from  the previous scan
+         * @param root  the root of the subtree in the previous scan
+         * @param copy  the copy of the root in this scan
+         * @param shift how far the subtree moved in the source
+         */
+        void copied(Scan from, int root, int copy, int shift) {
+            for (int node = root; node <= from.lasts[root]; node++) {
+                int target = copy + node - root;
+                opened(target, from.starts[node] + shift);
+                closed(target, from.ends[node] == UNKNOWN ? UNKNOWN : from.ends[node] + shift, copy + from.lasts[node] - root);
+            }
+        }
+
+        /**
+         * @param position the position of a start tag in the next source
+         * @param prefix   the length of the text both sources start with
+         * @param suffix   the length of the text both sources end with, not overlapping the prefix
+         * @param shift    how far the suffix moved in the next source
+         * @return the element of this scan that spans the same text as the one starting at the position,
+         * {@link CompactTree#NONE} if it may differ
+         */
+        int unchanged(int position, int prefix, int suffix, int shift) {
+            int length = source.length() + shift;
+            int start;
+            if (position < prefix) {
+                start = position;
+            } else if (position >= length - suffix) {
+                start = position - shift;
+            } else {
+                return CompactTree.NONE;
+            }
+            int node = Arrays.binarySearch(starts, start);
+            if (node < 0 || ends[node] == UNKNOWN || position < prefix && ends[node] > prefix) {
+                return CompactTree.NONE;
+            }
+            return node;
+        }
+
+        int start(int node) {
+            return starts[node];
+        }
+
+        int end(int node) {
+            return ends[node];
+        }
+
+        int last(int node) {
+            return lasts[node];
+        }
+
+        /**
+         * Trims the spans to the nodes of the finished tree
+         */
+        void finish(CompactTree scanned) {
+            tree = scanned;
+            starts = Arrays.copyOf(starts, scanned.size());
+            ends = Arrays.copyOf(ends, scanned.size());
+            lasts = Arrays.copyOf(lasts, scanned.size());
+            irregular = null;
+        }
+    }
+
+    static final class Entry {
+        final String raw;
+        final String tag;
+        final String[] names;
+        final String[] values;
+        final NodeFeatures features;
+
+        Entry(String raw, String tag, String[] names, String[] values, NodeFeatures features) {
+            this.raw = raw;
+            this.tag = tag;
+            this.names = names;
+            this.values = values;
+            this.features = features;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns small integer ids to the strings of a limited vocabulary, such as view classes and resource ids,
+ * so that they are compared as integers. Id 0 stands for a missing or empty value.
+ * <p>The table holds a bounded number of strings. Once it is full, the strings it doesn't hold get a 64-bit hash
+ * instead of an id, negative so that it never equals an id.</p>
+ */
+public final class SymbolTable {
+
+    public static final long EMPTY = 0;
+
+    /**
+     * Enough for the view classes and resource ids of a large app
+     */
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final SymbolTable GLOBAL = new SymbolTable();
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Map<String, Long> ids = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final int capacity;
+
+    public SymbolTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    SymbolTable(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public static SymbolTable global() {
+        return GLOBAL;
+    }
+
+    public long intern(String value) {
+        if (value == null || value.isEmpty()) {
+            return EMPTY;
+        }
+        Long id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (ids.size() >= capacity) {
+            return hash(value) | Long.MIN_VALUE;
+        }
+        return ids.computeIfAbsent(value, it -> sequence.incrementAndGet());
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return the 64-bit FNV-1a hash of the value, never {@link #EMPTY} for a non-empty value
+     */
+    static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash == EMPTY ? 1 : hash;
+    }
+}
@@ -0,0 +1,530 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.sync;
+
+import com.epam.healenium.client.BackendClient;
+import com.epam.healenium.converter.NodeDeserializer;
+import com.epam.healenium.converter.NodeSerializer;
+import com.epam.healenium.data.FileSystemPathStorage;
+import com.epam.healenium.data.LocatorIndex;
+import com.epam.healenium.data.PathMetadata;
+import com.epam.healenium.treecomparing.Node;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Moves the stored paths between the file system storage under {@code basePath} and the backend.
+ * <p>Records are streamed in batches: a batch is handed to the workers, and the next one is read once it is done, so
+ * memory is bounded by the batch size whatever the size of the store. After each batch the checkpoint file gets the
+ * number of records read and the positions of the ones that failed among them. A run of the same command, direction
+ * and file with the same checkpoint skips the records that were done or skipped and retries the failed ones.
+ * An export to a file resumed this way appends to what the interrupted run had written.</p>
+ * <p>Only paths stored with their {@link PathMetadata} can be matched with the backend; the others are skipped and
+ * counted. The backend has no listing endpoint, so paths are pulled for the locators the file store or an NDJSON
+ * stream already knows.</p>
+ *
+ * <pre>
+ * java com.epam.healenium.sync.PathSync push|pull|export|import [--workers 4] [--batch 100]
+ *      [--checkpoint sync.checkpoint] [--file paths.ndjson] [--to files|backend]
+ * </pre>
+ * <ul>
+ *     <li>push - file store to backend</li>
+ *     <li>pull - backend to file store, for the paths of the file store</li>
+ *     <li>export - file store to NDJSON, one record per line</li>
+ *     <li>import - NDJSON to the file store or, with {@code --to backend}, to the backend</li>
+ * </ul>
+ * The storage and the backend are configured as for the driver wrapper, e.g. with {@code -DserverHost=...}.
+ */
+@Slf4j
+public class PathSync {
+
+    private final FileSystemPathStorage storage;
+    private final BackendClient client;
+    private final ObjectMapper ndjsonMapper;
+    private final int workers;
+    private final int batchSize;
+    private final Path checkpoint;
+
+    /**
+     * @param checkpoint the file the progress is kept in, null to always start from the beginning
+     */
+    public PathSync(FileSystemPathStorage storage, BackendClient client, int workers, int batchSize, Path checkpoint) {
+        this.storage = storage;
+        this.client = client;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.checkpoint = checkpoint;
+        SimpleModule module = new SimpleModule("node");
+        module.addSerializer(Node.class, new NodeSerializer());
+        module.addDeserializer(Node.class, new NodeDeserializer());
+        this.ndjsonMapper = new ObjectMapper().registerModule(module);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: PathSync push|pull|export|import [--workers n] [--batch n] "
+                    + "[--checkpoint file] [--file ndjson] [--to files|backend]");
+            System.exit(2);
+        }
+        String command = args[0];
+        int workers = Runtime.getRuntime().availableProcessors();
+        int batch = 100;
+        Path checkpoint = null;
+        Path file = null;
+        boolean toBackend = false;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--workers":
+                    workers = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--checkpoint":
+                    checkpoint = Paths.get(args[i + 1]);
+                    break;
+                case "--file":
+                    file = Paths.get(args[i + 1]);
+                    break;
+                case "--to":
+                    toBackend = "backend".equals(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Config config = ConfigFactory.systemProperties()
+                .withFallback(ConfigFactory.load("healenium.properties").withFallback(ConfigFactory.load()));
+        PathSync sync = new PathSync(new FileSystemPathStorage(config),
+                BackendClient.create(config, LocatorIndex.disabled()), workers, batch, checkpoint);
+        Result result;
+        switch (command) {
+            case "push":
+                result = sync.push();
+                break;
+            case "pull":
+                result = sync.pull();
+                break;
+            case "export":
+                if (file == null) {
+                    try (Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+                        result = sync.export(out);
+                    }
+                } else {
+                    result = sync.export(file);
+                }
+                break;
+            case "import":
+                if (file == null) {
+                    try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+                        result = sync.importRecords(in, toBackend);
+                    }
+                } else {
+                    result = sync.importRecords(file, toBackend);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+        }
+        log.info("{}: {}", command, result);
+        System.exit(result.getFailed() > 0 ? 1 : 0);
+    }
+
+    /**
+     * Sends the paths of the file store to the backend
+     */
+    public Result push() throws IOException {
+        try (Stream<String> keys = storage.getStoredKeys()) {
+            return run(new Scope("push", null), keys.iterator(), key -> {
+                Optional<SyncRecord> record = read(key);
+                if (!record.isPresent()) {
+                    return Outcome.SKIPPED;
+                }
+                return outcome(client.saveSelector(record.get().toRequest()));
+            }, null);
+        }
+    }
+
+    /**
+     * Replaces the paths of the file store with the ones the backend has for the same locators
+     */
+    public Result pull() throws IOException {
+        try (Stream<String> keys = storage.getStoredKeys()) {
+            return run(new Scope("pull", null), keys.iterator(), key -> {
+                Optional<PathMetadata> metadata = storage.getMetadata(key);
+                if (!metadata.isPresent()) {
+                    return Outcome.SKIPPED;
+                }
+                SyncRecord record = new SyncRecord().setKey(key).setMetadata(metadata.get());
+                Optional<List<Node>> nodes = client.fetchLastValidPath(record.toRequest());
+                if (!nodes.isPresent() || nodes.get().isEmpty()) {
+                    return Outcome.SKIPPED;
+                }
+                storage.writePath(key, metadata.get(), nodes.get());
+                return Outcome.DONE;
+            }, null);
+        }
+    }
+
+    /**
+     * Writes the paths of the file store as NDJSON
+     */
+    public Result export(Writer out) throws IOException {
+        return export(out, null);
+    }
+
+    /**
+     * Writes the paths of the file store as NDJSON to the file. A resumed export appends to the records the
+     * interrupted run had written, dropping what it wrote after its last checkpoint.
+     */
+    public Result export(Path file) throws IOException {
+        Scope scope = new Scope("export", file);
+        Checkpoint state = resume(scope);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long length = state.read > 0 ? Math.min(state.output, channel.size()) : 0;
+            channel.truncate(length);
+            channel.position(length);
+            try (Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1))) {
+                return export(out, scope);
+            }
+        }
+    }
+
+    private Result export(Writer out, Scope scope) throws IOException {
+        try (Stream<String> keys = storage.getStoredKeys()) {
+            return run(scope == null ? new Scope("export", null) : scope, keys.iterator(), key -> {
+                Optional<SyncRecord> record = read(key);
+                if (!record.isPresent()) {
+                    return Outcome.SKIPPED;
+                }
+                String line = ndjsonMapper.writeValueAsString(record.get());
+                synchronized (out) {
+                    out.write(line);
+                    out.write('\n');
+                }
+                return Outcome.DONE;
+            }, out);
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads NDJSON records, as written by {@link #export(Writer)}
+     *
+     * @param toBackend true to send the paths to the backend, false to store them in the file store
+     */
+    public Result importRecords(BufferedReader in, boolean toBackend) throws IOException {
+        return importRecords(in, toBackend, null);
+    }
+
+    /**
+     * Reads NDJSON records from the file, as written by {@link #export(Path)}
+     *
+     * @param toBackend true to send the paths to the backend, false to store them in the file store
+     */
+    public Result importRecords(Path file, boolean toBackend) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importRecords(in, toBackend, file);
+        }
+    }
+
+    private Result importRecords(BufferedReader in, boolean toBackend, Path file) throws IOException {
+        return run(new Scope(toBackend ? "import to backend" : "import to files", file), lines(in), line -> {
+            SyncRecord record = ndjsonMapper.readValue(line, SyncRecord.class);
+            if (record.getMetadata() == null || record.getKey() == null) {
+                return Outcome.SKIPPED;
+            }
+            if (toBackend) {
+                return outcome(client.saveSelector(record.toRequest()));
+            }
+            storage.writePath(record.getKey(), record.getMetadata(), record.getNodePath());
+            return Outcome.DONE;
+        }, null);
+    }
+
+    private Optional<SyncRecord> read(String key) throws IOException {
+        Optional<PathMetadata> metadata = storage.getMetadata(key);
+        if (!metadata.isPresent()) {
+            return Optional.empty();
+        }
+        List<Node> nodes = storage.readPath(key);
+        return nodes.isEmpty()
+                ? Optional.empty()
+                : Optional.of(new SyncRecord().setKey(key).setMetadata(metadata.get()).setNodePath(nodes));
+    }
+
+    private static Outcome outcome(boolean success) {
+        return success ? Outcome.DONE : Outcome.FAILED;
+    }
+
+    /**
+     * @param output flushed before every checkpoint, so that the checkpoint never counts records still in a buffer,
+     *               null if the task has no output
+     */
+    private <T> Result run(Scope scope, Iterator<T> items, Task<T> task, Writer output) throws IOException {
+        Result result = new Result();
+        Checkpoint state = resume(scope);
+        long resumed = state.read;
+        Set<Long> retried = state.failed;
+        if (resumed > 0) {
+            log.info("Resuming {} after {} records, retrying {} failed ones", scope.command, resumed, retried.size());
+        }
+        Set<Long> failed = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "healenium-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long position = 0;
+        try {
+            List<Callable<Void>> batch = new ArrayList<>(batchSize);
+            while (items.hasNext()) {
+                batch.clear();
+                while (batch.size() < batchSize && items.hasNext()) {
+                    T item = items.next();
+                    long index = position++;
+                    if (index < resumed && !retried.contains(index)) {
+                        continue;
+                    }
+                    batch.add(() -> {
+                        Outcome outcome;
+                        try {
+                            outcome = task.run(item);
+                        } catch (Exception e) {
+                            log.warn("Failed to {} {}", scope.command, item, e);
+                            outcome = Outcome.FAILED;
+                        }
+                        result.count(outcome);
+                        if (outcome == Outcome.FAILED) {
+                            failed.add(index);
+                        }
+                        return null;
+                    });
+                }
+                for (Future<Void> future : executor.invokeAll(batch)) {
+                    future.get();
+                }
+                if (output != null) {
+                    output.flush();
+                }
+                Set<Long> pending = new TreeSet<>(failed);
+                // the failed records of the interrupted run not reached yet
+                for (Long index : retried) {
+                    if (index >= position) {
+                        pending.add(index);
+                    }
+                }
+                save(scope, new Checkpoint(Math.max(position, resumed), pending, outputSize(scope)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted after " + position + " records", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private static long outputSize(Scope scope) throws IOException {
+        return scope.command.equals("export") && scope.file != null && Files.exists(scope.file) ? Files.size(scope.file) : 0;
+    }
+
+    /**
+     * @return the progress of an interrupted run of the same scope, or none
+     */
+    private Checkpoint resume(Scope scope) throws IOException {
+        if (checkpoint == null || !Files.exists(checkpoint)) {
+            return new Checkpoint(0, new TreeSet<>(), 0);
+        }
+        Properties state = new Properties();
+        try (Reader in = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+            state.load(in);
+        }
+        if (!scope.command.equals(state.getProperty("command")) || !scope.fileName().equals(state.getProperty("file", ""))) {
+            log.warn("Checkpoint {} is of another run ({} {}), starting from the first record", checkpoint,
+                    state.getProperty("command"), state.getProperty("file", ""));
+            return new Checkpoint(0, new TreeSet<>(), 0);
+        }
+        Set<Long> failed = new TreeSet<>();
+        for (String index : state.getProperty("failed", "").split(",")) {
+            if (!index.isEmpty()) {
+                failed.add(Long.parseLong(index));
+            }
+        }
+        return new Checkpoint(Long.parseLong(state.getProperty("read", "0")), failed,
+                Long.parseLong(state.getProperty("output", "0")));
+    }
+
+    private void save(Scope scope, Checkpoint state) throws IOException {
+        if (checkpoint != null) {
+            String content = "command=" + scope.command + "\n"
+                    + "file=" + scope.fileName().replace("\\", "\\\\") + "\n"
+                    + "read=" + state.read + "\n"
+                    + "failed=" + state.failed.stream().map(String::valueOf).collect(Collectors.joining(",")) + "\n"
+                    + "output=" + state.output + "\n";
+            Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Iterator<String> lines(BufferedReader in) {
+        return new Iterator<String>() {
+            private String next = advance();
+
+            private String advance() {
+                try {
+                    String line;
+                    do {
+                        line = in.readLine();
+                    } while (line != null && line.trim().isEmpty());
+                    return line;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                String current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface Task<T> {
+        Outcome run(T item) throws IOException;
+    }
+
+    private enum Outcome {
+        DONE, SKIPPED, FAILED
+    }
+
+    /**
+     * What a checkpoint belongs to: the command with its direction and the NDJSON file, if any
+     */
+    private static class Scope {
+        private final String command;
+        private final Path file;
+
+        private Scope(String command, Path file) {
+            this.command = command;
+            this.file = file;
+        }
+
+        private String fileName() {
+            return file == null ? "" : file.toAbsolutePath().normalize().toString();
+        }
+    }
+
+    private static class Checkpoint {
+        /**
+         * Records read, the first ones of the input
+         */
+        private final long read;
+        /**
+         * Positions of the records read that failed, retried by the next run
+         */
+        private final Set<Long> failed;
+        /**
+         * Size of the export file, what follows was written after the checkpoint
+         */
+        private final long output;
+
+        private Checkpoint(long read, Set<Long> failed, long output) {
+            this.read = read;
+            this.failed = failed;
+            this.output = output;
+        }
+    }
+
+    /**
+     * The counts of a sync run
+     */
+    public static class Result {
+        private final AtomicLong done = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        public long getDone() {
+            return done.get();
+        }
+
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        private void count(Outcome outcome) {
+            (outcome == Outcome.DONE ? done : outcome == Outcome.SKIPPED ? skipped : failed).incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return "done " + done + ", skipped " + skipped + ", failed " + failed;
+        }
+    }
+}
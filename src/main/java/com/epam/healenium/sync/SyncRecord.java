@@ -0,0 +1,48 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.sync;
+
+import com.epam.healenium.data.PathMetadata;
+import com.epam.healenium.model.RequestDto;
+import com.epam.healenium.treecomparing.Node;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One stored path, as a line of the NDJSON stream of {@link PathSync}
+ */
+@Accessors(chain = true)
+@Data
+public class SyncRecord {
+
+    // the key of the path in the file system storage
+    private String key;
+    private PathMetadata metadata;
+    private List<Node> nodePath = Collections.emptyList();
+
+    /**
+     * @return the backend request for the path, the locator split the way the engine splits it when it saves a path
+     */
+    RequestDto toRequest() {
+        String[] locatorParts = metadata.getLocator().split(":");
+        return new RequestDto()
+                .setType(locatorParts[0].trim())
+                .setLocator(locatorParts.length > 1 ? locatorParts[1].trim() : "")
+                .setClassName(metadata.getClassName())
+                .setMethodName(metadata.getMethodName())
+                .setNodePath(nodePath);
+    }
+}
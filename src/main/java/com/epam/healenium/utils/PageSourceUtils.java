@@ -0,0 +1,103 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.utils;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.Optional;
+
+@UtilityClass
+public class PageSourceUtils {
+
+    /**
+     * Cuts the markup of a single element out of the page source, without parsing the rest of the page.
+     *
+     * @param source the page source
+     * @param tag    the element tag, the view class on android
+     * @param bounds the element bounds as reported by the device, e.g. [0,200][1080,320]
+     * @return the element markup with all its descendants, or empty if the element is not in the source
+     */
+    public Optional<String> findSubtree(String source, String tag, String bounds) {
+        String marker = "bounds=\"" + bounds + "\"";
+        int from = 0;
+        int position;
+        while ((position = source.indexOf(marker, from)) >= 0) {
+            from = position + marker.length();
+            int start = source.lastIndexOf('<', position);
+            if (start < 0 || !source.startsWith(tag, start + 1) || !isNameEnd(source.charAt(start + 1 + tag.length()))) {
+                continue;
+            }
+            int end = findElementEnd(source, start);
+            if (end > 0) {
+                return Optional.of(source.substring(start, end));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the index right after the closing tag of the element starting at the given index, or -1 if unbalanced
+     */
+    private int findElementEnd(String source, int start) {
+        int tagEnd = findTagEnd(source, start);
+        if (tagEnd < 0) {
+            return -1;
+        }
+        if (source.charAt(tagEnd - 1) == '/') {
+            return tagEnd + 1;
+        }
+        int depth = 1;
+        int position = tagEnd + 1;
+        while ((position = source.indexOf('<', position)) >= 0) {
+            tagEnd = findTagEnd(source, position);
+            if (tagEnd < 0) {
+                return -1;
+            }
+            char next = source.charAt(position + 1);
+            if (next == '/') {
+                depth--;
+            } else if (next != '?' && next != '!' && source.charAt(tagEnd - 1) != '/') {
+                depth++;
+            }
+            if (depth == 0) {
+                return tagEnd + 1;
+            }
+            position = tagEnd + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the '>' closing the tag that starts at the given index, skipping quoted values
+     */
+    private int findTagEnd(String source, int start) {
+        char quote = 0;
+        for (int i = start + 1; i < source.length(); i++) {
+            char current = source.charAt(i);
+            if (quote != 0) {
+                if (current == quote) {
+                    quote = 0;
+                }
+            } else if (current == '"' || current == '\'') {
+                quote = current;
+            } else if (current == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isNameEnd(char value) {
+        return Character.isWhitespace(value) || value == '>' || value == '/';
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import com.epam.healenium.config.FakeAppiumExecutor;
+import com.epam.healenium.config.FakeHierarchy;
+import com.epam.healenium.data.FileSystemPathStorage;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.AndroidElement;
+import javassist.util.proxy.Proxy;
+import org.junit.Assert;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.DriverCommand;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestDriverWrapper {
+
+    @TempDir
+    Path storagePath;
+
+    @Test
+    public void testWrapReusesSession() throws Exception {
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(FakeHierarchy.list("com.example", 5), 0);
+        AndroidDriver<AndroidElement> driver = executor.driver();
+
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(driver, config());
+
+        Assert.assertNotSame(driver, wrapped);
+        Assert.assertTrue(wrapped instanceof Proxy);
+        Assert.assertEquals(driver.getSessionId(), wrapped.getSessionId());
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+        Assert.assertSame(wrapped, wrapped.switchTo().window("NATIVE_APP"));
+        Assert.assertEquals(1, executor.getCommandCount(DriverCommand.NEW_SESSION));
+    }
+
+    @Test
+    public void testWrapsShareProxyClassAndComponents() throws Exception {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 5);
+        AndroidDriver<AndroidElement> first = DriverWrapper.wrap(FakeAppiumExecutor.driver(hierarchy, 0), config());
+        AndroidDriver<AndroidElement> second = DriverWrapper.wrap(FakeAppiumExecutor.driver(hierarchy, 0), config());
+
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(first.getClass(), second.getClass());
+        Assert.assertSame(ComponentRegistry.get(config()), ComponentRegistry.get(config()));
+        Assert.assertNotSame(ComponentRegistry.get(config()), ComponentRegistry.get(config().withValue("heal-enabled",
+                ConfigValueFactory.fromAnyRef(false))));
+    }
+
+    @Test
+    public void testEveryStrategyGoesThroughHealing() throws Exception {
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(FakeHierarchy.list("com.example", 5), 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(), config());
+
+        long attributes = executor.getCommandCount(DriverCommand.GET_ELEMENT_ATTRIBUTE);
+        Assert.assertEquals(5, wrapped.findElementsById("row_title").size());
+        Assert.assertTrue(executor.getCommandCount(DriverCommand.GET_ELEMENT_ATTRIBUTE) > attributes);
+
+        attributes = executor.getCommandCount(DriverCommand.GET_ELEMENT_ATTRIBUTE);
+        Assert.assertNotNull(wrapped.findElementByAndroidUIAutomator("new UiSelector().resourceId(\"submit\")"));
+        Assert.assertTrue(executor.getCommandCount(DriverCommand.GET_ELEMENT_ATTRIBUTE) > attributes);
+
+        attributes = executor.getCommandCount(DriverCommand.GET_ELEMENT_ATTRIBUTE);
+        Assert.assertNotNull(wrapped.findElement("accessibility id", "Search"));
+        Assert.assertTrue(executor.getCommandCount(DriverCommand.GET_ELEMENT_ATTRIBUTE) > attributes);
+    }
+
+    @Test
+    public void testNestedLookupIsHealedWithinParent() throws Exception {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 5);
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(hierarchy, 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(), config());
+
+        List<AndroidElement> rows = wrapped.findElements(By.id("row"));
+        Assert.assertTrue(rows.get(0) instanceof Proxy);
+        WebElement title = rows.get(0).findElement(By.id("row_title"));
+        Assert.assertEquals("Item 0", title.getText());
+
+        hierarchy.setAttribute("row_title", "resource-id", "com.example:id/row_heading");
+        WebElement healed = rows.get(0).findElement(By.id("row_title"));
+
+        Assert.assertNotNull(healed);
+        Assert.assertEquals("Item 0", healed.getText());
+    }
+
+    @Test
+    public void testHealedLocatorIsReused() throws Exception {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 5);
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(hierarchy, 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(), config());
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+
+        hierarchy.setAttribute("submit", "resource-id", "com.example:id/send");
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+        long lookups = executor.getCommandCount(DriverCommand.FIND_ELEMENT);
+        long pageSources = executor.getCommandCount(DriverCommand.GET_PAGE_SOURCE);
+
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+        Assert.assertEquals(lookups + 1, executor.getCommandCount(DriverCommand.FIND_ELEMENT));
+        Assert.assertEquals(pageSources, executor.getCommandCount(DriverCommand.GET_PAGE_SOURCE));
+    }
+
+    @Test
+    public void testHealingReportIsWrittenWhenSessionQuits() throws Exception {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 5);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(FakeAppiumExecutor.driver(hierarchy, 0), config());
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+        hierarchy.setAttribute("submit", "resource-id", "com.example:id/send");
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+        Path report = storagePath.resolve("reports").resolve("data.json");
+        Assert.assertFalse(Files.exists(report));
+
+        wrapped.quit();
+
+        Assert.assertTrue(new String(Files.readAllBytes(report), StandardCharsets.UTF_8).contains("By.id: submit"));
+    }
+
+    @Test
+    public void testHealValidatesOnlyTheBestCandidate() throws Exception {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 5);
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(hierarchy, 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(), config());
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+
+        hierarchy.setAttribute("submit", "resource-id", "com.example:id/send");
+        long validations = executor.getCommandCount(DriverCommand.FIND_ELEMENTS);
+
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+        Assert.assertEquals(validations + 1, executor.getCommandCount(DriverCommand.FIND_ELEMENTS));
+    }
+
+    @Test
+    public void testFailedLookupFailsFastOnSameScreen() throws Exception {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 5);
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(hierarchy, 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(),
+                config().withValue("screen-snapshot-ttl", ConfigValueFactory.fromAnyRef("0s")));
+
+        Assertions.assertThrows(NoSuchElementException.class, () -> wrapped.findElement(By.id("missing")));
+        long lookups = executor.getCommandCount(DriverCommand.FIND_ELEMENT);
+
+        Assertions.assertThrows(NoSuchElementException.class, () -> wrapped.findElement(By.id("missing")));
+        Assert.assertEquals(lookups, executor.getCommandCount(DriverCommand.FIND_ELEMENT));
+
+        hierarchy.setAttribute("submit", "resource-id", "com.example:id/missing");
+        Assert.assertNotNull(wrapped.findElement(By.id("missing")));
+    }
+
+    @Test
+    public void testLocatorsArePartitionedByActivity() throws Exception {
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(FakeHierarchy.list("com.example", 5), 0);
+        executor.setActivity(".LoginActivity");
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(), config());
+
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+        Assert.assertNotNull(wrapped.findElement(By.id("row_title")));
+
+        FileSystemPathStorage storage = new FileSystemPathStorage(config().withFallback(ConfigFactory.load()));
+        Assert.assertTrue(storage.isNodePathPersisted(By.id("submit"), ".LoginActivity"));
+        Assert.assertFalse(storage.isNodePathPersisted(By.id("submit"), ProxyMethodHandler.PAGE_PREFIX));
+        Assert.assertEquals("The activity is asked once per screen", 1, executor.getCommandCount("currentActivity"));
+    }
+
+    @Test
+    public void testMissingActivityFallsBackOnlyForThatScreen() throws Exception {
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(FakeHierarchy.list("com.example", 5), 0);
+        executor.setActivity(null);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(),
+                config().withValue("screen-snapshot-ttl", ConfigValueFactory.fromAnyRef("0s")));
+
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+        executor.setActivity(".LoginActivity");
+        Assert.assertNotNull(wrapped.findElement(By.id("row_title")));
+
+        FileSystemPathStorage storage = new FileSystemPathStorage(config().withFallback(ConfigFactory.load()));
+        Assert.assertFalse(storage.isNodePathPersisted(By.id("submit"), ".LoginActivity"));
+        Assert.assertTrue(storage.isNodePathPersisted(By.id("row_title"), ".LoginActivity"));
+    }
+
+    @Test
+    public void testLocatorIsHealedInFingerprintContext() throws Exception {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 5);
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(hierarchy, 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(),
+                config().withValue("screen-context", ConfigValueFactory.fromAnyRef("fingerprint"))
+                        .withValue("screen-snapshot-ttl", ConfigValueFactory.fromAnyRef("0s")));
+        Assert.assertNotNull(wrapped.findElement(By.id("submit")));
+
+        // the resource id is part of the fingerprint, the screen is in another context now
+        hierarchy.setAttribute("submit", "resource-id", "com.example:id/send");
+        WebElement healed = wrapped.findElement(By.id("submit"));
+
+        Assert.assertEquals("com.example:id/send", healed.getAttribute("resource-id"));
+    }
+
+    private Config config() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("backend-integration", false);
+        values.put("basePath", storagePath.resolve("selenium").toString());
+        values.put("reportPath", storagePath.resolve("reports").toString());
+        values.put("spoolPath", storagePath.resolve("spool").toString());
+        return ConfigFactory.parseMap(values);
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.openqa.selenium.NoSuchElementException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+public class TestFailedHealCache {
+
+    @Test
+    public void testScreenIsFingerprintedOnlyForRecentFailures() throws Exception {
+        FailedHealCache cache = new FailedHealCache(Duration.ofMillis(200));
+        AtomicInteger fingerprinted = new AtomicInteger();
+        LongSupplier fingerprint = () -> {
+            fingerprinted.incrementAndGet();
+            return 1;
+        };
+        cache.put("By.id: submit", "LoginPage.login", 1, new NoSuchElementException("submit"));
+
+        Assert.assertFalse(cache.get("By.id: submit", "LoginPage.logout", fingerprint).isPresent());
+        Assert.assertEquals(0, fingerprinted.get());
+        Assert.assertTrue(cache.get("By.id: submit", "LoginPage.login", fingerprint).isPresent());
+        Assert.assertEquals(1, fingerprinted.get());
+
+        Thread.sleep(300);
+
+        Assert.assertFalse(cache.get("By.id: submit", "LoginPage.login", fingerprint).isPresent());
+        Assert.assertEquals(1, fingerprinted.get());
+    }
+
+    @Test
+    public void testExpiredLocatorsAreForgotten() throws Exception {
+        FailedHealCache cache = new FailedHealCache(Duration.ofMillis(200));
+        cache.put("By.id: submit", "LoginPage.login", 1, new NoSuchElementException("submit"));
+
+        Assert.assertTrue(cache.contains("By.id: submit"));
+        Thread.sleep(300);
+
+        Assert.assertFalse(cache.contains("By.id: submit"));
+        Assert.assertFalse(cache.contains("By.id: cancel"));
+    }
+}
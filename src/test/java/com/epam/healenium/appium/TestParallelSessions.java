@@ -0,0 +1,94 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import com.epam.healenium.config.FakeAppiumExecutor;
+import com.epam.healenium.config.FakeHierarchy;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.appium.java_client.AppiumDriver;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openqa.selenium.By;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestParallelSessions {
+
+    private static final int SESSIONS = 8;
+    private static final int OPERATIONS = 20;
+    private static final long DEVICE_LATENCY_MICROS = 500;
+
+    @TempDir
+    Path storagePath;
+
+    @Test
+    public void testParallelSessionsKeepTheirOwnState() throws Exception {
+        Config config = config();
+        List<FakeHierarchy> hierarchies = new ArrayList<>();
+        List<AppiumDriver> drivers = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            FakeHierarchy hierarchy = FakeHierarchy.list("com.example", rows(i));
+            hierarchies.add(hierarchy);
+            drivers.add(DriverWrapper.wrap(FakeAppiumExecutor.driver(hierarchy, DEVICE_LATENCY_MICROS), config));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(SESSIONS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            int session = i;
+            results.add(executor.submit(() -> {
+                AppiumDriver driver = drivers.get(session);
+                start.await();
+                Assert.assertNotNull(driver.findElement(By.id("submit")));
+                for (int j = 0; j < OPERATIONS; j++) {
+                    Assert.assertNotNull(driver.findElement(By.id("title")));
+                    Assert.assertEquals("Every session sees its own screen", rows(session),
+                            driver.findElements(By.id("row_title")).size());
+                }
+                hierarchies.get(session).setAttribute("submit", "resource-id", "com.example:id/send_" + session);
+                return driver.findElement(By.id("submit")).getAttribute("resource-id");
+            }));
+        }
+        start.countDown();
+        for (int i = 0; i < SESSIONS; i++) {
+            Assert.assertEquals("Every session heals against its own screen", "com.example:id/send_" + i,
+                    results.get(i).get());
+        }
+        executor.shutdown();
+        Assert.assertSame("Sessions with equal configs share the engine components",
+                ComponentRegistry.get(config), ComponentRegistry.get(config()));
+    }
+
+    private static int rows(int session) {
+        return 3 + session;
+    }
+
+    private Config config() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("backend-integration", false);
+        values.put("basePath", storagePath.resolve("selenium").toString());
+        values.put("reportPath", storagePath.resolve("reports").toString());
+        values.put("spoolPath", storagePath.resolve("spool").toString());
+        return ConfigFactory.parseMap(values);
+    }
+}
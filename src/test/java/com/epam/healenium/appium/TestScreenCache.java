@@ -0,0 +1,119 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.appium;
+
+import com.epam.healenium.config.FakeAppiumExecutor;
+import com.epam.healenium.config.FakeHierarchy;
+import com.epam.healenium.scoring.StartTagCache;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.AndroidElement;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openqa.selenium.By;
+import org.openqa.selenium.interactions.PointerInput;
+import org.openqa.selenium.interactions.Sequence;
+import org.openqa.selenium.remote.DriverCommand;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestScreenCache {
+
+    @TempDir
+    Path storagePath;
+
+    @Test
+    public void testLookupsOnOneScreenShareThePageSource() throws Exception {
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(FakeHierarchy.list("com.example", 10), 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(), config("1m"));
+
+        for (String id : new String[]{"title", "search", "list", "row", "row_title", "row_subtitle", "submit"}) {
+            Assert.assertNotNull(wrapped.findElement(By.id(id)));
+        }
+        Assert.assertEquals(1, executor.getCommandCount(DriverCommand.GET_PAGE_SOURCE));
+    }
+
+    @Test
+    public void testMutatingCommandStartsNewGeneration() throws Exception {
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(FakeHierarchy.list("com.example", 10), 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(), config("1m"));
+
+        wrapped.findElement(By.id("submit")).click();
+        wrapped.findElement(By.id("title"));
+        wrapped.findElement(By.id("search"));
+
+        Assert.assertEquals(2, executor.getCommandCount(DriverCommand.GET_PAGE_SOURCE));
+    }
+
+    @Test
+    public void testScrollWithActionsStartsNewGeneration() throws Exception {
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(FakeHierarchy.list("com.example", 10), 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(), config("1m"));
+        wrapped.findElement(By.id("title"));
+
+        PointerInput finger = new PointerInput(PointerInput.Kind.TOUCH, "finger");
+        Sequence scroll = new Sequence(finger, 0)
+                .addAction(finger.createPointerMove(Duration.ZERO, PointerInput.Origin.viewport(), 540, 1800))
+                .addAction(finger.createPointerDown(PointerInput.MouseButton.LEFT.asArg()))
+                .addAction(finger.createPointerMove(Duration.ofMillis(300), PointerInput.Origin.viewport(), 540, 400))
+                .addAction(finger.createPointerUp(PointerInput.MouseButton.LEFT.asArg()));
+        wrapped.perform(Collections.singletonList(scroll));
+        wrapped.findElement(By.id("search"));
+
+        Assert.assertEquals(2, executor.getCommandCount(DriverCommand.GET_PAGE_SOURCE));
+    }
+
+    @Test
+    public void testSnapshotExpires() throws Exception {
+        FakeAppiumExecutor executor = new FakeAppiumExecutor(FakeHierarchy.list("com.example", 10), 0);
+        AndroidDriver<AndroidElement> wrapped = DriverWrapper.wrap(executor.driver(), config("0s"));
+
+        wrapped.findElement(By.id("title"));
+        wrapped.findElement(By.id("search"));
+
+        Assert.assertEquals(2, executor.getCommandCount(DriverCommand.GET_PAGE_SOURCE));
+    }
+
+    @Test
+    public void testViewsWithSameClassAndBoundsAreToldApart() {
+        String source = "<hierarchy rotation=\"0\">"
+                + "<android.widget.FrameLayout class=\"android.widget.FrameLayout\" resource-id=\"\" bounds=\"[0,0][1080,2340]\">"
+                + "<android.widget.FrameLayout class=\"android.widget.FrameLayout\" resource-id=\"com.example:id/content\" bounds=\"[0,0][1080,2340]\">"
+                + "<android.widget.FrameLayout class=\"android.widget.FrameLayout\" resource-id=\"\" bounds=\"[0,0][1080,2340]\"/>"
+                + "</android.widget.FrameLayout>"
+                + "</android.widget.FrameLayout>"
+                + "</hierarchy>";
+        ScreenSnapshot snapshot = new ScreenSnapshot(source, 0, new StartTagCache());
+        Map<String, String> content = new HashMap<>();
+        content.put("resource-id", "com.example:id/content");
+
+        Assert.assertEquals(3, snapshot.findPath("android.widget.FrameLayout", "[0,0][1080,2340]", content::get).get().size());
+        Assert.assertFalse(snapshot.findPath("android.widget.FrameLayout", "[0,0][1080,2340]", name -> "").isPresent());
+    }
+
+    private Config config(String ttl) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("backend-integration", false);
+        values.put("screen-snapshot-ttl", ttl);
+        values.put("basePath", storagePath.resolve("selenium").toString());
+        values.put("reportPath", storagePath.resolve("reports").toString());
+        values.put("spoolPath", storagePath.resolve("spool").toString());
+        return ConfigFactory.parseMap(values);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import com.epam.healenium.HealDeadline;
+import com.epam.healenium.model.RequestDto;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.NodeBuilder;
+import com.epam.healenium.treecomparing.Scored;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openqa.selenium.By;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestEmbeddedBackend {
+
+    private static final StackTraceElement CALLER = new StackTraceElement("com.example.LoginPage", "login", "LoginPage.java", 42);
+
+    @TempDir
+    Path workPath;
+
+    @Test
+    public void testConfigSelectsEmbeddedBackend() {
+        Assert.assertTrue(BackendClient.create(config(), null) instanceof EmbeddedBackend);
+    }
+
+    @Test
+    public void testPathsSurviveRestart() {
+        EmbeddedBackend backend = new EmbeddedBackend(config());
+        backend.selectorRequest(By.id("submit"), CALLER, path("Submit"));
+        backend.selectorRequest(By.id("submit"), CALLER, path("Submit"));
+        backend.selectorRequest(By.id("submit"), CALLER, path("Send"));
+
+        EmbeddedBackend restarted = new EmbeddedBackend(config());
+
+        List<Node> nodes = restarted.getLastValidPathAsync(By.id("submit"), CALLER, HealDeadline.unbounded()).join().get();
+        Assert.assertEquals("Send", nodes.get(1).getOtherAttributes().get("text"));
+        Assert.assertEquals("Unchanged paths are not added to the history", 2,
+                restarted.getSelectorHistory("com.example.LoginPage", "login", By.id("submit")).size());
+        Assert.assertFalse(restarted.getLastValidPath(By.id("submit"), new StackTraceElement("com.example.MainPage",
+                "open", "MainPage.java", 7)).isPresent());
+    }
+
+    @Test
+    public void testSavedSelectorCanBeFetched() throws Exception {
+        EmbeddedBackend backend = new EmbeddedBackend(config());
+        RequestDto requestDto = new RequestDto()
+                .setType("By.id")
+                .setLocator("submit")
+                .setClassName("com.example.LoginPage")
+                .setMethodName("login")
+                .setNodePath(path("Submit"));
+
+        Assert.assertTrue(backend.saveSelector(requestDto));
+        Assert.assertEquals(2, backend.fetchLastValidPath(requestDto).get().size());
+        Assert.assertEquals(2, backend.getLastValidPath(By.id("submit"), CALLER).get().size());
+    }
+
+    @Test
+    public void testHealingResultsAreKept() throws Exception {
+        EmbeddedBackend backend = new EmbeddedBackend(config());
+        Scored<By> healed = new Scored<>(0.9, By.id("send"));
+
+        backend.healRequest(By.id("submit"), CALLER, "<hierarchy/>", Collections.singletonList(healed), healed, new byte[]{1, 2});
+
+        List<RequestDto> results = new EmbeddedBackend(config()).getHealingResults();
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals("send", results.get(0).getUsedResult().getLocator().getValue());
+        Assert.assertEquals(1, Files.list(workPath.resolve("backend").resolve("screenshots")).count());
+    }
+
+    private List<Node> path(String text) {
+        Map<String, String> root = new HashMap<>();
+        root.put("class", "android.widget.FrameLayout");
+        Map<String, String> button = new HashMap<>();
+        button.put("class", "android.widget.Button");
+        button.put("text", text);
+        return Arrays.asList(
+            new NodeBuilder().setTag("android.widget.FrameLayout").setIndex(0).addContent("").setAttributes(root).build(),
+            new NodeBuilder().setTag("android.widget.Button").setIndex(1).addContent("").setAttributes(button).build());
+    }
+
+    private Config config() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("backend-type", "embedded");
+        values.put("embeddedBackendPath", workPath.resolve("backend").toString());
+        return ConfigFactory.parseMap(values).withFallback(ConfigFactory.load());
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import com.epam.healenium.HealDeadline;
+import com.epam.healenium.config.StubBackend;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.NodeBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openqa.selenium.By;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class TestRestClientAsync {
+
+    private static final StackTraceElement CALLER = new StackTraceElement("com.example.LoginPage", "login", "LoginPage.java", 42);
+
+    @TempDir
+    Path spoolPath;
+
+    private StubBackend backend;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        backend = StubBackend.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        backend.close();
+    }
+
+    @Test
+    public void testAsyncWritesArriveInOrder() throws Exception {
+        backend.respondWith(request -> {
+            if (request.getBodyAsString().contains("\"locator\":\"first\"")) {
+                Thread.sleep(300);
+            }
+            return StubBackend.StubResponse.of(200, "");
+        });
+        RestClient client = new RestClient(config());
+
+        CompletableFuture<Boolean> first = client.selectorRequestAsync(By.id("first"), CALLER, path("First"));
+        CompletableFuture<Boolean> second = client.selectorRequestAsync(By.id("second"), CALLER, path("Second"));
+        CompletableFuture<Boolean> third = client.selectorRequestAsync(By.id("third"), CALLER, path("Third"));
+
+        Assert.assertTrue(CompletableFuture.allOf(first, second, third).thenApply(it -> first.join() && second.join() && third.join())
+                .get(10, TimeUnit.SECONDS));
+        Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"first\""));
+        Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"second\""));
+        Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"third\""));
+        Assert.assertTrue(client.getSpool().isEmpty());
+    }
+
+    @Test
+    public void testAsyncLookupReturnsStoredPath() throws Exception {
+        new RestClient(config()).selectorRequest(By.id("submit"), CALLER, path("Submit"));
+        String nodePath = new ObjectMapper().readTree(backend.takeRequest().getBodyAsString()).get("nodePath").toString();
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, nodePath));
+
+        CompletableFuture<Optional<List<Node>>> lookup = new RestClient(config())
+                .getLastValidPathAsync(By.id("submit"), CALLER, HealDeadline.unbounded());
+
+        List<Node> nodes = lookup.get(10, TimeUnit.SECONDS).get();
+        Assert.assertEquals(2, nodes.size());
+        Assert.assertEquals("Submit", nodes.get(1).getOtherAttributes().get("text"));
+    }
+
+    @Test
+    public void testLookupIsAnsweredWithPathNotDeliveredYet() throws Exception {
+        backend.respondWith(request -> {
+            if ("POST".equals(request.getMethod())) {
+                Thread.sleep(500);
+            }
+            return StubBackend.StubResponse.of(200, "");
+        });
+        RestClient client = new RestClient(config());
+
+        CompletableFuture<Boolean> saved = client.selectorRequestAsync(By.id("submit"), CALLER, path("Submit"));
+        Optional<List<Node>> nodes = client.getLastValidPath(By.id("submit"), CALLER);
+
+        Assert.assertFalse(saved.isDone());
+        Assert.assertEquals("Submit", nodes.get().get(1).getOtherAttributes().get("text"));
+        Assert.assertTrue(saved.get(10, TimeUnit.SECONDS));
+        Assert.assertFalse(client.getLastValidPath(By.id("submit"), CALLER).isPresent());
+    }
+
+    @Test
+    public void testFullWriteQueueIsSpooledInOrder() throws Exception {
+        backend.respondWith(request -> {
+            if (request.getBodyAsString().contains("\"locator\":\"first\"")) {
+                Thread.sleep(500);
+            }
+            return StubBackend.StubResponse.of(200, "");
+        });
+        Map<String, Object> values = new HashMap<>();
+        values.put("write-queue-limit", 2);
+        RestClient client = new RestClient(ConfigFactory.parseMap(values).withFallback(config()));
+
+        CompletableFuture<Boolean> first = client.selectorRequestAsync(By.id("first"), CALLER, path("First"));
+        client.selectorRequestAsync(By.id("second"), CALLER, path("Second"));
+        client.selectorRequestAsync(By.id("third"), CALLER, path("Third"));
+        CompletableFuture<Boolean> fourth = client.selectorRequestAsync(By.id("fourth"), CALLER, path("Fourth"));
+
+        Assert.assertFalse(fourth.get(100, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(first.isDone());
+        // the write in flight is spooled too, ahead of the others
+        Assert.assertEquals(4, client.getSpool().size());
+        Assert.assertTrue(first.get(10, TimeUnit.SECONDS));
+        for (String locator : Arrays.asList("first", "first", "second", "third", "fourth")) {
+            Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"" + locator + "\""));
+        }
+    }
+
+    @Test
+    public void testFlushSpoolsWritesTheBackendDidNotTake() throws Exception {
+        backend.respondWith(request -> {
+            Thread.sleep(2000);
+            return StubBackend.StubResponse.of(200, "");
+        });
+        RestClient client = new RestClient(config());
+        client.selectorRequestAsync(By.id("first"), CALLER, path("First"));
+        CompletableFuture<Boolean> second = client.selectorRequestAsync(By.id("second"), CALLER, path("Second"));
+
+        client.flush(Duration.ofMillis(200));
+
+        Assert.assertTrue(second.isDone());
+        Assert.assertFalse(second.join());
+        Assert.assertEquals(2, client.getSpool().size());
+    }
+
+    @Test
+    public void testLookupGivesUpAtTheHealDeadline() throws Exception {
+        backend.respondWith(request -> {
+            Thread.sleep(3000);
+            return StubBackend.StubResponse.of(200, "");
+        });
+        RestClient client = new RestClient(config());
+
+        long started = System.nanoTime();
+        Optional<List<Node>> nodes = client.getLastValidPathAsync(By.id("submit"), CALLER,
+                HealDeadline.start(Duration.ofMillis(300))).get(10, TimeUnit.SECONDS);
+
+        Assert.assertFalse(nodes.isPresent());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 2000);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker().getState());
+    }
+
+    private List<Node> path(String text) {
+        Map<String, String> root = new HashMap<>();
+        root.put("class", "android.widget.FrameLayout");
+        Map<String, String> button = new HashMap<>();
+        button.put("class", "android.widget.Button");
+        button.put("text", text);
+        return Arrays.asList(
+            new NodeBuilder().setTag("android.widget.FrameLayout").setIndex(0).addContent("").setAttributes(root).build(),
+            new NodeBuilder().setTag("android.widget.Button").setIndex(1).addContent("").setAttributes(button).build());
+    }
+
+    private Config config() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("serverHost", "localhost");
+        values.put("serverPort", backend.getPort());
+        values.put("spoolPath", spoolPath.toString());
+        return ConfigFactory.parseMap(values).withFallback(ConfigFactory.load());
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import com.epam.healenium.HealDeadline;
+import com.epam.healenium.config.StubBackend;
+import com.epam.healenium.data.LocatorIndex;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.NodeBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openqa.selenium.By;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TestRestClientCircuitBreaker {
+
+    private static final StackTraceElement CALLER = new StackTraceElement("com.example.LoginPage", "login", "LoginPage.java", 42);
+
+    @TempDir
+    Path spoolPath;
+
+    private StubBackend backend;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        backend = StubBackend.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        backend.close();
+    }
+
+    @Test
+    public void testOpenCircuitSpoolsWritesAndReplaysInOrder() throws Exception {
+        backend.respondWith(request -> StubBackend.StubResponse.of(500, ""));
+        RestClient client = new RestClient(config());
+
+        client.selectorRequest(By.id("first"), CALLER, Collections.emptyList());
+        client.selectorRequest(By.id("second"), CALLER, Collections.emptyList());
+        await(() -> client.getCircuitBreaker().getState() == CircuitBreaker.State.OPEN);
+
+        backend.clear();
+        Assert.assertFalse(client.getLastValidPath(By.id("first"), CALLER).isPresent());
+        client.selectorRequest(By.id("third"), CALLER, Collections.emptyList());
+        Assert.assertEquals("No network calls while the circuit is open", 0, backend.getRequestCount());
+        Assert.assertEquals(3, client.getSpool().size());
+        Assert.assertEquals(1, client.getCircuitBreaker().getOpenedCount());
+
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, ""));
+        await(() -> client.getSpool().isEmpty());
+
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker().getState());
+        Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"first\""));
+        Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"second\""));
+        Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"third\""));
+        Assert.assertEquals(3, client.getSpool().getReplayedCount());
+    }
+
+    @Test
+    public void testCancelledProbeLetsTheNextCallProbe() throws Exception {
+        backend.respondWith(request -> StubBackend.StubResponse.of(500, ""));
+        RestClient client = new RestClient(config());
+        client.getLastValidPath(By.id("first"), CALLER);
+        client.getLastValidPath(By.id("first"), CALLER);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, client.getCircuitBreaker().getState());
+        Thread.sleep(1100);
+
+        backend.respondWith(request -> {
+            Thread.sleep(2000);
+            return StubBackend.StubResponse.of(200, "");
+        });
+        CompletableFuture<Optional<List<Node>>> probe = client.getLastValidPathAsync(By.id("first"), CALLER, HealDeadline.unbounded());
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, client.getCircuitBreaker().getState());
+        probe.cancel(true);
+        await(() -> client.getCircuitBreaker().getState() != CircuitBreaker.State.HALF_OPEN);
+
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, ""));
+        client.getLastValidPath(By.id("first"), CALLER);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void testSpoolSurvivesRestart() throws Exception {
+        backend.respondWith(request -> StubBackend.StubResponse.of(500, ""));
+        RestClient client = new RestClient(config());
+        client.selectorRequest(By.id("first"), CALLER, Collections.emptyList());
+        await(() -> client.getSpool().size() == 1);
+
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, ""));
+        backend.clear();
+        RestClient restarted = new RestClient(config());
+        await(() -> restarted.getSpool().isEmpty());
+
+        Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"first\""));
+    }
+
+    @Test
+    public void testSpoolOfExitedProcessIsTakenOver() throws Exception {
+        Path orphan = Files.createDirectories(spoolPath.resolve("exited"));
+        RequestSpool.SpooledRequest entry = new RequestSpool.SpooledRequest();
+        entry.setMethod("POST");
+        entry.setUrl("http://localhost:" + backend.getPort() + "/healenium");
+        entry.setHeaders(Collections.emptyMap());
+        entry.setContentType("application/json; charset=utf-8");
+        entry.setBody("{\"locator\":\"orphan\"}".getBytes(StandardCharsets.UTF_8));
+        new ObjectMapper().writeValue(orphan.resolve(String.format("%019d", 1) + ".json").toFile(), entry);
+
+        RestClient client = new RestClient(config());
+        await(() -> client.getSpool().isEmpty() && client.getSpool().getReplayedCount() == 1);
+
+        Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"orphan\""));
+        Assert.assertFalse(Files.exists(orphan));
+    }
+
+    @Test
+    public void testSpoolKeepsRequestsInProcessFolder() throws Exception {
+        backend.respondWith(request -> StubBackend.StubResponse.of(500, ""));
+        RestClient client = new RestClient(config());
+        client.selectorRequest(By.id("first"), CALLER, Collections.emptyList());
+        await(() -> client.getSpool().size() == 1);
+
+        try (Stream<Path> files = Files.walk(spoolPath)) {
+            List<Path> spooled = files.filter(it -> it.toString().endsWith(".json")).collect(Collectors.toList());
+            Assert.assertEquals(1, spooled.size());
+            Assert.assertNotEquals(spoolPath, spooled.get(0).getParent());
+        }
+    }
+
+    @Test
+    public void testIndexedPathIsUsedOnlyWhileBackendIsDown() throws Exception {
+        Map<String, Object> warmStart = new HashMap<>();
+        warmStart.put("warm-start", true);
+        warmStart.put("warmStartPath", spoolPath.resolve("index.bin").toString());
+        RestClient client = new RestClient(config(), new LocatorIndex(ConfigFactory.parseMap(warmStart).withFallback(config())));
+        client.selectorRequest(By.id("submit"), CALLER, path("Submit"));
+        String saved = new ObjectMapper().readTree(backend.takeRequest().getBodyAsString()).get("nodePath").toString();
+        client.selectorRequest(By.id("submit"), CALLER, path("Sign in"));
+        backend.takeRequest();
+
+        backend.respondWith(request -> StubBackend.StubResponse.of(500, ""));
+        Assert.assertEquals("Sign in", client.getLastValidPath(By.id("submit"), CALLER).get().get(1).getOtherAttributes().get("text"));
+
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, saved));
+        Assert.assertEquals("Submit", client.getLastValidPath(By.id("submit"), CALLER).get().get(1).getOtherAttributes().get("text"));
+    }
+
+    private List<Node> path(String text) {
+        Map<String, String> button = new HashMap<>();
+        button.put("class", "android.widget.Button");
+        button.put("text", text);
+        return Arrays.asList(
+            new NodeBuilder().setTag("android.widget.FrameLayout").setIndex(0).addContent("").setAttributes(new HashMap<>()).build(),
+            new NodeBuilder().setTag("android.widget.Button").setIndex(1).addContent("").setAttributes(button).build());
+    }
+
+    private Config config() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("serverHost", "localhost");
+        values.put("serverPort", backend.getPort());
+        values.put("spoolPath", spoolPath.toString());
+        values.put("breaker-failure-threshold", 2);
+        values.put("breaker-open-duration", "1s");
+        return ConfigFactory.parseMap(values).withFallback(ConfigFactory.load());
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition was not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+}
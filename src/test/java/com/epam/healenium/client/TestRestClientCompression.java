@@ -0,0 +1,155 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import com.epam.healenium.config.StubBackend;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.NodeBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openqa.selenium.By;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class TestRestClientCompression {
+
+    private static final StackTraceElement CALLER = new StackTraceElement("com.example.LoginPage", "login", "LoginPage.java", 42);
+
+    @TempDir
+    Path spoolPath;
+
+    private StubBackend backend;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        backend = StubBackend.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        backend.close();
+    }
+
+    @Test
+    public void testLargeBodyIsCompressed() throws Exception {
+        RestClient client = new RestClient(config(1024));
+        client.selectorRequest(By.id("result"), CALLER, nodePath(30));
+
+        StubBackend.RecordedRequest request = backend.takeRequest();
+        Assert.assertEquals("gzip", request.getHeader("Content-Encoding"));
+        Assert.assertTrue(request.getRawBody().length < request.getBody().length);
+        Assert.assertTrue(request.getBodyAsString().contains("\"locator\":\"result\""));
+    }
+
+    @Test
+    public void testSmallBodyIsSentAsIs() throws Exception {
+        RestClient client = new RestClient(config(64 * 1024));
+        client.selectorRequest(By.id("result"), CALLER, nodePath(1));
+
+        StubBackend.RecordedRequest request = backend.takeRequest();
+        Assert.assertNull(request.getHeader("Content-Encoding"));
+        Assert.assertTrue(request.getBodyAsString().contains("\"locator\":\"result\""));
+    }
+
+    @Test
+    public void testCompressionDisabledWhenRejected() throws Exception {
+        backend.respondWith(request -> "gzip".equals(request.getHeader("Content-Encoding"))
+                ? StubBackend.StubResponse.of(415, "")
+                : StubBackend.StubResponse.of(200, ""));
+        RestClient client = new RestClient(config(1024));
+        client.selectorRequest(By.id("result"), CALLER, nodePath(30));
+        client.selectorRequest(By.id("result"), CALLER, nodePath(30));
+
+        Assert.assertEquals("gzip", backend.takeRequest().getHeader("Content-Encoding"));
+        Assert.assertNull(backend.takeRequest().getHeader("Content-Encoding"));
+        Assert.assertNull(backend.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void testCompressionDisabledAfterFirstUnsupportedMediaType() throws Exception {
+        backend.respondWith(request -> "gzip".equals(request.getHeader("Content-Encoding"))
+                ? StubBackend.StubResponse.of(415, "")
+                : StubBackend.StubResponse.of(503, ""));
+        RestClient client = new RestClient(config(1024));
+        client.selectorRequest(By.id("result"), CALLER, nodePath(30));
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, ""));
+        client.selectorRequest(By.id("result"), CALLER, nodePath(30));
+
+        Assert.assertEquals("gzip", backend.takeRequest().getHeader("Content-Encoding"));
+        for (StubBackend.RecordedRequest request = backend.takeRequest(); request != null; request = backend.takeRequest()) {
+            Assert.assertNull("The plain retry failed, still nothing is compressed again",
+                    request.getHeader("Content-Encoding"));
+        }
+    }
+
+    @Test
+    public void testCompressionIsOffByDefault() throws Exception {
+        Map<String, Object> values = new HashMap<>();
+        values.put("serverHost", "localhost");
+        values.put("serverPort", backend.getPort());
+        values.put("spoolPath", spoolPath.toString());
+        RestClient client = new RestClient(ConfigFactory.parseMap(values).withFallback(ConfigFactory.load()));
+        client.selectorRequest(By.id("result"), CALLER, nodePath(30));
+
+        Assert.assertNull(backend.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void testCompressedResponseIsAccepted() throws Exception {
+        String json = "[{\"tag\":\"android.widget.TextView\",\"index\":0,\"innerText\":\"61\",\"id\":\"\",\"classes\":\"\","
+                + "\"other\":{\"resource-id\":\"com.android.calculator2:id/result\"}}]";
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, json).gzipped());
+        RestClient client = new RestClient(config(1024));
+
+        Optional<List<Node>> nodes = client.getLastValidPath(By.id("result"), CALLER);
+
+        Assert.assertEquals("gzip", backend.takeRequest().getHeader("Accept-Encoding"));
+        Assert.assertTrue(nodes.isPresent());
+        Assert.assertEquals("android.widget.TextView", nodes.get().get(0).getTag());
+    }
+
+    private Config config(int threshold) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("serverHost", "localhost");
+        values.put("serverPort", backend.getPort());
+        values.put("compression-enabled", true);
+        values.put("compression-threshold", threshold);
+        values.put("spoolPath", spoolPath.toString());
+        return ConfigFactory.parseMap(values).withFallback(ConfigFactory.load());
+    }
+
+    private List<Node> nodePath(int depth) {
+        List<Node> path = new ArrayList<>();
+        for (int i = 0; i < depth; i++) {
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put("resourceId", "com.android.calculator2:id/container_" + i);
+            attributes.put("bounds", "[0,0][1080,2340]");
+            attributes.put("enabled", "true");
+            path.add(new NodeBuilder()
+                    .setTag("android.widget.FrameLayout")
+                    .setOtherAttributes(attributes)
+                    .build());
+        }
+        return path;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.client;
+
+import com.epam.healenium.config.StubBackend;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.NodeBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openqa.selenium.By;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestRestClientHttpCache {
+
+    private static final StackTraceElement CALLER = new StackTraceElement("com.example.LoginPage", "login", "LoginPage.java", 42);
+
+    @TempDir
+    Path workPath;
+
+    private StubBackend backend;
+    private String nodePath;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        backend = StubBackend.start();
+        new RestClient(config()).selectorRequest(By.id("submit"), CALLER, path("Submit"));
+        nodePath = new ObjectMapper().readTree(backend.takeRequest().getBodyAsString()).get("nodePath").toString();
+        backend.clear();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        backend.close();
+    }
+
+    @Test
+    public void testUnchangedPathIsRevalidatedAcrossSessions() throws Exception {
+        backend.respondWith(request -> "\"v1\"".equals(request.getHeader("If-None-Match"))
+                ? StubBackend.StubResponse.of(304, "").withHeader("ETag", "\"v1\"")
+                : StubBackend.StubResponse.of(200, nodePath).withHeader("ETag", "\"v1\""));
+
+        Assert.assertEquals(2, new RestClient(config()).getLastValidPath(By.id("submit"), CALLER).get().size());
+        Assert.assertNull(backend.takeRequest().getHeader("If-None-Match"));
+
+        List<Node> nodes = new RestClient(config()).getLastValidPath(By.id("submit"), CALLER).get();
+        Assert.assertEquals("Submit", nodes.get(1).getOtherAttributes().get("text"));
+        Assert.assertEquals("\"v1\"", backend.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void testFreshPathIsServedWithoutRequest() throws Exception {
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, nodePath)
+                .withHeader("ETag", "\"v1\"")
+                .withHeader("Cache-Control", "max-age=60"));
+        RestClient client = new RestClient(config());
+
+        client.getLastValidPath(By.id("submit"), CALLER);
+        backend.clear();
+        List<Node> nodes = client.getLastValidPath(By.id("submit"), CALLER).get();
+
+        Assert.assertEquals("Submit", nodes.get(1).getOtherAttributes().get("text"));
+        Assert.assertEquals(0, backend.getRequestCount());
+    }
+
+    @Test
+    public void testSavedPathBypassesCache() throws Exception {
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, nodePath)
+                .withHeader("ETag", "\"v1\"")
+                .withHeader("Cache-Control", "max-age=60"));
+        RestClient client = new RestClient(config());
+        client.getLastValidPath(By.id("submit"), CALLER);
+
+        client.selectorRequest(By.id("submit"), CALLER, path("Submit"));
+        backend.clear();
+        client.getLastValidPath(By.id("submit"), CALLER);
+
+        Assert.assertEquals(1, backend.getRequestCount());
+    }
+
+    private List<Node> path(String text) {
+        Map<String, String> root = new HashMap<>();
+        root.put("class", "android.widget.FrameLayout");
+        Map<String, String> button = new HashMap<>();
+        button.put("class", "android.widget.Button");
+        button.put("text", text);
+        return Arrays.asList(
+            new NodeBuilder().setTag("android.widget.FrameLayout").setIndex(0).addContent("").setAttributes(root).build(),
+            new NodeBuilder().setTag("android.widget.Button").setIndex(1).addContent("").setAttributes(button).build());
+    }
+
+    private Config config() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("serverHost", "localhost");
+        values.put("serverPort", backend.getPort());
+        values.put("spoolPath", workPath.resolve("spool").toString());
+        values.put("http-cache-enabled", true);
+        values.put("httpCachePath", workPath.resolve("http-cache").toString());
+        return ConfigFactory.parseMap(values).withFallback(ConfigFactory.load());
+    }
+}
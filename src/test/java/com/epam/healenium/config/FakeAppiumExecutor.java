@@ -0,0 +1,164 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.config;
+
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.AndroidElement;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.Response;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process stand-in for an Appium server session: answers WebDriver commands from a {@link FakeHierarchy}
+ * after a configurable device latency, without any network.
+ */
+public class FakeAppiumExecutor extends HttpCommandExecutor {
+
+    private static final String W3C_ELEMENT = "element-6066-11e4-a52e-4f735466cecf";
+
+    private final FakeHierarchy hierarchy;
+    private final long latencyNanos;
+    private final AtomicLong commandCount = new AtomicLong();
+    private final Map<String, AtomicLong> commandCounts = new ConcurrentHashMap<>();
+    private volatile String activity = ".MainActivity";
+
+    public FakeAppiumExecutor(FakeHierarchy hierarchy, long latencyMicros) throws MalformedURLException {
+        super(new URL("http://localhost:4723/wd/hub"));
+        this.hierarchy = hierarchy;
+        this.latencyNanos = latencyMicros * 1000;
+    }
+
+    /**
+     * Opens a driver session against the fake hierarchy
+     */
+    public static AndroidDriver<AndroidElement> driver(FakeHierarchy hierarchy, long latencyMicros) throws MalformedURLException {
+        return new FakeAppiumExecutor(hierarchy, latencyMicros).driver();
+    }
+
+    /**
+     * Opens a driver session served by this executor
+     */
+    public AndroidDriver<AndroidElement> driver() {
+        DesiredCapabilities capabilities = new DesiredCapabilities();
+        capabilities.setCapability("platformName", "Android");
+        capabilities.setCapability("automationName", "UiAutomator2");
+        capabilities.setCapability("deviceName", "fake-device");
+        return new AndroidDriver<>(this, capabilities);
+    }
+
+    /**
+     * @param activity the activity reported as the current one, null for none
+     */
+    public void setActivity(String activity) {
+        this.activity = activity;
+    }
+
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    public long getCommandCount(String command) {
+        AtomicLong count = commandCounts.get(command);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public Response execute(Command command) {
+        commandCount.incrementAndGet();
+        commandCounts.computeIfAbsent(command.getName(), it -> new AtomicLong()).incrementAndGet();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        Map<String, ?> parameters = command.getParameters();
+        Response response = new Response();
+        response.setSessionId(command.getSessionId() == null ? UUID.randomUUID().toString() : command.getSessionId().toString());
+        response.setStatus(ErrorCodes.SUCCESS);
+        response.setState("success");
+        switch (command.getName()) {
+            case DriverCommand.NEW_SESSION:
+                Map<String, Object> capabilities = new HashMap<>();
+                capabilities.put("platformName", "Android");
+                capabilities.put("automationName", "UiAutomator2");
+                capabilities.put("deviceName", "fake-device");
+                response.setValue(capabilities);
+                return response;
+            case DriverCommand.FIND_ELEMENT:
+            case DriverCommand.FIND_CHILD_ELEMENT: {
+                List<FakeHierarchy.FakeNode> found = find(parameters);
+                if (found.isEmpty()) {
+                    response.setStatus(ErrorCodes.NO_SUCH_ELEMENT);
+                    response.setState("no such element");
+                    response.setValue("An element could not be located on the page using the given search parameters.");
+                    return response;
+                }
+                response.setValue(reference(found.get(0)));
+                return response;
+            }
+            case DriverCommand.FIND_ELEMENTS:
+            case DriverCommand.FIND_CHILD_ELEMENTS: {
+                List<Map<String, String>> references = new ArrayList<>();
+                find(parameters).forEach(it -> references.add(reference(it)));
+                response.setValue(references);
+                return response;
+            }
+            case DriverCommand.GET_ELEMENT_ATTRIBUTE:
+                response.setValue(hierarchy.getAttribute(node(parameters), (String) parameters.get("name")));
+                return response;
+            case DriverCommand.GET_ELEMENT_TEXT:
+                response.setValue(hierarchy.getAttribute(node(parameters), "text"));
+                return response;
+            case DriverCommand.GET_PAGE_SOURCE:
+                response.setValue(hierarchy.getPageSource());
+                return response;
+            case DriverCommand.SCREENSHOT:
+                response.setValue("iVBORw0KGgo=");
+                return response;
+            case "currentActivity":
+                response.setValue(activity);
+                return response;
+            default:
+                response.setValue(null);
+                return response;
+        }
+    }
+
+    private List<FakeHierarchy.FakeNode> find(Map<String, ?> parameters) {
+        FakeHierarchy.FakeNode scope = parameters.containsKey("id") ? node(parameters) : null;
+        return hierarchy.find((String) parameters.get("using"), (String) parameters.get("value"), scope);
+    }
+
+    private FakeHierarchy.FakeNode node(Map<String, ?> parameters) {
+        return hierarchy.getNode(String.valueOf(parameters.get("id")));
+    }
+
+    private Map<String, String> reference(FakeHierarchy.FakeNode node) {
+        Map<String, String> reference = new HashMap<>();
+        reference.put("ELEMENT", node.getId());
+        reference.put(W3C_ELEMENT, node.getId());
+        return reference;
+    }
+}
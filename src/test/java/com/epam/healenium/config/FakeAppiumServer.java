@@ -0,0 +1,238 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.AndroidElement;
+import lombok.extern.slf4j.Slf4j;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for an Appium server, speaking the W3C subset the wrapper uses over HTTP. Each session gets its own
+ * {@link FakeHierarchy} and every command is answered after a configurable device latency, so that drivers talk to
+ * it through the same HTTP client stack as to a real server.
+ */
+@Slf4j
+public class FakeAppiumServer implements AutoCloseable {
+
+    private static final String W3C_ELEMENT = "element-6066-11e4-a52e-4f735466cecf";
+    private static final Pattern SESSION_COMMAND = Pattern.compile("/wd/hub/session/([^/]+)(/.*)?");
+    private static final Pattern ELEMENT_COMMAND = Pattern.compile("/element/([^/]+)/(element|elements|text|attribute/(.+))");
+
+    private final HttpServer server;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, FakeHierarchy> sessions = new ConcurrentHashMap<>();
+    private final Supplier<FakeHierarchy> hierarchies;
+    private final long latencyNanos;
+
+    private FakeAppiumServer(HttpServer server, Supplier<FakeHierarchy> hierarchies, long latencyMicros) {
+        this.server = server;
+        this.hierarchies = hierarchies;
+        this.latencyNanos = latencyMicros * 1000;
+    }
+
+    /**
+     * @param hierarchies   builds the screen of a new session
+     * @param latencyMicros the device latency added to every command
+     */
+    public static FakeAppiumServer start(Supplier<FakeHierarchy> hierarchies, long latencyMicros) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        FakeAppiumServer appium = new FakeAppiumServer(server, hierarchies, latencyMicros);
+        server.createContext("/wd/hub", appium::handle);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-appium");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return appium;
+    }
+
+    public URL getUrl() throws MalformedURLException {
+        return new URL("http://localhost:" + server.getAddress().getPort() + "/wd/hub");
+    }
+
+    /**
+     * Opens a driver session on this server
+     */
+    public AndroidDriver<AndroidElement> driver() throws MalformedURLException {
+        DesiredCapabilities capabilities = new DesiredCapabilities();
+        capabilities.setCapability("platformName", "Android");
+        capabilities.setCapability("automationName", "UiAutomator2");
+        capabilities.setCapability("deviceName", "fake-device");
+        return new AndroidDriver<>(getUrl(), capabilities);
+    }
+
+    /**
+     * @return the screen of the session, e.g. to rename a view
+     */
+    public FakeHierarchy getHierarchy(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (latencyNanos > 0) {
+                LockSupport.parkNanos(latencyNanos);
+            }
+            JsonNode body = read(exchange.getRequestBody());
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if ("POST".equals(method) && path.equals("/wd/hub/session")) {
+                newSession(exchange);
+                return;
+            }
+            Matcher session = SESSION_COMMAND.matcher(path);
+            FakeHierarchy hierarchy = session.matches() ? sessions.get(session.group(1)) : null;
+            if (hierarchy == null) {
+                error(exchange, 404, "invalid session id", "No session at " + path);
+                return;
+            }
+            String command = session.group(2) == null ? "" : session.group(2);
+            if ("DELETE".equals(method) && command.isEmpty()) {
+                sessions.remove(session.group(1));
+                respond(exchange, 200, null);
+            } else if ("POST".equals(method) && (command.equals("/element") || command.equals("/elements"))) {
+                find(exchange, hierarchy, null, body, command.equals("/elements"));
+            } else if (command.equals("/source")) {
+                respond(exchange, 200, hierarchy.getPageSource());
+            } else if (command.equals("/screenshot")) {
+                respond(exchange, 200, "iVBORw0KGgo=");
+            } else if (command.equals("/appium/device/current_activity")) {
+                respond(exchange, 200, ".FakeActivity");
+            } else {
+                elementCommand(exchange, hierarchy, command, body);
+            }
+        } catch (Exception ex) {
+            log.error("Fake Appium server failed to handle request", ex);
+            error(exchange, 500, "unknown error", String.valueOf(ex.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void newSession(HttpExchange exchange) throws IOException {
+        String sessionId = UUID.randomUUID().toString();
+        sessions.put(sessionId, hierarchies.get());
+        Map<String, Object> capabilities = new HashMap<>();
+        capabilities.put("platformName", "Android");
+        capabilities.put("automationName", "UiAutomator2");
+        capabilities.put("deviceName", "fake-device");
+        Map<String, Object> value = new HashMap<>();
+        value.put("sessionId", sessionId);
+        value.put("capabilities", capabilities);
+        respond(exchange, 200, value);
+    }
+
+    private void elementCommand(HttpExchange exchange, FakeHierarchy hierarchy, String command, JsonNode body) throws IOException {
+        Matcher element = ELEMENT_COMMAND.matcher(command);
+        if (!element.matches()) {
+            // a command the wrapper doesn't depend on, e.g. a click
+            respond(exchange, 200, null);
+            return;
+        }
+        FakeHierarchy.FakeNode node = hierarchy.getNode(element.group(1));
+        if (node == null) {
+            error(exchange, 404, "stale element reference", "No element " + element.group(1));
+            return;
+        }
+        switch (element.group(2)) {
+            case "element":
+                find(exchange, hierarchy, node, body, false);
+                break;
+            case "elements":
+                find(exchange, hierarchy, node, body, true);
+                break;
+            case "text":
+                respond(exchange, 200, hierarchy.getAttribute(node, "text"));
+                break;
+            default:
+                respond(exchange, 200, hierarchy.getAttribute(node, element.group(3)));
+        }
+    }
+
+    private void find(HttpExchange exchange, FakeHierarchy hierarchy, FakeHierarchy.FakeNode scope, JsonNode body,
+                      boolean all) throws IOException {
+        List<FakeHierarchy.FakeNode> found = hierarchy.find(body.path("using").asText(), body.path("value").asText(), scope);
+        if (all) {
+            List<Map<String, String>> references = new ArrayList<>();
+            found.forEach(it -> references.add(reference(it)));
+            respond(exchange, 200, references);
+        } else if (found.isEmpty()) {
+            error(exchange, 404, "no such element", "An element could not be located on the page using the given search parameters.");
+        } else {
+            respond(exchange, 200, reference(found.get(0)));
+        }
+    }
+
+    private JsonNode read(InputStream stream) throws IOException {
+        JsonNode node = stream == null ? null : objectMapper.readTree(stream);
+        return node == null || node.isMissingNode() ? objectMapper.createObjectNode() : node;
+    }
+
+    private void error(HttpExchange exchange, int code, String error, String message) throws IOException {
+        Map<String, Object> value = new HashMap<>();
+        value.put("error", error);
+        value.put("message", message);
+        value.put("stacktrace", "");
+        respond(exchange, code, value);
+    }
+
+    private void respond(HttpExchange exchange, int code, Object value) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(Collections.singletonMap("value", value));
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, payload.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(payload);
+        }
+    }
+
+    private static Map<String, String> reference(FakeHierarchy.FakeNode node) {
+        Map<String, String> reference = new HashMap<>();
+        reference.put("ELEMENT", node.getId());
+        reference.put(W3C_ELEMENT, node.getId());
+        return reference;
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.config;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory Android view hierarchy served by the fake Appium server.
+ * Supports the locator strategies used by the tests: id, accessibility id, class name,
+ * UiAutomator resourceId/text/description selectors and simple XPath expressions.
+ */
+public class FakeHierarchy {
+
+    private static final Pattern XPATH_STEP = Pattern.compile("([\\w.*]+)(?:\\[@([\\w-]+) ?= ?'([^']*)'])?");
+    // a slash outside of the quoted attribute values, resource ids contain slashes
+    private static final Pattern XPATH_SEPARATOR = Pattern.compile("/(?=(?:[^']*'[^']*')*[^']*$)");
+    private static final Pattern UI_SELECTOR = Pattern.compile("\\.(resourceId|text|description|className)\\(\"([^\"]*)\"\\)");
+
+    private final String appPackage;
+    private final FakeNode root;
+    private final Map<String, FakeNode> nodes = new ConcurrentHashMap<>();
+    private volatile String pageSource;
+    private int sequence;
+
+    private FakeHierarchy(String appPackage) {
+        this.appPackage = appPackage;
+        this.root = new FakeNode("hierarchy", null);
+        nodes.put(root.id, root);
+    }
+
+    /**
+     * Builds a screen with a toolbar and a scrolling list of rows, each row holding a title and a subtitle
+     *
+     * @param appPackage application package used for resource ids
+     * @param rows       number of list rows
+     * @return the hierarchy
+     */
+    public static FakeHierarchy list(String appPackage, int rows) {
+        FakeHierarchy hierarchy = new FakeHierarchy(appPackage);
+        FakeNode frame = hierarchy.add(hierarchy.root, "android.widget.FrameLayout", "", "", 0, 0, 1080, 2340);
+        FakeNode content = hierarchy.add(frame, "android.widget.LinearLayout", "content", "", 0, 0, 1080, 2340);
+        FakeNode toolbar = hierarchy.add(content, "android.view.ViewGroup", "toolbar", "", 0, 0, 1080, 200);
+        hierarchy.add(toolbar, "android.widget.TextView", "title", "Fake list", 40, 50, 600, 150);
+        hierarchy.add(toolbar, "android.widget.ImageButton", "search", "", 900, 50, 1040, 150).attributes.put("content-desc", "Search");
+        FakeNode list = hierarchy.add(content, "androidx.recyclerview.widget.RecyclerView", "list", "", 0, 200, 1080, 2340);
+        for (int i = 0; i < rows; i++) {
+            int top = 200 + i * 120;
+            FakeNode row = hierarchy.add(list, "android.widget.LinearLayout", "row", "", 0, top, 1080, top + 120);
+            hierarchy.add(row, "android.widget.TextView", "row_title", "Item " + i, 40, top + 10, 1040, top + 60);
+            hierarchy.add(row, "android.widget.TextView", "row_subtitle", "Details " + i, 40, top + 60, 1040, top + 110);
+        }
+        hierarchy.add(content, "android.widget.Button", "submit", "Submit", 40, 2200, 1040, 2320);
+        return hierarchy;
+    }
+
+    public FakeNode getNode(String id) {
+        return nodes.get(id);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Changes an attribute of every node matching the resource id, e.g. to simulate a renamed view
+     */
+    public synchronized void setAttribute(String resourceId, String name, String value) {
+        nodes.values().stream()
+                .filter(it -> it.attributes.getOrDefault("resource-id", "").equals(qualify(resourceId)))
+                .forEach(it -> it.attributes.put(name, value));
+        pageSource = null;
+    }
+
+    public List<FakeNode> find(String using, String value, FakeNode scope) {
+        FakeNode from = scope == null ? root : scope;
+        switch (using) {
+            case "id":
+                return descendants(from, it -> it.attr("resource-id").equals(qualify(value)));
+            case "accessibility id":
+                return descendants(from, it -> it.attr("content-desc").equals(value));
+            case "class name":
+                return descendants(from, it -> it.attr("class").equals(value));
+            case "-android uiautomator":
+                return findByUiSelector(from, value);
+            case "xpath":
+                return findByXPath(from, value);
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    public String getAttribute(FakeNode node, String name) {
+        switch (name) {
+            case "contentDescription":
+            case "content-desc":
+                return node.attr("content-desc");
+            case "resourceId":
+            case "resource-id":
+                return node.attr("resource-id");
+            case "className":
+            case "class":
+                return node.attr("class");
+            default:
+                return node.attributes.get(name);
+        }
+    }
+
+    public String getPageSource() {
+        String source = pageSource;
+        if (source == null) {
+            synchronized (this) {
+                StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\" ?>\n");
+                render(root, builder, 0);
+                source = builder.toString();
+                pageSource = source;
+            }
+        }
+        return source;
+    }
+
+    private synchronized FakeNode add(FakeNode parent, String className, String resourceId, String text,
+                                      int left, int top, int right, int bottom) {
+        FakeNode node = new FakeNode(className, parent);
+        node.attributes.put("index", String.valueOf(parent.children.size()));
+        node.attributes.put("package", appPackage);
+        node.attributes.put("class", className);
+        node.attributes.put("text", text);
+        node.attributes.put("resource-id", resourceId.isEmpty() ? "" : qualify(resourceId));
+        node.attributes.put("content-desc", "");
+        node.attributes.put("checkable", "false");
+        node.attributes.put("checked", "false");
+        node.attributes.put("clickable", String.valueOf(className.endsWith("Button")));
+        node.attributes.put("enabled", "true");
+        node.attributes.put("focusable", "false");
+        node.attributes.put("focused", "false");
+        node.attributes.put("selected", "false");
+        node.attributes.put("displayed", "true");
+        node.attributes.put("bounds", "[" + left + "," + top + "][" + right + "," + bottom + "]");
+        parent.children.add(node);
+        nodes.put(node.id, node);
+        pageSource = null;
+        return node;
+    }
+
+    private String qualify(String resourceId) {
+        return resourceId.contains(":id/") ? resourceId : appPackage + ":id/" + resourceId;
+    }
+
+    private List<FakeNode> descendants(FakeNode from, java.util.function.Predicate<FakeNode> filter) {
+        List<FakeNode> result = new ArrayList<>();
+        collect(from, filter, result);
+        return result;
+    }
+
+    private void collect(FakeNode node, java.util.function.Predicate<FakeNode> filter, List<FakeNode> result) {
+        for (FakeNode child : node.children) {
+            if (filter.test(child)) {
+                result.add(child);
+            }
+            collect(child, filter, result);
+        }
+    }
+
+    private List<FakeNode> findByUiSelector(FakeNode from, String selector) {
+        Map<String, String> criteria = new LinkedHashMap<>();
+        Matcher matcher = UI_SELECTOR.matcher(selector);
+        while (matcher.find()) {
+            criteria.put(matcher.group(1), matcher.group(2));
+        }
+        return descendants(from, it -> criteria.entrySet().stream().allMatch(criterion -> {
+            switch (criterion.getKey()) {
+                case "resourceId":
+                    return it.attr("resource-id").equals(qualify(criterion.getValue()));
+                case "description":
+                    return it.attr("content-desc").equals(criterion.getValue());
+                case "className":
+                    return it.attr("class").equals(criterion.getValue());
+                default:
+                    return it.attr("text").equals(criterion.getValue());
+            }
+        }));
+    }
+
+    private List<FakeNode> findByXPath(FakeNode from, String xpath) {
+        boolean ancestors = xpath.endsWith("/ancestor::*");
+        String expression = ancestors ? xpath.substring(0, xpath.length() - "/ancestor::*".length()) : xpath;
+        if (expression.startsWith(".//")) {
+            // relative to the scope, which is where every expression is evaluated from anyway
+            expression = expression.substring(1);
+        }
+        if (!expression.startsWith("//")) {
+            return Collections.emptyList();
+        }
+        List<FakeNode> current = null;
+        for (String step : XPATH_SEPARATOR.split(expression.substring(2))) {
+            Matcher matcher = XPATH_STEP.matcher(step.trim());
+            if (!matcher.matches()) {
+                return Collections.emptyList();
+            }
+            java.util.function.Predicate<FakeNode> filter = it -> ("*".equals(matcher.group(1)) || it.tag.equals(matcher.group(1)))
+                    && (matcher.group(2) == null || it.attr(matcher.group(2)).equals(matcher.group(3)));
+            current = current == null
+                    ? descendants(from, filter)
+                    : current.stream().flatMap(it -> it.children.stream()).filter(filter).collect(Collectors.toList());
+        }
+        if (!ancestors || current == null) {
+            return current;
+        }
+        List<FakeNode> result = new ArrayList<>();
+        if (!current.isEmpty()) {
+            for (FakeNode node = current.get(0).parent; node != null && node != root; node = node.parent) {
+                result.add(0, node);
+            }
+        }
+        return result;
+    }
+
+    private void render(FakeNode node, StringBuilder builder, int depth) {
+        for (int i = 0; i < depth; i++) {
+            builder.append("  ");
+        }
+        builder.append('<').append(node.tag);
+        if (node == root) {
+            builder.append(" index=\"0\" class=\"hierarchy\" rotation=\"0\" width=\"1080\" height=\"2340\"");
+        }
+        node.attributes.forEach((key, value) -> builder.append(' ').append(key).append("=\"").append(escape(value)).append('"'));
+        if (node.children.isEmpty()) {
+            builder.append(" />\n");
+            return;
+        }
+        builder.append(">\n");
+        node.children.forEach(child -> render(child, builder, depth + 1));
+        for (int i = 0; i < depth; i++) {
+            builder.append("  ");
+        }
+        builder.append("</").append(node.tag).append(">\n");
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    @Getter
+    public class FakeNode {
+        private final String id;
+        private final String tag;
+        private final FakeNode parent;
+        private final List<FakeNode> children = new ArrayList<>();
+        private final Map<String, String> attributes = new LinkedHashMap<>();
+
+        FakeNode(String tag, FakeNode parent) {
+            this.id = "el-" + (sequence++);
+            this.tag = tag;
+            this.parent = parent;
+        }
+
+        String attr(String name) {
+            return attributes.getOrDefault(name, "");
+        }
+    }
+}
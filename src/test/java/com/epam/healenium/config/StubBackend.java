@@ -0,0 +1,198 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for hlm-backend. Records every request it receives and answers with a configurable responder.
+ */
+@Slf4j
+public class StubBackend implements AutoCloseable {
+
+    private final HttpServer server;
+    private final BlockingQueue<RecordedRequest> requests = new LinkedBlockingQueue<>();
+    private volatile Responder responder = request -> StubResponse.of(200, "");
+    private volatile boolean recording = true;
+
+    private StubBackend(HttpServer server) {
+        this.server = server;
+    }
+
+    public static StubBackend start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        StubBackend backend = new StubBackend(server);
+        server.createContext("/", backend::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return backend;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void respondWith(Responder responder) {
+        this.responder = responder;
+    }
+
+    /**
+     * @param recording false to answer requests without keeping them, e.g. under load
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    public RecordedRequest takeRequest() throws InterruptedException {
+        return requests.poll(5, TimeUnit.SECONDS);
+    }
+
+    public int getRequestCount() {
+        return requests.size();
+    }
+
+    public void clear() {
+        requests.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] raw = readAll(exchange.getRequestBody());
+            Map<String, String> headers = new HashMap<>();
+            exchange.getRequestHeaders().forEach((key, value) -> headers.put(key.toLowerCase(), value.get(0)));
+            byte[] body = "gzip".equals(headers.get("content-encoding"))
+                    ? readAll(new GZIPInputStream(new ByteArrayInputStream(raw)))
+                    : raw;
+            RecordedRequest request = new RecordedRequest(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                    exchange.getRequestURI().getRawQuery(), headers, raw, body);
+            if (recording) {
+                requests.add(request);
+            }
+            StubResponse response = responder.respond(request);
+            byte[] payload = response.body;
+            if (response.gzip) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(payload);
+                }
+                payload = out.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            response.headers.forEach((key, value) -> exchange.getResponseHeaders().add(key, value));
+            exchange.sendResponseHeaders(response.code, payload.length == 0 ? -1 : payload.length);
+            if (payload.length > 0) {
+                // a response without a body has its stream closed already
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(payload);
+                }
+            }
+        } catch (Exception ex) {
+            log.error("Stub backend failed to handle request", ex);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @FunctionalInterface
+    public interface Responder {
+        StubResponse respond(RecordedRequest request) throws Exception;
+    }
+
+    @Getter
+    public static class RecordedRequest {
+        private final String method;
+        private final String path;
+        private final String query;
+        private final Map<String, String> headers;
+        private final byte[] rawBody;
+        private final byte[] body;
+
+        RecordedRequest(String method, String path, String query, Map<String, String> headers, byte[] rawBody, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+            this.rawBody = rawBody;
+            this.body = body;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase());
+        }
+
+        public String getBodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static class StubResponse {
+        private final int code;
+        private final byte[] body;
+        private final Map<String, String> headers = new HashMap<>();
+        private boolean gzip;
+
+        private StubResponse(int code, byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        public static StubResponse of(int code, String body) {
+            return new StubResponse(code, body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public StubResponse gzipped() {
+            this.gzip = true;
+            return this;
+        }
+
+        public StubResponse withHeader(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+}
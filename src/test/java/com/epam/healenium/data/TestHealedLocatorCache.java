@@ -0,0 +1,67 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.data;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class TestHealedLocatorCache {
+
+    @TempDir
+    Path storagePath;
+
+    @Test
+    public void testHealedLocatorSurvivesRestart() {
+        HealedLocatorCache cache = new HealedLocatorCache(config(true));
+        cache.put("page By.id: submit", "com.example.LoginPage.submit", "//android.widget.Button[@text = 'Submit']");
+
+        HealedLocatorCache restarted = new HealedLocatorCache(config(true));
+
+        Assert.assertTrue(restarted.contains("page By.id: submit"));
+        Assert.assertEquals(Optional.of("//android.widget.Button[@text = 'Submit']"),
+                restarted.get("page By.id: submit", "com.example.LoginPage.submit"));
+        Assert.assertFalse(restarted.get("page By.id: submit", "com.example.OtherPage.submit").isPresent());
+    }
+
+    @Test
+    public void testRemovedLocatorIsForgotten() {
+        HealedLocatorCache cache = new HealedLocatorCache(config(true));
+        cache.put("page By.id: submit", "caller", "//android.widget.Button");
+        cache.remove("page By.id: submit", "caller");
+
+        Assert.assertFalse(cache.contains("page By.id: submit"));
+        Assert.assertEquals(0, new HealedLocatorCache(config(true)).size());
+    }
+
+    @Test
+    public void testNotPersistedByDefault() {
+        new HealedLocatorCache(config(false)).put("page By.id: submit", "caller", "//android.widget.Button");
+
+        Assert.assertEquals(0, new HealedLocatorCache(config(false)).size());
+    }
+
+    private Config config(boolean persist) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("healed-cache-persist", persist);
+        values.put("healedCachePath", storagePath.resolve("healed-locators.json").toString());
+        return ConfigFactory.parseMap(values).withFallback(ConfigFactory.load());
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.data;
+
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.NodeBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class TestLocatorIndex {
+
+    @TempDir
+    Path storagePath;
+
+    @Test
+    public void testPathsSurviveRestart() {
+        LocatorIndex index = new LocatorIndex(config(true));
+        index.put("file:login_42", path("Submit"));
+        index.put("file:list_7", path("Item 7"));
+        index.save();
+
+        LocatorIndex restarted = new LocatorIndex(config(true));
+        Optional<List<Node>> nodes = restarted.get("file:login_42");
+
+        Assert.assertTrue(nodes.isPresent());
+        Assert.assertEquals(2, nodes.get().size());
+        Assert.assertEquals("Submit", nodes.get().get(1).getOtherAttributes().get("text"));
+        Assert.assertTrue(restarted.get("file:list_7").isPresent());
+        Assert.assertFalse(restarted.get("file:unknown").isPresent());
+    }
+
+    @Test
+    public void testLaterRunKeepsEarlierPaths() {
+        LocatorIndex first = new LocatorIndex(config(true));
+        first.put("file:login_42", path("Submit"));
+        first.save();
+        LocatorIndex second = new LocatorIndex(config(true));
+        second.put("file:list_7", path("Item 7"));
+        second.put("file:login_42", path("Sign in"));
+        second.save();
+
+        LocatorIndex third = new LocatorIndex(config(true));
+
+        Assert.assertTrue(third.get("file:list_7").isPresent());
+        Assert.assertEquals("Sign in", third.get("file:login_42").get().get(1).getOtherAttributes().get("text"));
+    }
+
+    @Test
+    public void testConcurrentRunsKeepEachOthersPaths() {
+        LocatorIndex first = new LocatorIndex(config(true));
+        LocatorIndex second = new LocatorIndex(config(true));
+        first.put("file:login_42", path("Sign in"), 2000);
+        first.put("file:list_7", path("Item 7"), 1000);
+        second.put("file:login_42", path("Submit"), 1000);
+        second.put("file:menu_3", path("Menu"), 1000);
+
+        first.save();
+        second.save();
+        LocatorIndex third = new LocatorIndex(config(true));
+
+        Assert.assertEquals("Sign in", third.get("file:login_42").get().get(1).getOtherAttributes().get("text"));
+        Assert.assertTrue(third.get("file:list_7").isPresent());
+        Assert.assertTrue(third.get("file:menu_3").isPresent());
+    }
+
+    @Test
+    public void testPathOlderThanItsSourceIsNotServed() {
+        LocatorIndex index = new LocatorIndex(config(true));
+        index.put("file:login_42", path("Submit"), 1000);
+
+        Assert.assertTrue(index.get("file:login_42", 1000).isPresent());
+        Assert.assertFalse(index.get("file:login_42", 2000).isPresent());
+    }
+
+    @Test
+    public void testChangedFileWinsOverIndexedPath() throws Exception {
+        Config config = storageConfig();
+        FileSystemPathStorage storage = new FileSystemPathStorage(config, new LocatorIndex(config));
+        storage.persistLastValidPath("submit", "login", path("Submit"));
+        Assert.assertEquals("Submit", storage.getLastValidPath("submit", "login").get(1).getOtherAttributes().get("text"));
+
+        // another process saves a newer path
+        new FileSystemPathStorage(config).persistLastValidPath("submit", "login", path("Sign in"));
+        Path file = storagePath.resolve("selenium").resolve(storage.getKey("submit", "login"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+
+        Assert.assertEquals("Sign in", storage.getLastValidPath("submit", "login").get(1).getOtherAttributes().get("text"));
+        Files.delete(file);
+        Assert.assertFalse(storage.isNodePathPersisted("submit", "login"));
+        Assert.assertTrue(storage.getLastValidPath("submit", "login").isEmpty());
+    }
+
+    @Test
+    public void testDisabledIndexWritesNothing() {
+        LocatorIndex index = new LocatorIndex(config(false));
+        index.put("file:login_42", path("Submit"));
+        index.save();
+
+        Assert.assertFalse(index.get("file:login_42").isPresent());
+        Assert.assertFalse(Files.exists(storagePath.resolve("index.bin")));
+    }
+
+    private List<Node> path(String text) {
+        Map<String, String> root = new HashMap<>();
+        root.put("class", "android.widget.FrameLayout");
+        root.put("bounds", "[0,0][1080,2340]");
+        Map<String, String> button = new HashMap<>();
+        button.put("class", "android.widget.Button");
+        button.put("text", text);
+        button.put("resource-id", "com.example:id/submit");
+        return Arrays.asList(
+            new NodeBuilder().setTag("android.widget.FrameLayout").setIndex(0).addContent("").setAttributes(root).build(),
+            new NodeBuilder().setTag("android.widget.Button").setIndex(3).addContent("").setAttributes(button).build());
+    }
+
+    private Config storageConfig() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("basePath", storagePath.resolve("selenium").toString());
+        values.put("reportPath", storagePath.resolve("reports").toString());
+        return ConfigFactory.parseMap(values).withFallback(config(true));
+    }
+
+    private Config config(boolean enabled) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("warm-start", enabled);
+        values.put("warmStartPath", storagePath.resolve("index.bin").toString());
+        return ConfigFactory.parseMap(values);
+    }
+}
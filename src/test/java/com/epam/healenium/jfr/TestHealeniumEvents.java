@@ -0,0 +1,64 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestHealeniumEvents {
+
+    @TempDir
+    Path recordingPath;
+
+    @Test
+    public void testStageIsRecorded() throws Exception {
+        Path file = recordingPath.resolve("heal.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.epam.healenium.Parse");
+            recording.start();
+            HealeniumEvents.begin(Stage.PARSE)
+                .setLocator("By.id: submit")
+                .setNodeCount(42)
+                .setPayloadSize(4096)
+                .setOutcome("scored")
+                .commit();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        Assert.assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        Assert.assertEquals("com.epam.healenium.Parse", event.getEventType().getName());
+        Assert.assertEquals("By.id: submit", event.getString("locator"));
+        Assert.assertEquals(42, event.getInt("nodeCount"));
+        Assert.assertEquals(4096, event.getLong("payloadSize"));
+        Assert.assertEquals("scored", event.getString("outcome"));
+    }
+
+    @Test
+    public void testStageIsDisabledWithoutRecording() {
+        StageEvent event = HealeniumEvents.begin(Stage.VALIDATION);
+
+        Assert.assertFalse(event.isEnabled());
+        event.setLocator("By.id: submit").commit();
+    }
+}
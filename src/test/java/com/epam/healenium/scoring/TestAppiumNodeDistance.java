@@ -0,0 +1,102 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import com.epam.healenium.treecomparing.JsoupXMLParser;
+import com.epam.healenium.treecomparing.Node;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+public class TestAppiumNodeDistance {
+
+    private final AppiumNodeDistance distance = new AppiumNodeDistance();
+
+    @Test
+    public void testSymbolsAreInterned() {
+        SymbolTable symbols = new SymbolTable();
+
+        long id = symbols.intern("android.widget.TextView");
+
+        Assert.assertEquals(id, symbols.intern(new String("android.widget.TextView")));
+        Assert.assertNotEquals(id, symbols.intern("android.widget.Button"));
+        Assert.assertEquals(SymbolTable.EMPTY, symbols.intern(""));
+        Assert.assertEquals(2, symbols.size());
+    }
+
+    @Test
+    public void testFullSymbolTableStopsGrowing() {
+        SymbolTable symbols = new SymbolTable(1);
+        long id = symbols.intern("android.widget.TextView");
+
+        long overflow = symbols.intern("android.widget.Button");
+
+        Assert.assertEquals(1, symbols.size());
+        Assert.assertEquals(id, symbols.intern("android.widget.TextView"));
+        Assert.assertEquals(overflow, symbols.intern(new String("android.widget.Button")));
+        Assert.assertNotEquals(overflow, symbols.intern("android.widget.ImageView"));
+        Assert.assertNotEquals(id, overflow);
+    }
+
+    @Test
+    public void testTextsWithSameStringHashAreToldApart() {
+        Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+        NodeFeatures stored = features("<android.widget.TextView text=\"Aa\" bounds=\"[0,0][100,50]\"/>");
+        NodeFeatures candidate = features("<android.widget.TextView text=\"BB\" bounds=\"[0,0][100,50]\"/>");
+
+        Assert.assertTrue(distance.similarity(stored, candidate) < 1);
+    }
+
+    @Test
+    public void testSameViewIsFullySimilar() {
+        String view = "<android.widget.TextView resource-id=\"com.example:id/title\" text=\"Title\" "
+            + "bounds=\"[0,0][100,50]\" clickable=\"false\" enabled=\"true\"/>";
+
+        Assert.assertEquals(1.0, distance.similarity(features(view), features(view)), 1e-9);
+    }
+
+    @Test
+    public void testRenamedViewIsLessSimilar() {
+        NodeFeatures stored = features("<android.widget.TextView resource-id=\"com.example:id/title\" text=\"Title\" "
+            + "bounds=\"[0,0][100,50]\" enabled=\"true\"/>");
+        NodeFeatures renamed = features("<android.widget.TextView resource-id=\"com.example:id/heading\" text=\"Title\" "
+            + "bounds=\"[0,0][100,50]\" enabled=\"true\"/>");
+        NodeFeatures other = features("<android.widget.Button resource-id=\"com.example:id/submit\" text=\"OK\" "
+            + "bounds=\"[0,60][100,110]\" enabled=\"false\"/>");
+
+        double renamedSimilarity = distance.similarity(stored, renamed);
+        Assert.assertTrue(renamedSimilarity < 1);
+        Assert.assertTrue(renamedSimilarity > distance.similarity(stored, other));
+    }
+
+    private NodeFeatures features(String source) {
+        Node root = new JsoupXMLParser().parse(new ByteArrayInputStream(
+            ("<hierarchy>" + source + "</hierarchy>").getBytes(StandardCharsets.UTF_8)));
+        return NodeFeatures.of(find(root));
+    }
+
+    private Node find(Node node) {
+        if (node.getTag().startsWith("android.")) {
+            return node;
+        }
+        for (Node child : node.getChildren()) {
+            Node found = find(child);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+}
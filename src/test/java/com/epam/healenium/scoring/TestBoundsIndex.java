@@ -0,0 +1,65 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import com.epam.healenium.HealDeadline;
+import com.epam.healenium.config.FakeHierarchy;
+import com.epam.healenium.treecomparing.JsoupXMLParser;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.Scored;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class TestBoundsIndex {
+
+    @Test
+    public void testNearReturnsNearestFirst() {
+        CompactTree tree = PageSourceScanner.scan(FakeHierarchy.list("com.example", 50).getPageSource());
+        NodeFeatures position = tree.features(find(tree, "Item 20"));
+
+        int[] nearby = tree.positions().near(position, 300);
+
+        Assert.assertTrue(nearby.length > 0);
+        Assert.assertTrue(nearby.length < tree.positions().size());
+        Assert.assertEquals(0, tree.features(nearby[0]).distance(position), 1e-9);
+        for (int node : nearby) {
+            Assert.assertTrue(tree.features(node).distance(position) <= 300);
+        }
+    }
+
+    @Test
+    public void testShortlistFindsRenamedView() {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 50);
+        CompactTree before = PageSourceScanner.scan(hierarchy.getPageSource());
+        List<Node> path = before.path(find(before, "Item 20"));
+
+        hierarchy.setAttribute("row_title", "resource-id", "com.example:id/row_heading");
+        CompactTree after = PageSourceScanner.scan(hierarchy.getPageSource());
+        List<Scored<Node>> result = new PathScorer(new AppiumNodeDistance())
+            .find(path, after, new JsoupXMLParser(), 3, HealDeadline.unbounded());
+
+        Assert.assertFalse(result.isEmpty());
+        Assert.assertEquals("Item 20", result.get(0).getValue().getOtherAttributes().get("text"));
+    }
+
+    private int find(CompactTree tree, String text) {
+        for (int node = 0; node < tree.size(); node++) {
+            if (text.equals(tree.attribute(node, "text"))) {
+                return node;
+            }
+        }
+        return CompactTree.NONE;
+    }
+}
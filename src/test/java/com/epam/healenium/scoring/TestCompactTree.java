@@ -0,0 +1,183 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import com.epam.healenium.config.FakeHierarchy;
+import com.epam.healenium.treecomparing.JsoupXMLParser;
+import com.epam.healenium.treecomparing.Node;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class TestCompactTree {
+
+    @Test
+    public void testScanKeepsStructureAndAttributes() {
+        String source = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- screen -->"
+            + "<hierarchy rotation='0'><android.widget.FrameLayout bounds=\"[0,0][1080,1920]\">"
+            + "<android.widget.TextView text=\"Tom &amp; Jerry &#x263A;\" bounds=\"[0,0][100,50]\"/>"
+            + "<android.widget.Button text=\"OK\" bounds=\"[0,60][100,110]\"></android.widget.Button>"
+            + "</android.widget.FrameLayout></hierarchy>";
+
+        CompactTree tree = PageSourceScanner.scan(source);
+
+        Assert.assertEquals(4, tree.size());
+        Assert.assertEquals("hierarchy", tree.tag(0));
+        Assert.assertEquals("0", tree.attribute(0, "rotation"));
+        Assert.assertEquals(CompactTree.NONE, tree.parent(0));
+        int layout = tree.firstChild(0);
+        int text = tree.firstChild(layout);
+        int button = tree.nextSibling(text);
+        Assert.assertEquals("Tom & Jerry \u263A", tree.attribute(text, "text"));
+        Assert.assertEquals("android.widget.Button", tree.tag(button));
+        Assert.assertEquals(layout, tree.parent(button));
+        Assert.assertEquals(CompactTree.NONE, tree.nextSibling(button));
+        Assert.assertNull(tree.attribute(button, "resource-id"));
+    }
+
+    @Test
+    public void testNodeOfTreeWithoutHierarchyRoot() {
+        String source = "<android.widget.LinearLayout bounds=\"[0,0][1080,120]\">"
+            + "<android.widget.TextView text=\"Item 0\" bounds=\"[40,10][1040,60]\"/>"
+            + "</android.widget.LinearLayout>";
+        CompactTree tree = PageSourceScanner.scan(source);
+
+        Node node = tree.toNode(tree.firstChild(0), new JsoupXMLParser());
+
+        Assert.assertEquals("android.widget.TextView", node.getTag());
+        Assert.assertEquals("Item 0", node.getOtherAttributes().get("text"));
+        Assert.assertEquals("android.widget.LinearLayout", node.getParent().getTag());
+    }
+
+    @Test
+    public void testScanMatchesParsedTree() {
+        String source = FakeHierarchy.list("com.example", 30).getPageSource();
+
+        CompactTree tree = PageSourceScanner.scan(source);
+        Node parsed = new JsoupXMLParser().parse(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)));
+
+        int views = 0;
+        for (int node = 0; node < tree.size(); node++) {
+            views += tree.attribute(node, "bounds") != null ? 1 : 0;
+        }
+        Assert.assertEquals(countViews(parsed), views);
+    }
+
+    @Test
+    public void testNodeViewsKeepAncestors() {
+        CompactTree tree = PageSourceScanner.scan(FakeHierarchy.list("com.example", 30).getPageSource());
+        int node = CompactTree.NONE;
+        for (int i = 0; i < tree.size() && node == CompactTree.NONE; i++) {
+            node = "Item 12".equals(tree.attribute(i, "text")) ? i : CompactTree.NONE;
+        }
+
+        Node view = tree.toNode(node, new JsoupXMLParser());
+        List<Node> path = tree.path(node);
+
+        Assert.assertEquals("Item 12", view.getOtherAttributes().get("text"));
+        Assert.assertEquals(tree.tag(tree.parent(node)), view.getParent().getTag());
+        Assert.assertEquals(tree.tag(0), path.get(0).getTag());
+        Assert.assertEquals("Item 12", path.get(path.size() - 1).getOtherAttributes().get("text"));
+        int depth = 0;
+        for (Node current = view; current != null; current = current.getParent()) {
+            depth++;
+        }
+        Assert.assertTrue(depth >= path.size());
+    }
+
+    @Test
+    public void testUnchangedStartTagsAreReused() {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 30);
+        StartTagCache cache = new StartTagCache();
+        CompactTree before = PageSourceScanner.scan(hierarchy.getPageSource(), cache);
+
+        hierarchy.setAttribute("title", "text", "Changed");
+        CompactTree after = PageSourceScanner.scan(hierarchy.getPageSource(), cache);
+
+        int listBefore = byResourceId(before, "com.example:id/list");
+        int listAfter = byResourceId(after, "com.example:id/list");
+        Assert.assertSame(before.features(listBefore), after.features(listAfter));
+        int titleBefore = byResourceId(before, "com.example:id/title");
+        int titleAfter = byResourceId(after, "com.example:id/title");
+        Assert.assertNotSame(before.features(titleBefore), after.features(titleAfter));
+        Assert.assertEquals("Changed", after.attribute(byResourceId(after, "com.example:id/title"), "text"));
+    }
+
+    @Test
+    public void testUnchangedSubtreesAreCopied() {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 30);
+        StartTagCache cache = new StartTagCache();
+        PageSourceScanner.scan(hierarchy.getPageSource(), cache);
+
+        hierarchy.setAttribute("title", "text", "Changed");
+        CompactTree after = PageSourceScanner.scan(hierarchy.getPageSource(), cache);
+
+        assertSameTree(PageSourceScanner.scan(hierarchy.getPageSource()), after);
+        Assert.assertEquals("Changed", after.attribute(byResourceId(after, "com.example:id/title"), "text"));
+        // only the title and its ancestors are read again
+        Assert.assertTrue(cache.copiedNodes() >= after.size() - 6);
+
+        PageSourceScanner.scan(hierarchy.getPageSource(), cache);
+        Assert.assertEquals(after.size(), cache.copiedNodes());
+    }
+
+    @Test
+    public void testElementsWithStrayEndTagsAreReadAgain() {
+        StartTagCache cache = new StartTagCache();
+        PageSourceScanner.scan("<hierarchy><a><b></c><d/></b></a><e text=\"1\"/></hierarchy>", cache);
+
+        String changed = "<hierarchy><a><b></c><d/></b></a><e text=\"2\"/></hierarchy>";
+        CompactTree after = PageSourceScanner.scan(changed, cache);
+
+        assertSameTree(PageSourceScanner.scan(changed), after);
+    }
+
+    private void assertSameTree(CompactTree expected, CompactTree actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int node = 0; node < expected.size(); node++) {
+            Assert.assertEquals(expected.tag(node), actual.tag(node));
+            Assert.assertEquals(expected.text(node), actual.text(node));
+            Assert.assertEquals(expected.parent(node), actual.parent(node));
+            Assert.assertEquals(expected.firstChild(node), actual.firstChild(node));
+            Assert.assertEquals(expected.nextSibling(node), actual.nextSibling(node));
+            Assert.assertEquals(expected.path(node).get(expected.path(node).size() - 1).getIndex(),
+                actual.path(node).get(actual.path(node).size() - 1).getIndex());
+            Assert.assertEquals(expected.attributeCount(node), actual.attributeCount(node));
+            for (int i = 0; i < expected.attributeCount(node); i++) {
+                Assert.assertEquals(expected.attributeName(node, i), actual.attributeName(node, i));
+                Assert.assertEquals(expected.attributeValue(node, i), actual.attributeValue(node, i));
+            }
+            Assert.assertEquals(1.0, new AppiumNodeDistance().similarity(expected.features(node), actual.features(node)), 1e-9);
+        }
+    }
+
+    private int byResourceId(CompactTree tree, String resourceId) {
+        for (int node = 0; node < tree.size(); node++) {
+            if (resourceId.equals(tree.attribute(node, "resource-id"))) {
+                return node;
+            }
+        }
+        return CompactTree.NONE;
+    }
+
+    private int countViews(Node node) {
+        int result = node.getOtherAttributes().containsKey("bounds") ? 1 : 0;
+        for (Node child : node.getChildren()) {
+            result += countViews(child);
+        }
+        return result;
+    }
+}
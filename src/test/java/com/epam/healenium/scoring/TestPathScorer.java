@@ -0,0 +1,104 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.scoring;
+
+import com.epam.healenium.HealDeadline;
+import com.epam.healenium.config.FakeHierarchy;
+import com.epam.healenium.treecomparing.JsoupXMLParser;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.Scored;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+
+public class TestPathScorer {
+
+    private final PathScorer scorer = new PathScorer(new AppiumNodeDistance());
+
+    @Test
+    public void testRenamedViewIsTheBestCandidate() {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 20);
+        List<Node> path = pathTo(parse(hierarchy.getPageSource()), "Item 7");
+
+        hierarchy.setAttribute("row_title", "resource-id", "com.example:id/row_heading");
+        List<Scored<Node>> result = scorer.find(path, parse(hierarchy.getPageSource()), 3, HealDeadline.unbounded());
+
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals("Item 7", result.get(0).getValue().getOtherAttributes().get("text"));
+        Assert.assertTrue(result.get(0).getScore() >= result.get(1).getScore());
+    }
+
+    @Test
+    public void testExpiredDeadlineReturnsBestSoFar() throws Exception {
+        FakeHierarchy hierarchy = FakeHierarchy.list("com.example", 500);
+        Node tree = parse(hierarchy.getPageSource());
+        List<Node> path = pathTo(tree, "Item 499");
+        HealDeadline deadline = HealDeadline.start(Duration.ofNanos(1));
+        Thread.sleep(1);
+
+        List<Scored<Node>> result = scorer.find(path, tree, 3, deadline);
+
+        Assert.assertTrue(deadline.isExceeded());
+        Assert.assertFalse(result.isEmpty());
+        Assert.assertTrue(result.size() <= 3);
+    }
+
+    @Test
+    public void testCloseMatchNearOldPositionDoesNotHideBetterOneElsewhere() {
+        String flags = "checkable=\"false\" checked=\"false\" clickable=\"true\" enabled=\"true\" focusable=\"true\" "
+            + "scrollable=\"false\" long-clickable=\"false\" password=\"false\" selected=\"false\" displayed=\"true\"";
+        String inverted = "checkable=\"true\" checked=\"true\" clickable=\"false\" enabled=\"false\" focusable=\"false\" "
+            + "scrollable=\"true\" long-clickable=\"true\" password=\"true\" selected=\"true\" displayed=\"false\"";
+        String button = "<android.widget.Button resource-id=\"com.example:id/submit\" text=\"Submit\" content-desc=\"Submit\" ";
+        String stored = "<hierarchy><android.widget.FrameLayout bounds=\"[0,0][1080,2340]\">"
+            + button + "bounds=\"[0,0][100,50]\" " + flags + "/>"
+            + "</android.widget.FrameLayout></hierarchy>";
+        String current = "<hierarchy><android.widget.FrameLayout bounds=\"[0,0][1080,2340]\">"
+            + button + "bounds=\"[0,0][100,50]\" " + inverted + "/>"
+            + button + "bounds=\"[0,450][100,500]\" " + flags + "/>"
+            + "</android.widget.FrameLayout></hierarchy>";
+        List<Node> path = pathTo(parse(stored), "Submit");
+
+        List<Scored<Node>> result = scorer.find(path, PageSourceScanner.scan(current), new JsoupXMLParser(), 2,
+            HealDeadline.unbounded());
+
+        Assert.assertEquals("[0,450][100,500]", result.get(0).getValue().getOtherAttributes().get("bounds"));
+        Assert.assertTrue(result.get(1).getScore() >= 0.9);
+    }
+
+    private Node parse(String source) {
+        return new JsoupXMLParser().parse(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private List<Node> pathTo(Node node, String text) {
+        if (text.equals(node.getOtherAttributes().get("text"))) {
+            LinkedList<Node> path = new LinkedList<>();
+            for (Node current = node; current != null; current = current.getParent()) {
+                path.addFirst(current);
+            }
+            return path;
+        }
+        for (Node child : node.getChildren()) {
+            List<Node> path = pathTo(child, text);
+            if (path != null) {
+                return path;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,407 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.soak;
+
+import com.epam.healenium.appium.DriverWrapper;
+import com.epam.healenium.config.FakeAppiumServer;
+import com.epam.healenium.config.FakeHierarchy;
+import com.epam.healenium.config.StubBackend;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.AndroidElement;
+import lombok.Data;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Soak and scaling harness: runs a growing number of concurrent wrapped sessions against a {@link FakeAppiumServer}
+ * and a local backend stand-in, and reports how the wrapper behaves as the session count grows.
+ * <p>Every session runs a mix of lookups that are found, lookups by a locator broken at the start of the run, which
+ * are healed once and then served from the healed locators, and {@code findElements} lists. Each step runs the same
+ * mix on unwrapped sessions first, the latency the wrapper adds is the difference of the two runs. For each step it
+ * reports the throughput, the added p50 and p99 latency, the allocation rate of the session threads, the GC time and
+ * the thread counts.</p>
+ *
+ * <pre>
+ * java -cp &lt;test classpath&gt; com.epam.healenium.soak.SoakHarness [--sessions 1,2,4,8] [--seconds 10]
+ *      [--rows 20] [--latency-micros 500] [--mix 60,20,20] [--backend stub|embedded|files]
+ * </pre>
+ */
+@Slf4j
+public class SoakHarness {
+
+    private static final By FOUND = By.id("title");
+    private static final By BROKEN = By.id("submit");
+    private static final By LIST = By.id("row_title");
+    private static final int WARM_UP_OPERATIONS = 20;
+
+    private final Settings settings;
+    private final Path workPath;
+
+    public SoakHarness(Settings settings, Path workPath) {
+        this.settings = settings;
+        this.workPath = workPath;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = new Settings();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sessions":
+                    settings.setSessions(Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray());
+                    break;
+                case "--seconds":
+                    settings.setMillis(Long.parseLong(args[i + 1]) * 1000);
+                    break;
+                case "--rows":
+                    settings.setRows(Integer.parseInt(args[i + 1]));
+                    break;
+                case "--latency-micros":
+                    settings.setLatencyMicros(Long.parseLong(args[i + 1]));
+                    break;
+                case "--mix":
+                    settings.setMix(Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray());
+                    break;
+                case "--backend":
+                    settings.setBackend(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        List<Step> steps = new SoakHarness(settings, Files.createTempDirectory("healenium-soak")).run();
+        System.out.println(Step.HEADER);
+        steps.forEach(System.out::println);
+        System.exit(0);
+    }
+
+    /**
+     * @return the results of the steps, in the order of the session counts
+     */
+    public List<Step> run() throws Exception {
+        List<Step> steps = new ArrayList<>();
+        try (FakeAppiumServer appium = FakeAppiumServer.start(() -> FakeHierarchy.list("com.example", settings.getRows()),
+                settings.getLatencyMicros());
+             StubBackend backend = StubBackend.start()) {
+            backend.setRecording(false);
+            backend.respondWith(storingPaths());
+            Config config = config(backend);
+            for (int sessions : settings.getSessions()) {
+                Run raw = measure(appium, config, sessions, false);
+                Run wrapped = measure(appium, config, sessions, true);
+                Step step = new Step(sessions, wrapped, raw);
+                log.info("{}\n{}", Step.HEADER, step);
+                steps.add(step);
+            }
+        }
+        return steps;
+    }
+
+    private Run measure(FakeAppiumServer appium, Config config, int sessions, boolean wrap) throws Exception {
+        List<AndroidDriver<AndroidElement>> drivers = new ArrayList<>();
+        List<FakeHierarchy> hierarchies = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            AndroidDriver<AndroidElement> driver = appium.driver();
+            hierarchies.add(appium.getHierarchy(driver.getSessionId().toString()));
+            drivers.add(wrap ? DriverWrapper.wrap(driver, config) : driver);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        CountDownLatch ready = new CountDownLatch(sessions);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong allocated = new AtomicLong();
+        List<Future<Latencies>> results = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            AndroidDriver<AndroidElement> driver = drivers.get(i);
+            FakeHierarchy hierarchy = hierarchies.get(i);
+            results.add(executor.submit(() -> {
+                // paths and healed locators are kept per caller, so the session is warmed up by the code that measures it
+                try {
+                    warmUp(driver, hierarchy);
+                } finally {
+                    ready.countDown();
+                }
+                Latencies latencies = new Latencies();
+                start.await();
+                long allocationStart = allocatedBytes();
+                long deadline = System.nanoTime() + settings.getMillis() * 1_000_000;
+                while (System.nanoTime() < deadline) {
+                    Operation operation = pick();
+                    long started = System.nanoTime();
+                    boolean done = perform(driver, operation);
+                    latencies.add(System.nanoTime() - started);
+                    if (!done && (wrap || operation != Operation.BROKEN)) {
+                        latencies.failures++;
+                    }
+                }
+                allocated.addAndGet(allocatedBytes() - allocationStart);
+                return latencies;
+            }));
+        }
+        ready.await();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long gcStart = gcMillis();
+        long started = System.nanoTime();
+        start.countDown();
+        Latencies all = new Latencies();
+        for (Future<Latencies> result : results) {
+            all.addAll(result.get());
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        Run run = new Run(all, seconds, allocated.get(), gcMillis() - gcStart, threads.getThreadCount(), threads.getPeakThreadCount());
+        executor.shutdown();
+        drivers.forEach(AndroidDriver::quit);
+        return run;
+    }
+
+    /**
+     * Saves the path of the locator that is broken next, breaks it and runs a few operations, so that it is healed
+     * before the run
+     */
+    private void warmUp(AndroidDriver<AndroidElement> driver, FakeHierarchy hierarchy) {
+        driver.findElement(BROKEN);
+        hierarchy.setAttribute("submit", "resource-id", "com.example:id/send");
+        for (int j = 0; j < WARM_UP_OPERATIONS; j++) {
+            perform(driver, pick());
+        }
+    }
+
+    private Operation pick() {
+        int[] mix = settings.getMix();
+        int value = ThreadLocalRandom.current().nextInt(mix[0] + mix[1] + mix[2]);
+        return value < mix[0] ? Operation.FIND : value < mix[0] + mix[1] ? Operation.BROKEN : Operation.LIST;
+    }
+
+    /**
+     * @return true if the lookup found what it looked for
+     */
+    private static boolean perform(AndroidDriver<AndroidElement> driver, Operation operation) {
+        try {
+            switch (operation) {
+                case FIND:
+                    return driver.findElement(FOUND) != null;
+                case BROKEN:
+                    return driver.findElement(BROKEN) != null;
+                default:
+                    return !driver.findElements(LIST).isEmpty();
+            }
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    private Config config(StubBackend backend) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("backend-integration", !"files".equals(settings.getBackend()));
+        values.put("backend-type", "embedded".equals(settings.getBackend()) ? "embedded" : "http");
+        values.put("serverHost", "localhost");
+        values.put("serverPort", backend.getPort());
+        values.put("basePath", workPath.resolve("selenium").toString());
+        values.put("reportPath", workPath.resolve("reports").toString());
+        values.put("screenshotPath", workPath.resolve("screenshots").toString() + "/");
+        values.put("spoolPath", workPath.resolve("spool").toString());
+        values.put("httpCachePath", workPath.resolve("http-cache").toString());
+        values.put("embeddedBackendPath", workPath.resolve("backend").toString());
+        return ConfigFactory.parseMap(values).withFallback(ConfigFactory.load());
+    }
+
+    /**
+     * Answers last valid path lookups with the paths saved before, like hlm-backend does
+     */
+    private static StubBackend.Responder storingPaths() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, String> paths = new ConcurrentHashMap<>();
+        return request -> {
+            if ("POST".equals(request.getMethod()) && "/healenium".equals(request.getPath())) {
+                JsonNode selector = objectMapper.readTree(request.getBodyAsString());
+                paths.put(selector.path("className").asText() + "|" + selector.path("methodName").asText() + "|"
+                        + selector.path("locator").asText(), selector.path("nodePath").toString());
+            } else if ("GET".equals(request.getMethod()) && request.getQuery() != null) {
+                Map<String, String> query = query(request.getQuery());
+                return StubBackend.StubResponse.of(200, paths.getOrDefault(query.get("className") + "|"
+                        + query.get("methodName") + "|" + query.get("locator"), ""));
+            }
+            return StubBackend.StubResponse.of(200, "");
+        };
+    }
+
+    private static Map<String, String> query(String query) throws UnsupportedEncodingException {
+        Map<String, String> result = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                result.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8.name()),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8.name()));
+            }
+        }
+        return result;
+    }
+
+    private static long gcMillis() {
+        long result = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(collector.getCollectionTime(), 0);
+        }
+        return result;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, 0 where the JVM doesn't tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private enum Operation {
+        FIND, BROKEN, LIST
+    }
+
+    @Accessors(chain = true)
+    @Data
+    public static class Settings {
+
+        private int[] sessions = {1, 2, 4, 8};
+        private long millis = 10_000;
+        private int rows = 20;
+        private long latencyMicros = 500;
+        // percentages of found lookups, broken locators and lists
+        private int[] mix = {60, 20, 20};
+        // stub, embedded or files
+        private String backend = "stub";
+    }
+
+    /**
+     * The results of one session count
+     */
+    @Getter
+    public static class Step {
+
+        static final String HEADER = String.format("%8s %10s %10s %10s %12s %8s %8s %8s %9s",
+                "sessions", "ops/s", "p50 +us", "p99 +us", "alloc MB/s", "gc ms", "threads", "peak", "failures");
+
+        private final int sessions;
+        private final long operations;
+        private final double throughput;
+        private final long addedP50Micros;
+        private final long addedP99Micros;
+        private final double allocationMegabytesPerSecond;
+        private final long gcMillis;
+        private final int threads;
+        private final int peakThreads;
+        private final long failures;
+
+        Step(int sessions, Run wrapped, Run raw) {
+            this.sessions = sessions;
+            this.operations = wrapped.latencies.size;
+            this.throughput = wrapped.latencies.size / wrapped.seconds;
+            this.addedP50Micros = (wrapped.latencies.percentile(0.5) - raw.latencies.percentile(0.5)) / 1000;
+            this.addedP99Micros = (wrapped.latencies.percentile(0.99) - raw.latencies.percentile(0.99)) / 1000;
+            this.allocationMegabytesPerSecond = wrapped.allocated / wrapped.seconds / (1024 * 1024);
+            this.gcMillis = wrapped.gcMillis;
+            this.threads = wrapped.threads;
+            this.peakThreads = wrapped.peakThreads;
+            this.failures = wrapped.latencies.failures;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8d %10.0f %10d %10d %12.1f %8d %8d %8d %9d", sessions, throughput, addedP50Micros,
+                    addedP99Micros, allocationMegabytesPerSecond, gcMillis, threads, peakThreads, failures);
+        }
+    }
+
+    private static class Run {
+        private final Latencies latencies;
+        private final double seconds;
+        private final long allocated;
+        private final long gcMillis;
+        private final int threads;
+        private final int peakThreads;
+
+        Run(Latencies latencies, double seconds, long allocated, long gcMillis, int threads, int peakThreads) {
+            this.latencies = latencies;
+            this.seconds = seconds;
+            this.allocated = allocated;
+            this.gcMillis = gcMillis;
+            this.threads = threads;
+            this.peakThreads = peakThreads;
+        }
+    }
+
+    /**
+     * Lookup latencies in nanoseconds, kept unboxed so that recording them doesn't add to the measured allocations
+     */
+    private static class Latencies {
+        private long[] values = new long[1 << 14];
+        private int size;
+        private long failures;
+        private boolean sorted;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+            sorted = false;
+        }
+
+        void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+            failures += other.failures;
+        }
+
+        long percentile(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            if (!sorted) {
+                Arrays.sort(values, 0, size);
+                sorted = true;
+            }
+            return values[(int) (percentile * (size - 1))];
+        }
+    }
+}
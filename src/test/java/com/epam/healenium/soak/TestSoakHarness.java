@@ -0,0 +1,45 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.soak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestSoakHarness {
+
+    @TempDir
+    Path workPath;
+
+    @Test
+    public void testStepsReportEverySessionCount() throws Exception {
+        SoakHarness.Settings settings = new SoakHarness.Settings()
+                .setSessions(new int[]{1, 2})
+                .setMillis(500)
+                .setRows(5)
+                .setLatencyMicros(0);
+
+        List<SoakHarness.Step> steps = new SoakHarness(settings, workPath).run();
+
+        Assert.assertEquals(2, steps.size());
+        for (SoakHarness.Step step : steps) {
+            Assert.assertTrue(step.getOperations() > 0);
+            Assert.assertTrue(step.getThroughput() > 0);
+            Assert.assertEquals("Broken locators are healed in every session", 0, step.getFailures());
+        }
+        Assert.assertEquals(2, steps.get(1).getSessions());
+    }
+}
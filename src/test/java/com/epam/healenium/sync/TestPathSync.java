@@ -0,0 +1,217 @@
+/**
+ * Healenium-appium Copyright (C) 2019 EPAM
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.healenium.sync;
+
+import com.epam.healenium.client.RestClient;
+import com.epam.healenium.config.StubBackend;
+import com.epam.healenium.data.FileSystemPathStorage;
+import com.epam.healenium.data.PathMetadata;
+import com.epam.healenium.treecomparing.Node;
+import com.epam.healenium.treecomparing.NodeBuilder;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openqa.selenium.By;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class TestPathSync {
+
+    @TempDir
+    Path workPath;
+
+    private StubBackend backend;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        backend = StubBackend.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        backend.close();
+    }
+
+    @Test
+    public void testPushSendsPathsWithMetadata() throws Exception {
+        FileSystemPathStorage storage = new FileSystemPathStorage(config("source"));
+        store(storage, "submit", "Submit");
+        store(storage, "cancel", "Cancel");
+        PathSync sync = new PathSync(storage, new RestClient(config("source")), 2, 1, null);
+
+        PathSync.Result result = sync.push();
+
+        Assert.assertEquals(2, result.getDone());
+        Assert.assertEquals(0, result.getFailed());
+        String first = backend.takeRequest().getBodyAsString() + backend.takeRequest().getBodyAsString();
+        Assert.assertTrue(first.contains("\"locator\":\"submit\""));
+        Assert.assertTrue(first.contains("\"locator\":\"cancel\""));
+        Assert.assertTrue(first.contains("\"className\":\"com.example.LoginPage\""));
+    }
+
+    @Test
+    public void testExportImportRoundTrip() throws Exception {
+        FileSystemPathStorage source = new FileSystemPathStorage(config("source"));
+        store(source, "submit", "Submit");
+        StringWriter out = new StringWriter();
+        new PathSync(source, new RestClient(config("source")), 2, 10, null).export(out);
+
+        FileSystemPathStorage target = new FileSystemPathStorage(config("target"));
+        PathSync.Result result = new PathSync(target, new RestClient(config("target")), 2, 10, null)
+                .importRecords(new BufferedReader(new StringReader(out.toString())), false);
+
+        Assert.assertEquals(1, result.getDone());
+        List<Node> nodes = target.getLastValidPath(By.id("submit"), "login");
+        Assert.assertEquals(2, nodes.size());
+        Assert.assertEquals("Submit", nodes.get(1).getOtherAttributes().get("text"));
+        Assert.assertEquals("By.id: submit", target.getMetadata(target.getKey(By.id("submit"), "login")).get().getLocator());
+    }
+
+    @Test
+    public void testCheckpointSkipsDoneRecords() throws Exception {
+        FileSystemPathStorage storage = new FileSystemPathStorage(config("source"));
+        store(storage, "submit", "Submit");
+        store(storage, "cancel", "Cancel");
+        store(storage, "help", "Help");
+        Path checkpoint = workPath.resolve("sync.checkpoint");
+        Files.write(checkpoint, "command=export\nfile=\nread=2\nfailed=\n".getBytes(StandardCharsets.UTF_8));
+        StringWriter out = new StringWriter();
+
+        PathSync.Result result = new PathSync(storage, new RestClient(config("source")), 1, 1, checkpoint).export(out);
+
+        Assert.assertEquals(1, result.getDone());
+        Assert.assertEquals(1, out.toString().split("\n").length);
+        Assert.assertEquals("3", checkpoint(checkpoint).getProperty("read"));
+    }
+
+    @Test
+    public void testFailedRecordsAreRetried() throws Exception {
+        FileSystemPathStorage storage = new FileSystemPathStorage(config("source"));
+        store(storage, "submit", "Submit");
+        store(storage, "cancel", "Cancel");
+        store(storage, "help", "Help");
+        Path checkpoint = workPath.resolve("sync.checkpoint");
+        backend.respondWith(request -> StubBackend.StubResponse.of(
+                request.getBodyAsString().contains("\"locator\":\"cancel\"") ? 500 : 200, ""));
+
+        PathSync.Result first = new PathSync(storage, new RestClient(config("source")), 2, 2, checkpoint).push();
+        Assert.assertEquals(2, first.getDone());
+        Assert.assertEquals(1, first.getFailed());
+        Assert.assertEquals("3", checkpoint(checkpoint).getProperty("read"));
+
+        backend.respondWith(request -> StubBackend.StubResponse.of(200, ""));
+        backend.clear();
+        PathSync.Result second = new PathSync(storage, new RestClient(config("source")), 2, 2, checkpoint).push();
+
+        Assert.assertEquals(1, second.getDone());
+        Assert.assertEquals(0, second.getFailed());
+        Assert.assertEquals(1, backend.getRequestCount());
+        Assert.assertTrue(backend.takeRequest().getBodyAsString().contains("\"locator\":\"cancel\""));
+        Assert.assertEquals("", checkpoint(checkpoint).getProperty("failed"));
+    }
+
+    @Test
+    public void testResumedExportAppendsToFile() throws Exception {
+        FileSystemPathStorage storage = new FileSystemPathStorage(config("source"));
+        store(storage, "submit", "Submit");
+        store(storage, "cancel", "Cancel");
+        store(storage, "help", "Help");
+        Path checkpoint = workPath.resolve("sync.checkpoint");
+        Path file = workPath.resolve("paths.ndjson");
+        new PathSync(storage, new RestClient(config("source")), 1, 1, checkpoint).export(file);
+        List<String> exported = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Assert.assertEquals(3, exported.size());
+
+        // interrupted after two records, with part of the third one written
+        long twoRecords = (exported.get(0) + "\n" + exported.get(1) + "\n").getBytes(StandardCharsets.UTF_8).length;
+        Files.write(checkpoint, ("command=export\nfile=" + file.toAbsolutePath().toString().replace("\\", "\\\\")
+                + "\nread=2\nfailed=\noutput=" + twoRecords + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(file, (exported.get(0) + "\n" + exported.get(1) + "\n{\"key\":").getBytes(StandardCharsets.UTF_8));
+        PathSync.Result result = new PathSync(storage, new RestClient(config("source")), 1, 1, checkpoint).export(file);
+
+        Assert.assertEquals(1, result.getDone());
+        Assert.assertEquals(exported, Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCheckpointOfAnotherRunIsIgnored() throws Exception {
+        FileSystemPathStorage source = new FileSystemPathStorage(config("source"));
+        store(source, "submit", "Submit");
+        store(source, "cancel", "Cancel");
+        Path file = workPath.resolve("paths.ndjson");
+        new PathSync(source, new RestClient(config("source")), 1, 1, null).export(file);
+        Path checkpoint = workPath.resolve("sync.checkpoint");
+        Files.write(checkpoint, ("command=import to backend\nfile=" + file.toAbsolutePath().toString().replace("\\", "\\\\")
+                + "\nread=2\nfailed=\n").getBytes(StandardCharsets.UTF_8));
+
+        FileSystemPathStorage target = new FileSystemPathStorage(config("target"));
+        PathSync.Result result = new PathSync(target, new RestClient(config("target")), 1, 1, checkpoint)
+                .importRecords(file, false);
+
+        Assert.assertEquals(2, result.getDone());
+        Assert.assertEquals("import to files", checkpoint(checkpoint).getProperty("command"));
+    }
+
+    private Properties checkpoint(Path file) throws Exception {
+        Properties state = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            state.load(in);
+        }
+        return state;
+    }
+
+    private void store(FileSystemPathStorage storage, String id, String text) throws Exception {
+        PathMetadata metadata = new PathMetadata()
+                .setLocator(By.id(id).toString())
+                .setContext("login")
+                .setClassName("com.example.LoginPage")
+                .setMethodName("login");
+        storage.writePath(storage.getKey(By.id(id), "login"), metadata, path(text));
+    }
+
+    private List<Node> path(String text) {
+        Map<String, String> root = new HashMap<>();
+        root.put("class", "android.widget.FrameLayout");
+        Map<String, String> button = new HashMap<>();
+        button.put("class", "android.widget.Button");
+        button.put("text", text);
+        return Arrays.asList(
+            new NodeBuilder().setTag("android.widget.FrameLayout").setIndex(0).addContent("").setAttributes(root).build(),
+            new NodeBuilder().setTag("android.widget.Button").setIndex(1).addContent("").setAttributes(button).build());
+    }
+
+    private Config config(String storage) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("serverHost", "localhost");
+        values.put("serverPort", backend.getPort());
+        values.put("basePath", workPath.resolve(storage).toString());
+        values.put("reportPath", workPath.resolve(storage + "-reports").toString());
+        values.put("spoolPath", workPath.resolve(storage + "-spool").toString());
+        return ConfigFactory.parseMap(values).withFallback(ConfigFactory.load());
+    }
+}